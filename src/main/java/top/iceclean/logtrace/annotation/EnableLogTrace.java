@@ -12,4 +12,10 @@ import java.lang.annotation.Target;
 @Target({ElementType.TYPE})
 @Retention(RetentionPolicy.RUNTIME)
 public @interface EnableLogTrace {
+    /**
+     * 是否使用编织模式<br/>
+     * 开启后由 LogProcessor 在编译期将日志追踪直接织入方法体，不再经过 Spring AOP 代理，
+     * 类内部的方法互相调用也能被追踪
+     */
+    boolean weave() default false;
 }
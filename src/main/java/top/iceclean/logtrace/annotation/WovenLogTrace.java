@@ -0,0 +1,17 @@
+package top.iceclean.logtrace.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 由 LogProcessor 在编织模式下自动添加到类上，不需要手动使用
+ * 带有该注解的类已在编译期织入了日志追踪，Spring AOP 不会再为其创建代理
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface WovenLogTrace {
+}
@@ -0,0 +1,153 @@
+package top.iceclean.logtrace.bean;
+
+import top.iceclean.logtrace.config.LogTraceConfig;
+import top.iceclean.logtrace.render.ArgRenderers;
+import top.iceclean.logtrace.spi.LogFormat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 慢调用捕获时使用的调用记录缓冲区，每个线程复用一个
+ * 只保存方法元数据、参数数组和返回值的引用，不做任何格式化，
+ * 调用链确定需要写出时才回放成 COME/EXIT 日志，否则直接清空
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class CallBuffer {
+    private static final ThreadLocal<CallBuffer> BUFFER = ThreadLocal.withInitial(CallBuffer::new);
+    /** 初始容量 */
+    private static final int INITIAL_CAPACITY = 32;
+    /** 释放时保留的最大容量，超出则缩回初始容量，避免个别超长调用链一直占用内存 */
+    private static final int MAX_RETAINED_CAPACITY = 1024;
+
+    /** 调用的方法 */
+    private MethodMeta[] methods;
+    /** 进入方法时为参数数组，退出方法时为返回值 */
+    private Object[] values;
+    /** 是否为进入方法的记录 */
+    private boolean[] comes;
+    /** 退出方法时的方法耗时（纳秒） */
+    private long[] durations;
+    /** 记录时调用链中已有的日志条数，回放时据此与手动记录的日志穿插 */
+    private int[] positions;
+    private int size;
+    /** 是否正在被调用链使用 */
+    private boolean inUse;
+
+    private CallBuffer() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * 获取当前线程的缓冲区，已被占用时创建新的
+     * @return 缓冲区
+     */
+    public static CallBuffer acquire() {
+        CallBuffer buffer = BUFFER.get();
+        if (buffer.inUse) {
+            buffer = new CallBuffer();
+        }
+        buffer.inUse = true;
+        return buffer;
+    }
+
+    /**
+     * 记录进入方法
+     * @param meta 方法元数据
+     * @param args 参数值
+     * @param position 当前调用链已有的日志条数
+     */
+    public void come(MethodMeta meta, Object[] args, int position) {
+        add(meta, args, true, 0, position);
+    }
+
+    /**
+     * 记录退出方法
+     * @param meta 方法元数据
+     * @param result 返回值
+     * @param duration 方法耗时（纳秒）
+     * @param position 当前调用链已有的日志条数
+     */
+    public void exit(MethodMeta meta, Object result, long duration, int position) {
+        add(meta, result, false, duration, position);
+    }
+
+    /**
+     * 将记录回放为日志，并与调用链中已有的日志按记录顺序合并
+     * @param logDataList 调用链中已有的日志
+     * @return 合并后的日志
+     */
+    public List<LogData> replay(List<LogData> logDataList) {
+        List<LogData> merged = new ArrayList<>(logDataList.size() + size);
+        int index = 0;
+        for (int i = 0; i < size; i++) {
+            while (index < positions[i]) {
+                merged.add(logDataList.get(index++));
+            }
+            if (comes[i]) {
+                if (LogTraceConfig.Output.comeParam) {
+                    merged.add(new LogData(methods[i], LogFormat.collectParams(methods[i].getParameterNames(), (Object[]) values[i])));
+                }
+            } else if (LogTraceConfig.Output.exitReturn) {
+                merged.add(new LogData(methods[i], values[i] == null ? LogTraceConfig.DEFAULT_VALUE : ArgRenderers.toString(values[i]), durations[i]));
+            }
+        }
+        while (index < logDataList.size()) {
+            merged.add(logDataList.get(index++));
+        }
+        return merged;
+    }
+
+    /**
+     * 清空记录并归还缓冲区
+     */
+    public void release() {
+        if (methods.length > MAX_RETAINED_CAPACITY) {
+            allocate(INITIAL_CAPACITY);
+        } else {
+            // 去掉引用，避免参数和返回值因为缓冲区复用而无法回收
+            for (int i = 0; i < size; i++) {
+                methods[i] = null;
+                values[i] = null;
+            }
+        }
+        size = 0;
+        inUse = false;
+    }
+
+    private void add(MethodMeta meta, Object value, boolean come, long duration, int position) {
+        if (size == methods.length) {
+            grow();
+        }
+        methods[size] = meta;
+        values[size] = value;
+        comes[size] = come;
+        durations[size] = duration;
+        positions[size] = position;
+        size++;
+    }
+
+    private void allocate(int capacity) {
+        methods = new MethodMeta[capacity];
+        values = new Object[capacity];
+        comes = new boolean[capacity];
+        durations = new long[capacity];
+        positions = new int[capacity];
+    }
+
+    private void grow() {
+        int capacity = methods.length << 1;
+        MethodMeta[] oldMethods = methods;
+        Object[] oldValues = values;
+        boolean[] oldComes = comes;
+        long[] oldDurations = durations;
+        int[] oldPositions = positions;
+        allocate(capacity);
+        System.arraycopy(oldMethods, 0, methods, 0, size);
+        System.arraycopy(oldValues, 0, values, 0, size);
+        System.arraycopy(oldComes, 0, comes, 0, size);
+        System.arraycopy(oldDurations, 0, durations, 0, size);
+        System.arraycopy(oldPositions, 0, positions, 0, size);
+    }
+}
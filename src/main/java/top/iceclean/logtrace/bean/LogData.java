@@ -5,7 +5,6 @@ import top.iceclean.logtrace.constants.LogStyle;
 import top.iceclean.logtrace.spi.LogFormat;
 import javafx.util.Pair;
 
-import java.lang.reflect.Method;
 import java.util.List;
 
 /**
@@ -22,6 +21,8 @@ public class LogData {
     private final String content;
     /** 传入参数 */
     private final List<Pair<String, Object>> paramList;
+    /** 方法耗时（纳秒），只有详细模式下的跳出方法日志才有 */
+    private final Long duration;
 
     /**
      * 创建普通日志
@@ -30,10 +31,22 @@ public class LogData {
      * @param site 日志产生位置
      */
     public LogData(String level, String site, String content) {
+        this(level, site, content, null);
+    }
+
+    /**
+     * 创建带耗时的日志
+     * @param level 日志级别
+     * @param site 日志产生位置
+     * @param content 日志内容
+     * @param duration 方法耗时（纳秒）
+     */
+    public LogData(String level, String site, String content, Long duration) {
         this.level = level;
         this.site = site;
         this.content = content;
         this.paramList = null;
+        this.duration = duration;
     }
 
     public LogData(String level, String site, List<Pair<String, Object>> paramList) {
@@ -41,28 +54,34 @@ public class LogData {
         this.site = site;
         this.content = null;
         this.paramList = paramList;
+        this.duration = null;
     }
 
     /**
      * 创建进入方法日志
+     * @param meta 方法元数据
      * @param paramList 方法参数列表
      */
-    public LogData(Method method, List<Pair<String, Object>> paramList) {
+    public LogData(MethodMeta meta, List<Pair<String, Object>> paramList) {
         this.level = LogLevel.LEVEL_IN;
-        this.site = String.format("%s_%s", method.getDeclaringClass().getSimpleName(), method.getName());
+        this.site = meta.getSite();
         this.content = null;
         this.paramList = paramList;
+        this.duration = null;
     }
 
     /**
      * 创建跳出方法日志
+     * @param meta 方法元数据
      * @param returnString 方法的返回值
+     * @param duration 方法耗时（纳秒）
      */
-    public LogData(Method method, String returnString) {
+    public LogData(MethodMeta meta, String returnString, long duration) {
         this.level = LogLevel.LEVEL_OUT;
-        this.site = String.format("%s_%s", method.getDeclaringClass().getSimpleName(), method.getName());
+        this.site = meta.getSite();
         this.content = returnString == null || returnString.isEmpty() ? "" : returnString;
         this.paramList = null;
+        this.duration = duration;
     }
 
     public String getLevel() {
@@ -81,6 +100,10 @@ public class LogData {
         return paramList;
     }
 
+    public Long getDuration() {
+        return duration;
+    }
+
     /**
      * 可手动调用获取带颜色的格式化字符串
      * @return 带颜色的格式化字符串
@@ -1,19 +1,22 @@
 package top.iceclean.logtrace.bean;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import top.iceclean.logtrace.config.LogTraceConfig;
 import top.iceclean.logtrace.constants.LogLevel;
 import top.iceclean.logtrace.constants.LogMode;
 import top.iceclean.logtrace.constants.LogStyle;
 import top.iceclean.logtrace.constants.LogType;
+import top.iceclean.logtrace.context.LogTraceContext;
+import top.iceclean.logtrace.render.RenderedArg;
 import top.iceclean.logtrace.spi.LogFormat;
 import javafx.util.Pair;
 
-import java.lang.reflect.Method;
-import java.lang.reflect.Parameter;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  *
@@ -21,10 +24,9 @@ import java.util.concurrent.ConcurrentMap;
  * @author Ice'Clean
  */
 public class LogTrace implements Logger {
-    /** 存放每次业务所属的自定义日志 */
-    @JsonIgnore
-    private static final ConcurrentMap<String, LogTrace> LOG_TRACE_MAP = new ConcurrentHashMap<>();
-
+    /** 日志头 ID，创建日志时生成，按时间递增（前端 JS 无法精确表示 64 位整数，以字符串输出） */
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long headId;
     /** 原日志头信息 */
     private String thread = LogTraceConfig.DEFAULT_VALUE;
     private String site = LogTraceConfig.DEFAULT_VALUE;
@@ -50,24 +52,60 @@ public class LogTrace implements Logger {
     private String returnString = LogTraceConfig.DEFAULT_VALUE;
     /** 【记录模式】 堆栈调用链信息（针对于 ERROR 日志） */
     private List<String> stackList;
+    /** 【记录模式】 起始方法的耗时（纳秒），响应式模式下到流结束为止 */
+    private Long duration;
 
-    /** 调用链层次，每一次进入方法时 +1，退出方法时 -1 */
+    /**
+     * 调用链层次，每一次进入方法时 +1，退出方法时 -1
+     * 响应式模式下操作符会在不同线程中进出方法，所以通过 LAYER_UPDATER 原子更新
+     */
     @JsonIgnore
-    private int layer = 0;
-    /** 该日志的生命周期，每完成一个 appender 任务就 -1，全部完成则将该日志销毁 */
+    private volatile int layer = 0;
+    /** 是否由响应式流持有，持有时只在流结束时写出，方法退出到最初一层也不写出 */
+    @JsonIgnore
+    private volatile boolean streamOwned;
+    /** 起始方法的进入时间（纳秒），用于调用链结束时统计耗时 */
+    @JsonIgnore
+    private long startTime;
+    /**
+     * 【快照】 日志的引用计数，每完成一个 appender 任务就 -1，全部完成则释放渲染结果
+     * appender 可能运行在其他线程，所以通过 LIFE_TIME_UPDATER 原子更新
+     */
     @JsonIgnore
-    private int lifeTime = LogTraceConfig.lifeTime;
+    private volatile int lifeTime;
+    /** 慢调用捕获时的调用记录缓冲区，未开启捕获时为 null */
+    @JsonIgnore
+    private CallBuffer callBuffer;
+    /** 日志写出后的渲染缓存，写出前为 null */
+    @JsonIgnore
+    private volatile RenderCache renderCache;
+    /** 其他线程中子任务的日志，子任务结束时通过 CAS 压入，调用链写出前统一合并 */
+    @JsonIgnore
+    private volatile ChildLog childLog;
+
+    private static final AtomicReferenceFieldUpdater<LogTrace, ChildLog> CHILD_LOG_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(LogTrace.class, ChildLog.class, "childLog");
+    private static final AtomicIntegerFieldUpdater<LogTrace> LAYER_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(LogTrace.class, "layer");
+    private static final AtomicIntegerFieldUpdater<LogTrace> LIFE_TIME_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(LogTrace.class, "lifeTime");
+
+    /** 子任务日志链表节点 */
+    private static class ChildLog {
+        private final LogTrace logTrace;
+        private ChildLog next;
+
+        private ChildLog(LogTrace logTrace) {
+            this.logTrace = logTrace;
+        }
+    }
 
     /**
      * 获取一个和当前线程绑定的自定义日志
      * @return 自定义日志
      */
     public static LogTrace getLogTrace() {
-        Thread currentThread = Thread.currentThread();
-        if (LOG_TRACE_MAP.containsKey(currentThread.getName())) {
-            return LOG_TRACE_MAP.get(currentThread.getName());
-        }
-        return null;
+        return LogTraceContext.get();
     }
 
     /**
@@ -76,8 +114,7 @@ public class LogTrace implements Logger {
      * @return 将传入的自定义日志返回出去
      */
     public static LogTrace bindLogTrace(LogTrace logTrace) {
-        LOG_TRACE_MAP.put(Thread.currentThread().getName(), logTrace);
-        return logTrace;
+        return LogTraceContext.bind(logTrace);
     }
 
     /**
@@ -85,24 +122,206 @@ public class LogTrace implements Logger {
      * 用于将日志输出后，清除日志实体
      */
     public static void removeLogTrace() {
-        LOG_TRACE_MAP.remove(Thread.currentThread().getName());
+        LogTraceContext.remove();
+    }
+
+    /**
+     * 是否为被采样的调用链，未采样的调用链绑定的是 UnsampledLogTrace
+     * @return 被采样则返回 true
+     */
+    @JsonIgnore
+    public boolean isSampled() {
+        return true;
     }
 
     public void come() {
-        layer++;
+        LAYER_UPDATER.incrementAndGet(this);
     }
 
-    public void exit() {
-        layer--;
+    /**
+     * 退出一层方法
+     * @return 退出后的层次，为 0 说明退出到了最初一层
+     */
+    public int exit() {
+        return LAYER_UPDATER.decrementAndGet(this);
     }
 
     public int getLayer() {
         return layer;
     }
 
+    /**
+     * 将日志交给响应式流持有，之后由流结束时写出
+     */
+    public void ownByStream() {
+        streamOwned = true;
+    }
+
+    @JsonIgnore
+    public boolean isStreamOwned() {
+        return streamOwned;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    /**
+     * 一个输出完成了对快照的处理，全部完成后释放渲染结果
+     */
     public void finish() {
-        if (--lifeTime == 0) {
-            removeLogTrace();
+        if (LIFE_TIME_UPDATER.decrementAndGet(this) == 0) {
+            renderCache = null;
+        }
+    }
+
+    /**
+     * 生成调用链日志的只读快照，在日志写出时交给各个输出
+     * 快照与线程无关：日志数据和堆栈为不可变副本，参数值在此时渲染到快照共用的缓冲区中，之后原日志的变化不会影响快照，
+     * 所以 appender 可以在其他线程（如 AsyncAppender）中处理
+     * 引用计数为 appender 的数量，每个 appender 处理完调用一次 finish
+     * @return 日志快照
+     */
+    public LogTrace snapshot() {
+        LogTrace snapshot = new LogTrace(mode, type);
+        snapshot.headId = headId;
+        snapshot.thread = thread;
+        snapshot.site = site;
+        snapshot.read = read;
+        snapshot.createTime = createTime;
+        snapshot.level = level;
+        snapshot.requestPath = requestPath;
+        snapshot.className = className;
+        snapshot.methodName = methodName;
+        StringBuilder rendered = new StringBuilder();
+        snapshot.paramList = freezeParams(paramList, rendered);
+        snapshot.returnString = returnString;
+        snapshot.duration = duration;
+        snapshot.stackList = stackList == null ? null : Collections.unmodifiableList(new ArrayList<>(stackList));
+        List<LogData> frozenData = new ArrayList<>(logDataList.size());
+        for (LogData logData : logDataList) {
+            frozenData.add(logData.getParamList() == null ? logData
+                    : new LogData(logData.getLevel(), logData.getSite(), freezeParams(logData.getParamList(), rendered)));
+        }
+        snapshot.logDataList = Collections.unmodifiableList(frozenData);
+        snapshot.lifeTime = LogTraceConfig.lifeTime;
+        snapshot.cacheRendering();
+        return snapshot;
+    }
+
+    /** 将参数值依次渲染到快照共用的缓冲区中，得到不可变的参数列表，不为每个参数单独生成字符串 */
+    private static List<Pair<String, Object>> freezeParams(List<Pair<String, Object>> params, StringBuilder rendered) {
+        if (params == null) {
+            return null;
+        }
+        List<Pair<String, Object>> frozen = new ArrayList<>(params.size());
+        for (Pair<String, Object> param : params) {
+            Object value = param.getValue();
+            frozen.add(new Pair<>(param.getKey(), value == null || value instanceof String ? value : RenderedArg.render(value, rendered)));
+        }
+        return Collections.unmodifiableList(frozen);
+    }
+
+    /**
+     * 开始慢调用捕获，之后调用链中的方法进出只记录到缓冲区
+     */
+    public void startCapture() {
+        callBuffer = CallBuffer.acquire();
+    }
+
+    @JsonIgnore
+    public boolean isCapturing() {
+        return callBuffer != null;
+    }
+
+    /**
+     * 捕获进入方法
+     * @param meta 方法元数据
+     * @param args 参数值
+     */
+    public void captureIn(MethodMeta meta, Object[] args) {
+        callBuffer.come(meta, args, logDataList.size());
+    }
+
+    /**
+     * 捕获退出方法
+     * @param meta 方法元数据
+     * @param result 返回值
+     * @param duration 方法耗时（纳秒）
+     */
+    public void captureOut(MethodMeta meta, Object result, long duration) {
+        callBuffer.exit(meta, result, duration, logDataList.size());
+    }
+
+    /**
+     * 将捕获的调用记录回放为详细模式的日志，并归还缓冲区
+     */
+    public void replayCapture() {
+        if (callBuffer != null) {
+            logDataList = callBuffer.replay(logDataList);
+            mode = LogMode.MODE_DETAIL;
+            callBuffer.release();
+            callBuffer = null;
+        }
+    }
+
+    /**
+     * 丢弃捕获的调用记录，并归还缓冲区
+     */
+    public void discardCapture() {
+        if (callBuffer != null) {
+            callBuffer.release();
+            callBuffer = null;
+        }
+    }
+
+    /**
+     * 为交给其他线程执行的子任务创建日志
+     * 子任务日志的层次从 1 开始，所以子任务内的异常不会被当成调用链结束而提前写出
+     * @return 子任务日志
+     */
+    public LogTrace fork() {
+        LogTrace child = new LogTrace(mode, type);
+        child.layer = 1;
+        return child;
+    }
+
+    /**
+     * 子任务结束后，将子任务日志挂回本日志，可在任意线程调用
+     * @param child 由 fork 创建的子任务日志
+     */
+    public void join(LogTrace child) {
+        ChildLog node = new ChildLog(child);
+        do {
+            node.next = childLog;
+        } while (!CHILD_LOG_UPDATER.compareAndSet(this, node.next, node));
+    }
+
+    /**
+     * 将已结束的子任务日志合并进调用链，由调用链所在线程在写出前调用
+     * 在此之后才结束的子任务不会再被写出
+     */
+    public void mergeChildren() {
+        ChildLog node = CHILD_LOG_UPDATER.getAndSet(this, null);
+        // 链表是后进先出的，先反转为子任务的结束顺序
+        ChildLog ordered = null;
+        while (node != null) {
+            ChildLog next = node.next;
+            node.next = ordered;
+            ordered = node;
+            node = next;
+        }
+        for (; ordered != null; ordered = ordered.next) {
+            LogTrace child = ordered.logTrace;
+            child.mergeChildren();
+            logDataList.addAll(child.logDataList);
+            if (LogLevel.LEVEL_ERROR.equals(child.level)) {
+                level = LogLevel.LEVEL_ERROR;
+            }
         }
     }
 
@@ -140,21 +359,21 @@ public class LogTrace implements Logger {
 
     /**
      * 记录进入方法日志
-     * @param method 方法
-     * @param parameters 方法参数
+     * @param meta 方法元数据
      * @param datum 参数具体值
      */
-    public void inMethod(Method method, Parameter[] parameters, Object[] datum) {
-        logDataList.add(new LogData(method, LogFormat.collectParams(parameters, datum)));
+    public void inMethod(MethodMeta meta, Object[] datum) {
+        logDataList.add(new LogData(meta, LogFormat.collectParams(meta.getParameterNames(), datum)));
     }
 
     /**
      * 创建跳出方法日志
-     * @param method 方法
+     * @param meta 方法元数据
      * @param returnString 方法返回值字符串
+     * @param duration 方法耗时（纳秒）
      */
-    public void outMethod(Method method, String returnString) {
-        logDataList.add(new LogData(method, returnString));
+    public void outMethod(MethodMeta meta, String returnString, long duration) {
+        logDataList.add(new LogData(meta, returnString, duration));
     }
 
     /**
@@ -168,6 +387,18 @@ public class LogTrace implements Logger {
         addMessage(LogLevel.LEVEL_ERROR, content, String.format("%s:%d %s", fileName, line, methodName));
     }
 
+    /**
+     * 记录异常日志，位置取异常抛出处
+     * @param throwable 异常
+     */
+    public void exception(Throwable throwable) {
+        StackTraceElement[] stackTrace = throwable.getStackTrace();
+        if (stackTrace.length > 0) {
+            StackTraceElement caller = stackTrace[0];
+            exception(caller.getFileName(), caller.getLineNumber(), caller.getMethodName(), throwable.toString());
+        }
+    }
+
     public String getThread() {
         return thread;
     }
@@ -184,6 +415,14 @@ public class LogTrace implements Logger {
         this.site = site;
     }
 
+    public Long getHeadId() {
+        return headId;
+    }
+
+    public void setHeadId(Long headId) {
+        this.headId = headId;
+    }
+
     public Integer getRead() {
         return read;
     }
@@ -232,8 +471,8 @@ public class LogTrace implements Logger {
         return className;
     }
 
-    public void setParameter(Parameter[] parameters, Object[] datum) {
-        paramList = LogFormat.collectParams(parameters, datum);
+    public void setParameter(String[] parameterNames, Object[] datum) {
+        paramList = LogFormat.collectParams(parameterNames, datum);
     }
 
     public void setParamList(List<Pair<String, Object>> paramList) {
@@ -273,6 +512,14 @@ public class LogTrace implements Logger {
         return returnString;
     }
 
+    public void setDuration(Long duration) {
+        this.duration = duration;
+    }
+
+    public Long getDuration() {
+        return duration;
+    }
+
     public void setLogDataList(List<LogData> logDataList) {
         this.logDataList = logDataList;
     }
@@ -306,12 +553,33 @@ public class LogTrace implements Logger {
 
 
 
+    /**
+     * 日志内容已经确定，准备写出
+     * 之后各种格式只渲染一次，不应再修改日志内容
+     */
+    public void cacheRendering() {
+        if (renderCache == null) {
+            renderCache = new RenderCache(this);
+        }
+    }
+
     /**
      * 可手动调用获取带颜色的格式化字符串
      * @return 带颜色的格式化字符串
      */
     public String toColorString() {
-        return LogFormat.listLogTrace(this, LogStyle.STYLE_COLOR);
+        RenderCache cache = renderCache;
+        return cache != null ? cache.color() : LogFormat.listLogTrace(this, LogStyle.STYLE_COLOR);
+    }
+
+    /**
+     * 获取 JSON 格式的日志，用于推送到前端
+     * @return JSON 字符串
+     * @throws JsonProcessingException 序列化失败
+     */
+    public String toJson() throws JsonProcessingException {
+        RenderCache cache = renderCache;
+        return cache != null ? cache.json() : LogFormat.toJson(this);
     }
 
     /**
@@ -320,7 +588,8 @@ public class LogTrace implements Logger {
      */
     @Override
     public String toString() {
-        return LogFormat.listLogTrace(this, LogStyle.STYLE_PLAIN);
+        RenderCache cache = renderCache;
+        return cache != null ? cache.plain() : LogFormat.listLogTrace(this, LogStyle.STYLE_PLAIN);
     }
 
     @Override
@@ -342,4 +611,25 @@ public class LogTrace implements Logger {
     public void error(String message, Object... args) {
         addMessage(LogLevel.LEVEL_ERROR, String.format(message, args), getOutCaller());
     }
+
+    /*
+     * 以下方法由 LogProcessor 在编译期替换 info/error 调用时使用，
+     * 日志位置在编译期已经确定，不再需要获取调用栈
+     */
+
+    public void infoAt(String site, String message) {
+        addMessage(LogLevel.LEVEL_INFO, message, site);
+    }
+
+    public void infoAt(String site, String message, Object... args) {
+        addMessage(LogLevel.LEVEL_INFO, String.format(message, args), site);
+    }
+
+    public void errorAt(String site, String message) {
+        addMessage(LogLevel.LEVEL_ERROR, message, site);
+    }
+
+    public void errorAt(String site, String message, Object... args) {
+        addMessage(LogLevel.LEVEL_ERROR, String.format(message, args), site);
+    }
 }
@@ -0,0 +1,109 @@
+package top.iceclean.logtrace.bean;
+
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 被追踪方法的元数据，每个方法只解析一次并缓存
+ * 调用链中需要的请求路径、参数名、类名和日志位置都从这里读取，不再在每次调用时反射获取
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class MethodMeta {
+    /** 方法元数据缓存，读取时无锁 */
+    private static final ConcurrentMap<Method, MethodMeta> CACHE = new ConcurrentHashMap<>();
+
+    /** 方法本身 */
+    private final Method method;
+    /** 请求路径（包含类上 @RequestMapping 的前缀），非 Controller 方法为 null */
+    private final String requestPath;
+    /** 参数名 */
+    private final String[] parameterNames;
+    /** 所属类（Class.toString 的形式） */
+    private final String className;
+    /** 方法名 */
+    private final String methodName;
+    /** 进入和退出方法日志的产生位置，形如 UserService_findById */
+    private final String site;
+
+    private MethodMeta(Method method) {
+        this.method = method;
+        this.requestPath = resolveRequestPath(method);
+        Parameter[] parameters = method.getParameters();
+        this.parameterNames = new String[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            parameterNames[i] = parameters[i].getName();
+        }
+        this.className = method.getDeclaringClass().toString();
+        this.methodName = method.getName();
+        this.site = method.getDeclaringClass().getSimpleName() + "_" + methodName;
+    }
+
+    /**
+     * 获取方法的元数据，第一次获取时解析
+     * @param method 目标方法
+     * @return 方法元数据
+     */
+    public static MethodMeta of(Method method) {
+        MethodMeta meta = CACHE.get(method);
+        if (meta == null) {
+            meta = new MethodMeta(method);
+            MethodMeta exist = CACHE.putIfAbsent(method, meta);
+            if (exist != null) {
+                meta = exist;
+            }
+        }
+        return meta;
+    }
+
+    /**
+     * 解析请求路径，@GetMapping、@PostMapping 等组合注解都会合并为 @RequestMapping
+     * @param method 目标方法
+     * @return 类上前缀和方法路径拼接后的请求路径，方法上没有映射注解时返回 null
+     */
+    private static String resolveRequestPath(Method method) {
+        RequestMapping methodMapping = AnnotatedElementUtils.findMergedAnnotation(method, RequestMapping.class);
+        if (methodMapping == null) {
+            return null;
+        }
+        RequestMapping classMapping = AnnotatedElementUtils.findMergedAnnotation(method.getDeclaringClass(), RequestMapping.class);
+        String prefix = classMapping != null && classMapping.path().length > 0 ? classMapping.path()[0] : "";
+        String path = methodMapping.path().length > 0 ? methodMapping.path()[0] : "";
+        if (prefix.isEmpty()) {
+            return path;
+        }
+        if (path.isEmpty()) {
+            return prefix;
+        }
+        return prefix.endsWith("/") || path.startsWith("/") ? prefix + path : prefix + "/" + path;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public String getRequestPath() {
+        return requestPath;
+    }
+
+    public String[] getParameterNames() {
+        return parameterNames;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public String getSite() {
+        return site;
+    }
+}
@@ -0,0 +1,46 @@
+package top.iceclean.logtrace.bean;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import top.iceclean.logtrace.constants.LogStyle;
+import top.iceclean.logtrace.spi.LogFormat;
+
+/**
+ * 已写出日志的渲染缓存
+ * 日志写出后内容不再变化，无颜色、带颜色和 JSON 三种格式都在第一次使用时渲染，之后各个 appender 和前端推送直接复用
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class RenderCache {
+    private final LogTrace logTrace;
+    private volatile String plain;
+    private volatile String color;
+    private volatile String json;
+
+    RenderCache(LogTrace logTrace) {
+        this.logTrace = logTrace;
+    }
+
+    public String plain() {
+        String result = plain;
+        if (result == null) {
+            plain = result = LogFormat.listLogTrace(logTrace, LogStyle.STYLE_PLAIN);
+        }
+        return result;
+    }
+
+    public String color() {
+        String result = color;
+        if (result == null) {
+            color = result = LogFormat.listLogTrace(logTrace, LogStyle.STYLE_COLOR);
+        }
+        return result;
+    }
+
+    public String json() throws JsonProcessingException {
+        String result = json;
+        if (result == null) {
+            json = result = LogFormat.toJson(logTrace);
+        }
+        return result;
+    }
+}
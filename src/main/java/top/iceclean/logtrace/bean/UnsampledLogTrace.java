@@ -0,0 +1,165 @@
+package top.iceclean.logtrace.bean;
+
+import javafx.util.Pair;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 未被采样的调用链所绑定的日志
+ * 全局只有一个实例，被所有线程共享，所有记录和修改操作都是空操作，使未采样的调用链不收集参数、不创建日志数据，
+ * 也不会因为某个线程误用而把内容带到其他调用链中
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public final class UnsampledLogTrace extends LogTrace {
+    public static final UnsampledLogTrace INSTANCE = new UnsampledLogTrace();
+
+    private UnsampledLogTrace() {}
+
+    @Override
+    public boolean isSampled() {
+        return false;
+    }
+
+    @Override
+    public void come() {}
+
+    @Override
+    public int exit() {
+        return 0;
+    }
+
+    @Override
+    public void ownByStream() {}
+
+    @Override
+    public void setStartTime(long startTime) {}
+
+    @Override
+    public void finish() {}
+
+    @Override
+    public void startCapture() {}
+
+    @Override
+    public void captureIn(MethodMeta meta, Object[] args) {}
+
+    @Override
+    public void captureOut(MethodMeta meta, Object result, long duration) {}
+
+    @Override
+    public void replayCapture() {}
+
+    @Override
+    public void discardCapture() {}
+
+    @Override
+    public LogTrace fork() {
+        return this;
+    }
+
+    @Override
+    public void join(LogTrace child) {}
+
+    @Override
+    public void mergeChildren() {}
+
+    @Override
+    public void inMethod(MethodMeta meta, Object[] datum) {}
+
+    @Override
+    public void outMethod(MethodMeta meta, String returnString, long duration) {}
+
+    @Override
+    public void exception(String fileName, int line, String methodName, String content) {}
+
+    @Override
+    public void exception(Throwable throwable) {}
+
+    @Override
+    public void setThread(String thread) {}
+
+    @Override
+    public void setSite(String site) {}
+
+    @Override
+    public void setHeadId(Long headId) {}
+
+    @Override
+    public void setRead(Integer read) {}
+
+    @Override
+    public void setCreateTime(String createTime) {}
+
+    @Override
+    public void setLevel(String level) {}
+
+    @Override
+    public void setMode(String mode) {}
+
+    @Override
+    public void setType(String type) {}
+
+    @Override
+    public void setClassName(String className) {}
+
+    @Override
+    public void setParameter(String[] parameterNames, Object[] datum) {}
+
+    @Override
+    public void setParamList(List<Pair<String, Object>> paramList) {}
+
+    @Override
+    public void setMethodName(String methodName) {}
+
+    @Override
+    public void setRequestPath(String requestPath) {}
+
+    @Override
+    public void setReturnString(String returnString) {}
+
+    @Override
+    public void setDuration(Long duration) {}
+
+    @Override
+    public void setLogDataList(List<LogData> logDataList) {}
+
+    @Override
+    public List<LogData> getLogDataList() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void setStackTrace(StackTraceElement[] elements) {}
+
+    @Override
+    public void setStackList(List<String> stackList) {}
+
+    @Override
+    public void cacheRendering() {}
+
+    @Override
+    public void info(String message) {}
+
+    @Override
+    public void info(String message, Object... args) {}
+
+    @Override
+    public void error(String message) {}
+
+    @Override
+    public void error(String message, Object... args) {}
+
+    @Override
+    public void infoAt(String site, String message) {}
+
+    @Override
+    public void infoAt(String site, String message, Object... args) {}
+
+    @Override
+    public void errorAt(String site, String message) {}
+
+    @Override
+    public void errorAt(String site, String message, Object... args) {}
+}
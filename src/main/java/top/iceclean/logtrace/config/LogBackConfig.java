@@ -4,13 +4,20 @@ import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.PatternLayout;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
 import ch.qos.logback.core.LayoutBase;
 import ch.qos.logback.core.encoder.LayoutWrappingEncoder;
+import top.iceclean.logtrace.logback.AsyncDispatchAppender;
 import top.iceclean.logtrace.logback.ConsoleAppender;
 import top.iceclean.logtrace.logback.ConsoleLayout;
 import top.iceclean.logtrace.logback.DatabaseAppender;
 import top.iceclean.logtrace.filter.LogTraceFilter;
 import top.iceclean.logtrace.logback.FileAppender;
+import top.iceclean.logtrace.logback.LocalStoreAppender;
+import top.iceclean.logtrace.logback.RecentCacheAppender;
+import top.iceclean.logtrace.logback.SearchIndexAppender;
+import top.iceclean.logtrace.logback.SyncDispatchAppender;
+import top.iceclean.logtrace.logback.WebSocketAppender;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.impl.StaticLoggerBinder;
 import org.springframework.boot.ApplicationArguments;
@@ -18,6 +25,8 @@ import org.springframework.boot.ApplicationRunner;
 import org.springframework.stereotype.Component;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 使用代码配置 logback，而不是 xml 配置
@@ -27,16 +36,51 @@ import java.nio.charset.StandardCharsets;
 @Slf4j
 @Component
 public class LogBackConfig implements ApplicationRunner {
+    /** 挂到分发器上的各个输出 */
+    private final List<Appender<ILoggingEvent>> appenders = new ArrayList<>();
+
     @Override
     public void run(ApplicationArguments args) throws Exception{
         // 获取 context 和根日志配置
         LoggerContext context = (LoggerContext) StaticLoggerBinder.getSingleton().getLoggerFactory();
         Logger rootLogger = context.getLogger(Logger.ROOT_LOGGER_NAME);
 
-        // 添加控制台输出、文件输出和数据库输出
+        // 添加控制台输出、文件输出、数据库输出、本地存储、最近日志缓存、全文索引和前端推送
         setCustomConsoleAppender(context, rootLogger);
         setCustomFileAppender(context, rootLogger);
         setDatabaseAppender(context, rootLogger);
+        setLocalStoreAppender(context, rootLogger);
+        setRecentCacheAppender(context, rootLogger);
+        setSearchIndexAppender(context, rootLogger);
+        setWebSocketAppender(context, rootLogger);
+
+        // 各个输出挂到分发器上，由分发器挂到根日志，其他包的日志在分发器中只生成一次 OTHER 日志
+        if (LogTraceConfig.Async.enabled) {
+            AsyncDispatchAppender dispatcher = new AsyncDispatchAppender();
+            appenders.forEach(dispatcher::addAppender);
+            startDispatcher(context, rootLogger, dispatcher, "CUSTOM_ASYNC");
+        } else {
+            SyncDispatchAppender dispatcher = new SyncDispatchAppender();
+            appenders.forEach(dispatcher::addAppender);
+            startDispatcher(context, rootLogger, dispatcher, "CUSTOM_DISPATCH");
+        }
+    }
+
+    /** 启动分发器并挂到根日志 */
+    private void startDispatcher(LoggerContext context, Logger rootLogger, Appender<ILoggingEvent> dispatcher, String name) {
+        dispatcher.setContext(context);
+        dispatcher.setName(name);
+        dispatcher.start();
+        rootLogger.addAppender(dispatcher);
+        if (LogTraceConfig.Console.enabled) {
+            rootLogger.detachAppender("STDOUT");
+        }
+        log.info("add dispatcher successfully：{}", name);
+    }
+
+    /** 添加输出，统一交给分发器 */
+    private void addAppender(Appender<ILoggingEvent> appender) {
+        appenders.add(appender);
     }
 
     private void setCustomConsoleAppender(LoggerContext context, Logger rootLogger) {
@@ -55,9 +99,8 @@ public class LogBackConfig implements ApplicationRunner {
             consoleAppender.addFilter(new LogTraceFilter());
             consoleAppender.start();
 
-            // 添加控制台输出并取消原控制台输出
-            rootLogger.addAppender(consoleAppender);
-            rootLogger.detachAppender("STDOUT");
+            // 添加控制台输出，原控制台输出在分发器挂上后取消
+            addAppender(consoleAppender);
             log.info("add console appender successfully：CUSTOM_CONSOLE");
 
             // 生命周期自增
@@ -85,9 +128,10 @@ public class LogBackConfig implements ApplicationRunner {
                 fileAppender.setName("CUSTOM_FILE");
                 fileAppender.setEncoder(getEncoder(context, layout));
                 fileAppender.setFile(LogTraceConfig.File.target[i]);
+                fileAppender.start();
 
                 // 添加文件输出
-                rootLogger.addAppender(fileAppender);
+                addAppender(fileAppender);
                 log.info("add file appender successfully：{}", LogTraceConfig.File.target[i]);
 
                 // 生命周期自增
@@ -109,7 +153,7 @@ public class LogBackConfig implements ApplicationRunner {
             databaseAppender.start();
 
             // 添加数据库输出
-            rootLogger.addAppender(databaseAppender);
+            addAppender(databaseAppender);
             log.info("add database appender successfully：CUSTOM_DATABASE");
 
             // 生命周期自增
@@ -117,6 +161,76 @@ public class LogBackConfig implements ApplicationRunner {
         }
     }
 
+    private void setLocalStoreAppender(LoggerContext context, Logger rootLogger) {
+        if (LogTraceConfig.Store.enabled) {
+            // 定义本地存储
+            LocalStoreAppender storeAppender = new LocalStoreAppender();
+            storeAppender.setContext(context);
+            storeAppender.setName("CUSTOM_STORE");
+            storeAppender.start();
+            if (!storeAppender.isStarted()) {
+                log.error("add local store appender failed：{}", LogTraceConfig.Store.path);
+                return;
+            }
+
+            // 添加本地存储
+            addAppender(storeAppender);
+            log.info("add local store appender successfully：{}", LogTraceConfig.Store.path);
+
+            // 生命周期自增
+            LogTraceConfig.lifeTime++;
+        }
+    }
+
+    private void setRecentCacheAppender(LoggerContext context, Logger rootLogger) {
+        if (LogTraceConfig.Recent.enabled) {
+            // 定义最近日志缓存
+            RecentCacheAppender cacheAppender = new RecentCacheAppender();
+            cacheAppender.setContext(context);
+            cacheAppender.setName("CUSTOM_RECENT");
+            cacheAppender.start();
+
+            // 添加最近日志缓存
+            addAppender(cacheAppender);
+            log.info("add recent cache appender successfully：CUSTOM_RECENT");
+
+            // 生命周期自增
+            LogTraceConfig.lifeTime++;
+        }
+    }
+
+    private void setSearchIndexAppender(LoggerContext context, Logger rootLogger) {
+        if (LogTraceConfig.Search.enabled) {
+            // 定义全文索引
+            SearchIndexAppender indexAppender = new SearchIndexAppender();
+            indexAppender.setContext(context);
+            indexAppender.setName("CUSTOM_SEARCH");
+            indexAppender.start();
+
+            // 添加全文索引
+            addAppender(indexAppender);
+            log.info("add search index appender successfully：CUSTOM_SEARCH");
+
+            // 生命周期自增
+            LogTraceConfig.lifeTime++;
+        }
+    }
+
+    private void setWebSocketAppender(LoggerContext context, Logger rootLogger) {
+        // 定义前端推送
+        WebSocketAppender webSocketAppender = new WebSocketAppender();
+        webSocketAppender.setContext(context);
+        webSocketAppender.setName("CUSTOM_WEBSOCKET");
+        webSocketAppender.start();
+
+        // 添加前端推送
+        addAppender(webSocketAppender);
+        log.info("add websocket appender successfully：CUSTOM_WEBSOCKET");
+
+        // 生命周期自增
+        LogTraceConfig.lifeTime++;
+    }
+
     /** 获取一个编码器 */
     private LayoutWrappingEncoder<ILoggingEvent> getEncoder(LoggerContext context, LayoutBase<ILoggingEvent> layout) {
         LayoutWrappingEncoder<ILoggingEvent> encoder = new LayoutWrappingEncoder<>();
@@ -1,6 +1,12 @@
 package top.iceclean.logtrace.config;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.core.task.TaskDecorator;
+import top.iceclean.logtrace.constants.LogContextMode;
 import top.iceclean.logtrace.constants.LogMode;
+import top.iceclean.logtrace.constants.LogSample;
+import top.iceclean.logtrace.constants.LogWaitStrategy;
+import top.iceclean.logtrace.context.TraceTaskDecorator;
 import top.iceclean.logtrace.spi.LogAdvice;
 import org.springframework.aop.aspectj.AspectJExpressionPointcutAdvisor;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -17,6 +23,8 @@ import org.springframework.stereotype.Component;
 public class LogTraceConfig {
     /** 日志的显示类型，默认为记录模式 */
     public static String mode = LogMode.MODE_RECORD;
+    /** 日志上下文的存放方式，默认绑定在线程上 */
+    public static String context = LogContextMode.CONTEXT_THREAD;
     /** 控制台输出配置 */
     public static Console console = new Console();
     /** 文件输出配置 */
@@ -25,6 +33,24 @@ public class LogTraceConfig {
     public static Database database = new Database();
     /** 输出内容控制配置 */
     public static Output output = new Output();
+    /** 调用链采样配置 */
+    public static Sample sample = new Sample();
+    /** 慢调用捕获配置 */
+    public static Slow slow = new Slow();
+    /** 参数渲染配置 */
+    public static Render render = new Render();
+    /** 异步输出配置 */
+    public static Async async = new Async();
+    /** 本地存储配置 */
+    public static Store store = new Store();
+    /** 最近日志缓存配置 */
+    public static Recent recent = new Recent();
+    /** 全文索引配置 */
+    public static Search search = new Search();
+    /** 调用统计配置 */
+    public static Rollup rollup = new Rollup();
+    /** 方法耗时统计配置 */
+    public static Metric metric = new Metric();
     /** 日志的生命周期，由 appender 的数量决定 */
     public static int lifeTime = 0;
     /** 日志为 null 值时的默认值 */
@@ -113,6 +139,26 @@ public class LogTraceConfig {
         public static boolean enabled = false;
         /** 数据库连接参数：驱动、链接、用户名和密码 */
         public static String driver, url, username, password;
+        /** 批量写入时每批的日志数量，攒够后立即写入 */
+        public static int batchSize = 100;
+        /** 批量写入的最长间隔（毫秒），不满一批也会写入 */
+        public static long flushInterval = 1000;
+        /** 等待写入的日志数量上限，数据库跟不上时丢弃新日志 */
+        public static int bufferCapacity = 10000;
+        /** 日志 ID 的节点号（0 ~ 1023），多个实例写同一个数据库时需要各不相同，默认由主机名和进程号计算 */
+        public static long nodeId = -1;
+        /** 是否按天分区管理日志表，开启后由后台任务预建分区并整块删除过期分区 */
+        public static boolean partitioned = false;
+        /** 日志保留的天数，超过的分区整块删除，0 表示不按时间清理 */
+        public static int retentionDays = 7;
+        /** 日志表占用空间上限（MB），超过时从最旧的分区开始删除，0 表示不限制 */
+        public static long maxSize = 0;
+        /** 提前创建未来几天的分区 */
+        public static int prepareDays = 3;
+        /** 分区检查的间隔（分钟） */
+        public static long partitionInterval = 60;
+        /** 字典缓存的最大数量，超过时淘汰最久未用的字典项 */
+        public static int dictCacheSize = 65536;
 
         public boolean isEnabled() {
             return enabled;
@@ -153,6 +199,86 @@ public class LogTraceConfig {
         public void setPassword(String password) {
             Database.password = password;
         }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            Database.batchSize = batchSize;
+        }
+
+        public long getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(long flushInterval) {
+            Database.flushInterval = flushInterval;
+        }
+
+        public int getBufferCapacity() {
+            return bufferCapacity;
+        }
+
+        public void setBufferCapacity(int bufferCapacity) {
+            Database.bufferCapacity = bufferCapacity;
+        }
+
+        public long getNodeId() {
+            return nodeId;
+        }
+
+        public void setNodeId(long nodeId) {
+            Database.nodeId = nodeId;
+        }
+
+        public boolean isPartitioned() {
+            return partitioned;
+        }
+
+        public void setPartitioned(boolean partitioned) {
+            Database.partitioned = partitioned;
+        }
+
+        public int getRetentionDays() {
+            return retentionDays;
+        }
+
+        public void setRetentionDays(int retentionDays) {
+            Database.retentionDays = retentionDays;
+        }
+
+        public long getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(long maxSize) {
+            Database.maxSize = maxSize;
+        }
+
+        public int getPrepareDays() {
+            return prepareDays;
+        }
+
+        public void setPrepareDays(int prepareDays) {
+            Database.prepareDays = prepareDays;
+        }
+
+        public long getPartitionInterval() {
+            return partitionInterval;
+        }
+
+        public void setPartitionInterval(long partitionInterval) {
+            Database.partitionInterval = partitionInterval;
+        }
+
+        public int getDictCacheSize() {
+            return dictCacheSize;
+        }
+
+        public void setDictCacheSize(int dictCacheSize) {
+            Database.dictCacheSize = dictCacheSize;
+        }
     }
 
     /**
@@ -183,6 +309,401 @@ public class LogTraceConfig {
         }
     }
 
+    /**
+     * 调用链采样配置
+     * 未采样的调用链不会收集参数和日志，但出现异常时仍会写出 ERROR 日志
+     */
+    public static class Sample {
+        /** 采样策略，默认全部采样 */
+        public static String strategy = LogSample.SAMPLE_ALWAYS;
+        /** 【RATIO】 采样比例 */
+        public static double ratio = 1;
+        /** 【RATE_LIMIT】 每个请求路径每秒允许采样的数量 */
+        public static double permitsPerSecond = 10;
+        /** 【RATE_LIMIT】 每个请求路径允许的突发数量 */
+        public static int burst = 10;
+        /** 【ADAPTIVE】 每秒目标采样数量 */
+        public static double tracesPerSecond = 100;
+
+        public String getStrategy() {
+            return strategy;
+        }
+
+        public void setStrategy(String strategy) {
+            Sample.strategy = strategy;
+        }
+
+        public double getRatio() {
+            return ratio;
+        }
+
+        public void setRatio(double ratio) {
+            Sample.ratio = ratio;
+        }
+
+        public double getPermitsPerSecond() {
+            return permitsPerSecond;
+        }
+
+        public void setPermitsPerSecond(double permitsPerSecond) {
+            Sample.permitsPerSecond = permitsPerSecond;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        public void setBurst(int burst) {
+            Sample.burst = burst;
+        }
+
+        public double getTracesPerSecond() {
+            return tracesPerSecond;
+        }
+
+        public void setTracesPerSecond(double tracesPerSecond) {
+            Sample.tracesPerSecond = tracesPerSecond;
+        }
+    }
+
+    /**
+     * 慢调用捕获配置
+     * 开启后所有调用链都以极低的代价记录方法进出，只有耗时超过阈值或出现异常时才以详细模式写出，
+     * 其余调用链直接丢弃，此时不再经过采样器
+     */
+    public static class Slow {
+        /** 默认不开启 */
+        public static boolean enabled = false;
+        /** 耗时阈值（毫秒） */
+        public static long threshold = 500;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            Slow.enabled = enabled;
+        }
+
+        public long getThreshold() {
+            return threshold;
+        }
+
+        public void setThreshold(long threshold) {
+            Slow.threshold = threshold;
+        }
+    }
+
+    /**
+     * 参数渲染配置
+     * 限制参数和返回值写入日志的大小，避免大对象拖慢日志输出
+     */
+    public static class Render {
+        /** 对象最大嵌套深度 */
+        public static int maxDepth = 3;
+        /** 数组、集合和 Map 最多渲染的元素个数 */
+        public static int maxElements = 16;
+        /** 单个参数渲染结果的最大长度 */
+        public static int maxLength = 1024;
+
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+
+        public void setMaxDepth(int maxDepth) {
+            Render.maxDepth = maxDepth;
+        }
+
+        public int getMaxElements() {
+            return maxElements;
+        }
+
+        public void setMaxElements(int maxElements) {
+            Render.maxElements = maxElements;
+        }
+
+        public int getMaxLength() {
+            return maxLength;
+        }
+
+        public void setMaxLength(int maxLength) {
+            Render.maxLength = maxLength;
+        }
+    }
+
+    /**
+     * 异步输出配置
+     * 开启后日志事件经过环形缓冲区分发给各个输出，每个输出在独立的线程中执行，缓冲区满时丢弃新日志
+     */
+    public static class Async {
+        /** 默认不开启 */
+        public static boolean enabled = false;
+        /** 缓冲区大小，向上取整为 2 的幂 */
+        public static int bufferSize = 8192;
+        /** 消费线程的等待策略 */
+        public static String waitStrategy = LogWaitStrategy.WAIT_SLEEPING;
+        /** 是否在写日志的线程中获取调用位置（输出格式中有 %file、%line 等时需要） */
+        public static boolean includeCallerData = true;
+        /** 关闭时等待缓冲区处理完的最长时间（毫秒） */
+        public static long shutdownTimeout = 3000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            Async.enabled = enabled;
+        }
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public void setBufferSize(int bufferSize) {
+            Async.bufferSize = bufferSize;
+        }
+
+        public String getWaitStrategy() {
+            return waitStrategy;
+        }
+
+        public void setWaitStrategy(String waitStrategy) {
+            Async.waitStrategy = waitStrategy;
+        }
+
+        public boolean isIncludeCallerData() {
+            return includeCallerData;
+        }
+
+        public void setIncludeCallerData(boolean includeCallerData) {
+            Async.includeCallerData = includeCallerData;
+        }
+
+        public long getShutdownTimeout() {
+            return shutdownTimeout;
+        }
+
+        public void setShutdownTimeout(long shutdownTimeout) {
+            Async.shutdownTimeout = shutdownTimeout;
+        }
+    }
+
+    /**
+     * 本地存储配置
+     * 开启后日志写入本地的分段文件，未开启数据库输出时前端从本地存储查询历史日志
+     */
+    public static class Store {
+        /** 默认不开启 */
+        public static boolean enabled = false;
+        /** 存储目录 */
+        public static String path = "log-trace-store";
+        /** 每个分段文件的大小（MB） */
+        public static long segmentSize = 64;
+        /** 最多保留的分段数量，超过时删除最旧的分段 */
+        public static int maxSegments = 32;
+        /** 每隔多少条日志建立一个稀疏索引块 */
+        public static int indexInterval = 64;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            Store.enabled = enabled;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public void setPath(String path) {
+            Store.path = path;
+        }
+
+        public long getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(long segmentSize) {
+            Store.segmentSize = segmentSize;
+        }
+
+        public int getMaxSegments() {
+            return maxSegments;
+        }
+
+        public void setMaxSegments(int maxSegments) {
+            Store.maxSegments = maxSegments;
+        }
+
+        public int getIndexInterval() {
+            return indexInterval;
+        }
+
+        public void setIndexInterval(int indexInterval) {
+            Store.indexInterval = indexInterval;
+        }
+    }
+
+    /**
+     * 最近日志缓存配置
+     * 前端查询的前几页直接从内存返回，缓存中不足一页时再查询数据库或本地存储
+     */
+    public static class Recent {
+        /** 默认开启 */
+        public static boolean enabled = true;
+        /** 最多缓存的日志数量，向上取整为 2 的幂 */
+        public static int capacity = 4096;
+        /** 缓存占用内存的上限（MB） */
+        public static long maxMemory = 16;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            Recent.enabled = enabled;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            Recent.capacity = capacity;
+        }
+
+        public long getMaxMemory() {
+            return maxMemory;
+        }
+
+        public void setMaxMemory(long maxMemory) {
+            Recent.maxMemory = maxMemory;
+        }
+    }
+
+    /**
+     * 全文索引配置
+     * 开启后日志输出时建立倒排索引，前端可以按日志信息、参数、返回值和异常中的文本查找日志
+     */
+    public static class Search {
+        /** 默认不开启 */
+        public static boolean enabled = false;
+        /** 每个分段的日志数量 */
+        public static int segmentDocs = 8192;
+        /** 同一级别的分段达到多少个时合并 */
+        public static int mergeFactor = 8;
+        /** 索引的日志数量上限，超过时丢弃最旧的分段，0 表示不限制 */
+        public static long maxDocs = 2000000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            Search.enabled = enabled;
+        }
+
+        public int getSegmentDocs() {
+            return segmentDocs;
+        }
+
+        public void setSegmentDocs(int segmentDocs) {
+            Search.segmentDocs = segmentDocs;
+        }
+
+        public int getMergeFactor() {
+            return mergeFactor;
+        }
+
+        public void setMergeFactor(int mergeFactor) {
+            Search.mergeFactor = mergeFactor;
+        }
+
+        public long getMaxDocs() {
+            return maxDocs;
+        }
+
+        public void setMaxDocs(long maxDocs) {
+            Search.maxDocs = maxDocs;
+        }
+    }
+
+    /**
+     * 调用统计配置
+     * 开启后按类名、方法名、请求路径和时间桶统计起始方法的调用次数、错误次数和耗时分位数，
+     * 定期写入数据库的统计表，需要同时开启数据库输出
+     */
+    public static class Rollup {
+        /** 默认不开启 */
+        public static boolean enabled = false;
+        /** 时间桶的长度（秒） */
+        public static int bucketSize = 60;
+        /** 写入数据库的间隔（秒） */
+        public static int flushInterval = 30;
+        /** 每个时间桶最多统计的方法数量，超过的调用不再统计 */
+        public static int maxKeys = 1024;
+        /** 统计数据的保留天数，0 表示不清理 */
+        public static int retentionDays = 30;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            Rollup.enabled = enabled;
+        }
+
+        public int getBucketSize() {
+            return bucketSize;
+        }
+
+        public void setBucketSize(int bucketSize) {
+            Rollup.bucketSize = bucketSize;
+        }
+
+        public int getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(int flushInterval) {
+            Rollup.flushInterval = flushInterval;
+        }
+
+        public int getMaxKeys() {
+            return maxKeys;
+        }
+
+        public void setMaxKeys(int maxKeys) {
+            Rollup.maxKeys = maxKeys;
+        }
+
+        public int getRetentionDays() {
+            return retentionDays;
+        }
+
+        public void setRetentionDays(int retentionDays) {
+            Rollup.retentionDays = retentionDays;
+        }
+    }
+
+    /**
+     * 方法耗时统计配置
+     * 开启后每个被追踪的方法（包括未采样调用链中的方法）都记录到该方法的耗时直方图中，
+     * 前端和 Prometheus 可以获取各方法的耗时分位数
+     */
+    public static class Metric {
+        /** 默认不开启，开启后未采样的调用也需要计时 */
+        public static boolean enabled = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            Metric.enabled = enabled;
+        }
+    }
 
     public String getMode() {
         return mode;
@@ -192,6 +713,14 @@ public class LogTraceConfig {
         LogTraceConfig.mode = mode;
     }
 
+    public String getContext() {
+        return context;
+    }
+
+    public void setContext(String context) {
+        LogTraceConfig.context = context;
+    }
+
     public Console getConsole() {
         return console;
     }
@@ -224,6 +753,78 @@ public class LogTraceConfig {
         LogTraceConfig.output = output;
     }
 
+    public Sample getSample() {
+        return sample;
+    }
+
+    public void setSample(Sample sample) {
+        LogTraceConfig.sample = sample;
+    }
+
+    public Slow getSlow() {
+        return slow;
+    }
+
+    public void setSlow(Slow slow) {
+        LogTraceConfig.slow = slow;
+    }
+
+    public Render getRender() {
+        return render;
+    }
+
+    public void setRender(Render render) {
+        LogTraceConfig.render = render;
+    }
+
+    public Async getAsync() {
+        return async;
+    }
+
+    public void setAsync(Async async) {
+        LogTraceConfig.async = async;
+    }
+
+    public Store getStore() {
+        return store;
+    }
+
+    public void setStore(Store store) {
+        LogTraceConfig.store = store;
+    }
+
+    public Recent getRecent() {
+        return recent;
+    }
+
+    public void setRecent(Recent recent) {
+        LogTraceConfig.recent = recent;
+    }
+
+    public Search getSearch() {
+        return search;
+    }
+
+    public void setSearch(Search search) {
+        LogTraceConfig.search = search;
+    }
+
+    public Rollup getRollup() {
+        return rollup;
+    }
+
+    public void setRollup(Rollup rollup) {
+        LogTraceConfig.rollup = rollup;
+    }
+
+    public Metric getMetric() {
+        return metric;
+    }
+
+    public void setMetric(Metric metric) {
+        LogTraceConfig.metric = metric;
+    }
+
     public String getDefaultValue() {
         return DEFAULT_VALUE;
     }
@@ -236,9 +837,20 @@ public class LogTraceConfig {
     public AspectJExpressionPointcutAdvisor configAdvisor() {
         AspectJExpressionPointcutAdvisor advisor = new AspectJExpressionPointcutAdvisor();
         advisor.setAdvice(new LogAdvice());
-        advisor.setExpression("@within(top.iceclean.logtrace.annotation.EnableLogTrace)");
+        // 编织模式的类已在编译期织入，不再创建代理
+        advisor.setExpression("@within(top.iceclean.logtrace.annotation.EnableLogTrace) " +
+                "&& !@within(top.iceclean.logtrace.annotation.WovenLogTrace)");
 //        advisor.setExpression("execution(* com.iceclean.siyuanpatch.controller.*.*(..)) || " +
 //                "execution(* com.iceclean.siyuanpatch.service.*.*(..))");
         return advisor;
     }
+
+    /**
+     * 默认的任务装饰器，Spring Boot 会将其应用到 @Async 使用的线程池上，使异步任务沿用调用链日志
+     */
+    @Bean
+    @ConditionalOnMissingBean(TaskDecorator.class)
+    public TaskDecorator traceTaskDecorator() {
+        return new TraceTaskDecorator();
+    }
 }
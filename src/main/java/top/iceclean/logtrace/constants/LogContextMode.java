@@ -0,0 +1,20 @@
+package top.iceclean.logtrace.constants;
+
+/**
+ * 调用链日志上下文的存放方式
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class LogContextMode {
+    /**
+     * 线程模式<br/>
+     * 日志绑定在当前线程上，调用链在起始方法返回时写出
+     */
+    public static final String CONTEXT_THREAD = "THREAD";
+    /**
+     * 响应式模式<br/>
+     * 起始方法返回 Mono/Flux 时，日志存放在 Reactor Context 中随订阅传递，
+     * 并在每个操作符的信号中临时绑定到执行线程，调用链在流结束时才写出
+     */
+    public static final String CONTEXT_REACTOR = "REACTOR";
+}
@@ -0,0 +1,17 @@
+package top.iceclean.logtrace.constants;
+
+/**
+ * 调用链的采样策略
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class LogSample {
+    /** 全部采样 */
+    public static final String SAMPLE_ALWAYS = "ALWAYS";
+    /** 按固定比例采样 */
+    public static final String SAMPLE_RATIO = "RATIO";
+    /** 按请求路径限速采样（令牌桶） */
+    public static final String SAMPLE_RATE_LIMIT = "RATE_LIMIT";
+    /** 自适应采样，使每秒采样数量趋近目标值 */
+    public static final String SAMPLE_ADAPTIVE = "ADAPTIVE";
+}
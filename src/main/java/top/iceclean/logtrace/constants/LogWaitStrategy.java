@@ -0,0 +1,17 @@
+package top.iceclean.logtrace.constants;
+
+/**
+ * 异步输出时消费线程的等待策略
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class LogWaitStrategy {
+    /** 自旋等待，延迟最低，但会占满一个 CPU 核心 */
+    public static final String WAIT_BUSY_SPIN = "BUSY_SPIN";
+    /** 自旋后让出 CPU */
+    public static final String WAIT_YIELDING = "YIELDING";
+    /** 自旋、让出后逐步休眠，兼顾延迟和 CPU 占用 */
+    public static final String WAIT_SLEEPING = "SLEEPING";
+    /** 加锁等待唤醒，CPU 占用最低 */
+    public static final String WAIT_BLOCKING = "BLOCKING";
+}
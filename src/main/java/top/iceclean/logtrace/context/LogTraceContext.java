@@ -0,0 +1,63 @@
+package top.iceclean.logtrace.context;
+
+import top.iceclean.logtrace.bean.LogTrace;
+
+/**
+ * 日志追踪上下文，所有获取、绑定、移除当前调用链日志的操作都经过这里
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class LogTraceContext {
+    /** 存放策略，固定为 ThreadLocal，常量使调用点可以直接内联 */
+    private static final TraceContextHolder HOLDER = new ThreadLocalContextHolder();
+
+    private LogTraceContext() {}
+
+    /**
+     * 获取当前上下文绑定的日志
+     * @return 当前日志，未绑定时返回 null
+     */
+    public static LogTrace get() {
+        return HOLDER.get();
+    }
+
+    /**
+     * 为当前上下文绑定日志
+     * @param logTrace 给定的日志
+     * @return 将传入的日志返回出去
+     */
+    public static LogTrace bind(LogTrace logTrace) {
+        HOLDER.set(logTrace);
+        return logTrace;
+    }
+
+    /**
+     * 移除当前上下文绑定的日志
+     */
+    public static void remove() {
+        HOLDER.remove();
+    }
+
+    /**
+     * 在当前线程临时绑定日志
+     * @param logTrace 需要绑定的日志
+     * @return 作用域，关闭时还原之前绑定的日志
+     */
+    public static TraceScope open(LogTrace logTrace) {
+        LogTrace previous = HOLDER.get();
+        HOLDER.set(logTrace);
+        return new TraceScope(previous);
+    }
+
+    /**
+     * 恢复之前的上下文，用于在线程池线程中执行完子任务后还原现场
+     * @param previous 执行子任务之前绑定的日志，可以为 null
+     */
+    public static void restore(LogTrace previous) {
+        if (previous == null) {
+            HOLDER.remove();
+        } else {
+            HOLDER.set(previous);
+        }
+    }
+}
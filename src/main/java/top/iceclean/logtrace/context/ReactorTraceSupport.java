@@ -0,0 +1,174 @@
+package top.iceclean.logtrace.context;
+
+import org.reactivestreams.Subscription;
+import reactor.core.CoreSubscriber;
+import reactor.core.Scannable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Hooks;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Operators;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+import top.iceclean.logtrace.bean.LogTrace;
+import top.iceclean.logtrace.render.ArgRenderers;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 响应式上下文模式的支持
+ * 日志存放在 Reactor Context 中，而不是线程上，每个操作符在发出信号时才临时绑定到执行线程
+ * 只有在 reactor-core 存在于类路径时才能加载该类
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class ReactorTraceSupport {
+    /** 日志在 Reactor Context 中的键 */
+    public static final Class<LogTrace> CONTEXT_KEY = LogTrace.class;
+    /** 注册到 Reactor 的钩子名称 */
+    private static final String HOOK_KEY = "log-trace";
+    /** 钩子是否已经注册 */
+    private static volatile boolean installed = false;
+
+    private ReactorTraceSupport() {}
+
+    /**
+     * 判断方法返回值是否为 Mono/Flux
+     * @param result 方法返回值
+     * @return 是则返回 true
+     */
+    public static boolean isPublisher(Object result) {
+        return result instanceof Mono || result instanceof Flux;
+    }
+
+    /**
+     * 在操作符中获取调用链日志，例如 Mono.deferContextual(ctx -> ...)
+     * @param context Reactor 上下文
+     * @return 调用链日志，没有时返回 null
+     */
+    public static LogTrace getLogTrace(ContextView context) {
+        return context.getOrDefault(CONTEXT_KEY, null);
+    }
+
+    /**
+     * 为起始方法返回的 Mono/Flux 挂上日志，并在流结束时写出
+     * @param publisher 起始方法返回的 Mono/Flux
+     * @param logTrace 调用链日志
+     * @param writer 日志写出操作
+     * @return 挂上日志后的 Mono/Flux
+     */
+    public static Object decorate(Object publisher, LogTrace logTrace, Consumer<LogTrace> writer) {
+        install();
+        // 日志交给流持有，流中方法的异常不再提前写出，只在流结束时写出
+        logTrace.ownByStream();
+        // 同一个流被多次订阅时只写出一次
+        AtomicBoolean written = new AtomicBoolean(false);
+        if (publisher instanceof Mono) {
+            return ((Mono<?>) publisher)
+                    .doOnNext(value -> logTrace.setReturnString(ArgRenderers.toString(value)))
+                    .doOnError(logTrace::exception)
+                    .doFinally(signal -> write(logTrace, writer, written))
+                    .contextWrite(Context.of(CONTEXT_KEY, logTrace));
+        }
+        AtomicLong count = new AtomicLong();
+        return ((Flux<?>) publisher)
+                .doOnNext(value -> count.incrementAndGet())
+                .doOnError(logTrace::exception)
+                .doFinally(signal -> {
+                    logTrace.setReturnString("Flux[" + count.get() + "]");
+                    write(logTrace, writer, written);
+                })
+                .contextWrite(Context.of(CONTEXT_KEY, logTrace));
+    }
+
+    /** 在流结束的线程上绑定日志并写出 */
+    private static void write(LogTrace logTrace, Consumer<LogTrace> writer, AtomicBoolean written) {
+        if (written.compareAndSet(false, true)) {
+            TraceScope scope = LogTraceContext.open(logTrace);
+            try {
+                writer.accept(logTrace);
+            } finally {
+                scope.close();
+            }
+        }
+    }
+
+    /**
+     * 注册操作符钩子，使上下文中带有日志的订阅者在收到信号时将日志绑定到当前线程
+     * 这样跨线程执行的操作符中调用的被追踪方法，仍能找到所属的调用链
+     */
+    private static void install() {
+        if (!installed) {
+            Hooks.onEachOperator(HOOK_KEY, Operators.<Object, Object>lift(ReactorTraceSupport::lift));
+            installed = true;
+        }
+    }
+
+    private static <T> CoreSubscriber<? super T> lift(Scannable scannable, CoreSubscriber<? super T> subscriber) {
+        if (subscriber instanceof TraceSubscriber) {
+            return subscriber;
+        }
+        LogTrace logTrace = getLogTrace(subscriber.currentContext());
+        // 上下文中没有日志的流不做包装，不产生额外开销
+        return logTrace == null ? subscriber : new TraceSubscriber<>(subscriber, logTrace);
+    }
+
+    /**
+     * 在每个信号发出期间绑定日志的订阅者
+     */
+    private static class TraceSubscriber<T> implements CoreSubscriber<T> {
+        private final CoreSubscriber<? super T> actual;
+        private final LogTrace logTrace;
+
+        private TraceSubscriber(CoreSubscriber<? super T> actual, LogTrace logTrace) {
+            this.actual = actual;
+            this.logTrace = logTrace;
+        }
+
+        @Override
+        public Context currentContext() {
+            return actual.currentContext();
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            TraceScope scope = LogTraceContext.open(logTrace);
+            try {
+                actual.onSubscribe(subscription);
+            } finally {
+                scope.close();
+            }
+        }
+
+        @Override
+        public void onNext(T value) {
+            TraceScope scope = LogTraceContext.open(logTrace);
+            try {
+                actual.onNext(value);
+            } finally {
+                scope.close();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            TraceScope scope = LogTraceContext.open(logTrace);
+            try {
+                actual.onError(throwable);
+            } finally {
+                scope.close();
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            TraceScope scope = LogTraceContext.open(logTrace);
+            try {
+                actual.onComplete();
+            } finally {
+                scope.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package top.iceclean.logtrace.context;
+
+import top.iceclean.logtrace.bean.LogTrace;
+
+/**
+ * 基于 ThreadLocal 的上下文存放策略（默认策略）
+ * 直接挂在线程对象上，获取时只有一次读取，不需要对线程名做哈希，也不会因为线程重名而串日志
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class ThreadLocalContextHolder implements TraceContextHolder {
+    private static final ThreadLocal<LogTrace> CONTEXT = new ThreadLocal<>();
+
+    @Override
+    public LogTrace get() {
+        return CONTEXT.get();
+    }
+
+    @Override
+    public void set(LogTrace logTrace) {
+        CONTEXT.set(logTrace);
+    }
+
+    @Override
+    public void remove() {
+        // 使用 remove 而不是 set(null)，避免线程池中的线程残留 entry
+        CONTEXT.remove();
+    }
+}
@@ -0,0 +1,47 @@
+package top.iceclean.logtrace.context;
+
+import top.iceclean.logtrace.bean.LogTrace;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 携带提交时调用链日志的 Callable
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class TraceCallable<V> implements Callable<V> {
+    private final LogTrace parent;
+    private final Callable<V> delegate;
+
+    private TraceCallable(LogTrace parent, Callable<V> delegate) {
+        this.parent = parent;
+        this.delegate = delegate;
+    }
+
+    /**
+     * 包装任务，当前没有调用链日志时原样返回
+     * @param delegate 原任务
+     * @return 包装后的任务
+     */
+    public static <V> Callable<V> wrap(Callable<V> delegate) {
+        LogTrace parent = LogTraceContext.get();
+        if (parent == null || delegate instanceof TraceCallable) {
+            return delegate;
+        }
+        return new TraceCallable<>(parent, delegate);
+    }
+
+    @Override
+    public V call() throws Exception {
+        LogTrace child = parent.fork();
+        LogTrace previous = TraceTasks.enter(child);
+        try {
+            return delegate.call();
+        } catch (Exception | Error e) {
+            TraceTasks.fail(child, e);
+            throw e;
+        } finally {
+            TraceTasks.exit(parent, child, previous);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package top.iceclean.logtrace.context;
+
+import top.iceclean.logtrace.bean.LogTrace;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * CompletableFuture 的辅助方法，异步任务沿用调用时的调用链日志
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class TraceCompletableFuture {
+    private TraceCompletableFuture() {}
+
+    public static CompletableFuture<Void> runAsync(Runnable runnable) {
+        return runAsync(runnable, ForkJoinPool.commonPool());
+    }
+
+    public static CompletableFuture<Void> runAsync(Runnable runnable, Executor executor) {
+        return CompletableFuture.runAsync(TraceRunnable.wrap(runnable), executor);
+    }
+
+    public static <U> CompletableFuture<U> supplyAsync(Supplier<U> supplier) {
+        return supplyAsync(supplier, ForkJoinPool.commonPool());
+    }
+
+    public static <U> CompletableFuture<U> supplyAsync(Supplier<U> supplier, Executor executor) {
+        return CompletableFuture.supplyAsync(wrap(supplier), executor);
+    }
+
+    /**
+     * 包装 Supplier，可用于 thenApplyAsync 等需要自行传入函数的场景
+     * @param supplier 原函数
+     * @return 包装后的函数
+     */
+    public static <U> Supplier<U> wrap(Supplier<U> supplier) {
+        LogTrace parent = LogTraceContext.get();
+        if (parent == null) {
+            return supplier;
+        }
+        return () -> {
+            LogTrace child = parent.fork();
+            LogTrace previous = TraceTasks.enter(child);
+            try {
+                return supplier.get();
+            } catch (RuntimeException | Error e) {
+                TraceTasks.fail(child, e);
+                throw e;
+            } finally {
+                TraceTasks.exit(parent, child, previous);
+            }
+        };
+    }
+}
@@ -0,0 +1,28 @@
+package top.iceclean.logtrace.context;
+
+import top.iceclean.logtrace.bean.LogTrace;
+
+/**
+ * 日志追踪上下文的存放策略
+ * 决定一条调用链的 LogTrace 绑定在哪里（线程本地变量、响应式上下文等）
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public interface TraceContextHolder {
+    /**
+     * 获取当前上下文绑定的日志
+     * @return 当前日志，未绑定时返回 null
+     */
+    LogTrace get();
+
+    /**
+     * 为当前上下文绑定日志
+     * @param logTrace 需要绑定的日志
+     */
+    void set(LogTrace logTrace);
+
+    /**
+     * 移除当前上下文绑定的日志
+     */
+    void remove();
+}
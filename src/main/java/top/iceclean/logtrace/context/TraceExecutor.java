@@ -0,0 +1,21 @@
+package top.iceclean.logtrace.context;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 将调用链日志传递到子任务的 Executor 包装
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class TraceExecutor implements Executor {
+    private final Executor delegate;
+
+    public TraceExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(TraceRunnable.wrap(command));
+    }
+}
@@ -0,0 +1,45 @@
+package top.iceclean.logtrace.context;
+
+import top.iceclean.logtrace.bean.LogTrace;
+
+/**
+ * 携带提交时调用链日志的 Runnable
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class TraceRunnable implements Runnable {
+    private final LogTrace parent;
+    private final Runnable delegate;
+
+    private TraceRunnable(LogTrace parent, Runnable delegate) {
+        this.parent = parent;
+        this.delegate = delegate;
+    }
+
+    /**
+     * 包装任务，当前没有调用链日志时原样返回
+     * @param delegate 原任务
+     * @return 包装后的任务
+     */
+    public static Runnable wrap(Runnable delegate) {
+        LogTrace parent = LogTraceContext.get();
+        if (parent == null || delegate instanceof TraceRunnable) {
+            return delegate;
+        }
+        return new TraceRunnable(parent, delegate);
+    }
+
+    @Override
+    public void run() {
+        LogTrace child = parent.fork();
+        LogTrace previous = TraceTasks.enter(child);
+        try {
+            delegate.run();
+        } catch (RuntimeException | Error e) {
+            TraceTasks.fail(child, e);
+            throw e;
+        } finally {
+            TraceTasks.exit(parent, child, previous);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package top.iceclean.logtrace.context;
+
+import top.iceclean.logtrace.bean.LogTrace;
+
+/**
+ * 临时绑定日志的作用域，关闭时还原之前的上下文
+ * 配合 try-with-resources 使用，适用于日志需要在不同线程（包括虚拟线程）之间接力执行的场景
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class TraceScope implements AutoCloseable {
+    /** 进入作用域前绑定的日志 */
+    private final LogTrace previous;
+
+    TraceScope(LogTrace previous) {
+        this.previous = previous;
+    }
+
+    @Override
+    public void close() {
+        LogTraceContext.restore(previous);
+    }
+}
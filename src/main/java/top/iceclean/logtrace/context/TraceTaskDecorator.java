@@ -0,0 +1,15 @@
+package top.iceclean.logtrace.context;
+
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * Spring 线程池的任务装饰器，使 @Async 方法和 ThreadPoolTaskExecutor 中的任务沿用提交时的调用链日志
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class TraceTaskDecorator implements TaskDecorator {
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        return TraceRunnable.wrap(runnable);
+    }
+}
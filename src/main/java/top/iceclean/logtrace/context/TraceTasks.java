@@ -0,0 +1,43 @@
+package top.iceclean.logtrace.context;
+
+import top.iceclean.logtrace.bean.LogTrace;
+
+/**
+ * 子任务执行前后对上下文的处理，供各个包装类共用
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+class TraceTasks {
+    private TraceTasks() {}
+
+    /**
+     * 在子任务线程中绑定由父日志派生出的子日志
+     * @param child 子日志
+     * @return 子任务执行前该线程绑定的日志
+     */
+    static LogTrace enter(LogTrace child) {
+        LogTrace previous = LogTraceContext.get();
+        LogTraceContext.bind(child);
+        return previous;
+    }
+
+    /**
+     * 记录子任务抛出的异常
+     * @param child 子日志
+     * @param throwable 子任务抛出的异常
+     */
+    static void fail(LogTrace child, Throwable throwable) {
+        child.exception(throwable);
+    }
+
+    /**
+     * 子任务结束，将子日志合并回父日志并还原线程原本的上下文
+     * @param parent 父日志
+     * @param child 子日志
+     * @param previous 子任务执行前该线程绑定的日志
+     */
+    static void exit(LogTrace parent, LogTrace child, LogTrace previous) {
+        parent.join(child);
+        LogTraceContext.restore(previous);
+    }
+}
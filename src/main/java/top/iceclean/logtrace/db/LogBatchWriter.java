@@ -0,0 +1,136 @@
+package top.iceclean.logtrace.db;
+
+import lombok.extern.slf4j.Slf4j;
+import top.iceclean.logtrace.config.LogTraceConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 日志的批量写入器
+ * 日志先放入缓冲区，攒够 batchSize 条或距离上次写入超过 flushInterval 时，
+ * 在写入线程中通过一个连接、一次事务批量写入，写日志的线程不进行任何数据库操作
+ * 缓冲区最多存放 bufferCapacity 条，数据库跟不上时丢弃新日志并计数，不阻塞写日志的线程
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+@Slf4j
+public class LogBatchWriter {
+    private final LogHandler logHandler;
+    /** 写入线程，所有数据库操作都在这里执行 */
+    private final ScheduledExecutorService flusher;
+    /** 待写入的日志 */
+    private List<LogRecord> buffer = new ArrayList<>();
+    /** 是否已经提交了一次按数量触发的写入 */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    /** 缓冲区满时丢弃的日志数量 */
+    private final AtomicLong dropped = new AtomicLong();
+    /** 上一次写入时已经报告过的丢弃数量 */
+    private long reportedDrops;
+
+    public LogBatchWriter(LogHandler logHandler) {
+        this.logHandler = logHandler;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "log-trace-db-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = LogTraceConfig.Database.flushInterval;
+        flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 添加一条日志，攒够一批则通知写入线程立即写入
+     * @param record 日志
+     * @return 是否放入缓冲区，缓冲区已满时丢弃并直接完成日志
+     */
+    public boolean add(LogRecord record) {
+        int size;
+        synchronized (this) {
+            size = buffer.size();
+            if (size < Math.max(1, LogTraceConfig.Database.bufferCapacity)) {
+                buffer.add(record);
+                size++;
+            } else {
+                size = -1;
+            }
+        }
+        if (size < 0) {
+            dropped.incrementAndGet();
+            record.getLogTrace().finish();
+            return false;
+        }
+        if (size >= LogTraceConfig.Database.batchSize && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(this::flush);
+        }
+        return true;
+    }
+
+    /**
+     * 获取缓冲区满时丢弃的日志数量
+     * @return 丢弃数量
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * 将缓冲区中的日志全部写入
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        reportDrops();
+        List<LogRecord> records;
+        synchronized (this) {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            records = buffer;
+            buffer = new ArrayList<>(Math.max(16, records.size()));
+        }
+        try {
+            // 超过一批的部分分批写入，避免单条语句过大
+            int batchSize = Math.max(1, LogTraceConfig.Database.batchSize);
+            for (int from = 0; from < records.size(); from += batchSize) {
+                logHandler.insertLogs(records.subList(from, Math.min(records.size(), from + batchSize)));
+            }
+        } catch (RuntimeException e) {
+            log.error("批量写入日志失败：" + e.toString());
+        } finally {
+            // 完成日志
+            for (LogRecord record : records) {
+                record.getLogTrace().finish();
+            }
+        }
+    }
+
+    /** 在写入线程中报告上次写入以来丢弃的日志数量 */
+    private void reportDrops() {
+        long total = dropped.get();
+        if (total != reportedDrops) {
+            log.warn("日志写入缓冲区已满，丢弃了 " + (total - reportedDrops) + " 条日志");
+            reportedDrops = total;
+        }
+    }
+
+    /**
+     * 关闭写入器，写入剩余的日志
+     */
+    public void close() {
+        flusher.execute(this::flush);
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(LogTraceConfig.Async.shutdownTimeout, TimeUnit.MILLISECONDS)) {
+                flusher.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            flusher.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package top.iceclean.logtrace.db;
+
+import top.iceclean.logtrace.config.LogTraceConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * 日志中重复字符串的字典
+ * 类名、方法名、请求路径和日志位置等字符串在日志表中只保存 64 位的字典 ID，字符串本身在字典表中只保存一次
+ * 字典 ID 是字符串的哈希值，写入时不需要查询数据库就能得到 ID，新出现的字符串和日志在同一个事务中写入字典表，
+ * 读取时先批量加载进程内缓存中缺少的字典项，得到本次查询用到的字典，再从中还原字符串
+ * 缓存和已写入的 ID 都按最近使用淘汰，超过上限时只淘汰最久未用的项，被淘汰的字典项下次会重新加载或重复写入（写入时忽略已存在的项）
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class LogDictionary {
+    /** 插入字典项，已存在时忽略 */
+    public static final String INSERT_DICT_SQL = "insert ignore into t_log_dict (dict_id, dict_value) values(?, ?)";
+    /** 单次加载的最大数量 */
+    private static final int LOAD_BATCH = 500;
+    /** 空字符串的 ID */
+    private static final long NULL_ID = 0;
+
+    /** 字典 ID 到字符串的缓存 */
+    private static final Map<Long, String> CACHE = lruMap();
+    /** 已经写入字典表的 ID，通过 get 判断是否存在以更新访问顺序 */
+    private static final Map<Long, Boolean> PERSISTED = lruMap();
+
+    private LogDictionary() {
+    }
+
+    /**
+     * 计算字符串的字典 ID（64 位 FNV-1a 哈希）
+     * @param value 字符串
+     * @return 字典 ID，null 为 0
+     */
+    public static long idOf(String value) {
+        if (value == null) {
+            return NULL_ID;
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == NULL_ID ? 1 : hash;
+    }
+
+    /**
+     * 获取字符串的字典 ID，尚未写入字典表的字符串放入待写入的字典项
+     * @param value 字符串
+     * @param pending 待写入的字典项
+     * @return 字典 ID
+     */
+    static long encode(String value, Map<Long, String> pending) {
+        long id = idOf(value);
+        if (id != NULL_ID && PERSISTED.get(id) == null) {
+            pending.put(id, value);
+        }
+        return id;
+    }
+
+    /**
+     * 将字典项加入写入批次
+     * @param insertDict 插入字典项的语句
+     * @param pending 待写入的字典项
+     * @throws SQLException 数据库异常
+     */
+    static void addBatch(PreparedStatement insertDict, Map<Long, String> pending) throws SQLException {
+        for (Map.Entry<Long, String> entry : pending.entrySet()) {
+            insertDict.setLong(1, entry.getKey());
+            insertDict.setString(2, entry.getValue());
+            insertDict.addBatch();
+        }
+    }
+
+    /**
+     * 事务提交后记录已写入的字典项，之后不再重复写入
+     * @param pending 已写入的字典项
+     */
+    static void markPersisted(Map<Long, String> pending) {
+        for (Long id : pending.keySet()) {
+            PERSISTED.put(id, Boolean.TRUE);
+        }
+        CACHE.putAll(pending);
+    }
+
+    /**
+     * 获取一次查询用到的字典项，缓存中没有的批量加载
+     * 返回的字典属于本次查询，之后缓存淘汰或被其他查询修改都不影响还原
+     * @param connection 数据库连接
+     * @param ids 需要的字典 ID
+     * @return 字典 ID 到字符串的映射
+     * @throws SQLException 数据库异常
+     */
+    static Map<Long, String> load(Connection connection, Collection<Long> ids) throws SQLException {
+        Map<Long, String> dict = new HashMap<>(ids.size() * 2);
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            if (id == NULL_ID || dict.containsKey(id)) {
+                continue;
+            }
+            String value = CACHE.get(id);
+            if (value != null) {
+                dict.put(id, value);
+            } else {
+                missing.add(id);
+            }
+        }
+        for (int from = 0; from < missing.size(); from += LOAD_BATCH) {
+            List<Long> batch = missing.subList(from, Math.min(missing.size(), from + LOAD_BATCH));
+            StringBuilder sql = new StringBuilder("select dict_id, dict_value from t_log_dict where dict_id in (");
+            for (int i = 0; i < batch.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(")");
+            try (PreparedStatement getDict = connection.prepareStatement(sql.toString())) {
+                for (int i = 0; i < batch.size(); i++) {
+                    getDict.setLong(i + 1, batch.get(i));
+                }
+                try (ResultSet resultSet = getDict.executeQuery()) {
+                    while (resultSet.next()) {
+                        long id = resultSet.getLong(1);
+                        String value = resultSet.getString(2);
+                        dict.put(id, value);
+                        CACHE.put(id, value);
+                    }
+                }
+            }
+        }
+        return dict;
+    }
+
+    /**
+     * 从 load 得到的字典中还原字符串
+     * @param id 字典 ID
+     * @param dict 本次查询的字典
+     * @return 字符串，不存在时为默认值
+     */
+    static String decode(long id, Map<Long, String> dict) {
+        if (id == NULL_ID) {
+            return null;
+        }
+        return dict.getOrDefault(id, LogTraceConfig.DEFAULT_VALUE);
+    }
+
+    /** 按访问顺序淘汰的有界 Map，上限为 dictCacheSize */
+    private static <V> Map<Long, V> lruMap() {
+        return Collections.synchronizedMap(new LinkedHashMap<Long, V>(1024, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+                return size() > Math.max(1, LogTraceConfig.Database.dictCacheSize);
+            }
+        });
+    }
+}
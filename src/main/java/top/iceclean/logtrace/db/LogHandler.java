@@ -1,17 +1,18 @@
 package top.iceclean.logtrace.db;
 
-import ch.qos.logback.classic.spi.ILoggingEvent;
 import top.iceclean.logtrace.bean.LogData;
 import top.iceclean.logtrace.bean.LogTrace;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import top.iceclean.logtrace.config.LogTraceConfig;
+import top.iceclean.logtrace.id.TraceIdGenerator;
+import top.iceclean.logtrace.metric.LatencyHistogram;
+import top.iceclean.logtrace.metric.RollupEntry;
 
 import javax.sql.DataSource;
 import java.sql.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 import static top.iceclean.logtrace.spi.LogFormat.*;
 
@@ -28,13 +29,13 @@ public class LogHandler {
 
     /** 插入日志头语句 */
     public static final String INSERT_HEAD_LOG_SQL = "insert into t_log_head (" +
-            "log_level, log_thread, log_site, log_mode, log_type, " +
-            "log_url, log_parent, log_method, log_params, log_return, log_stack ) " +
-            "values(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+            "head_id, log_level, log_thread, log_site, log_mode, log_type, " +
+            "log_url, log_parent, log_method, log_params, log_return, log_stack, log_duration ) " +
+            "values(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
     /** 插入日志信息语句 */
     public static final String INSERT_MESSAGE_LOG_SQL = "insert into t_log_message (" +
-            "head_id, log_level, log_site, log_message ) values(?, ?, ?, ?)";
+            "head_id, log_level, log_site, log_message, log_duration ) values(?, ?, ?, ?, ?)";
 
     @Autowired
     public void setDataSource(DataSource dataSource) {
@@ -45,222 +46,443 @@ public class LogHandler {
 
     }
     /**
-     * 插入日志头
-     * @param event logback 日志
-     * @param logTrace logTrace 日志
-     * @return 日志头主键（插入失败返回 0）
+     * 批量插入日志
+     * 日志头 ID 在创建日志时已经生成，日志头和日志信息在同一个连接和事务中批量插入，不需要等待主键返回
+     * @param records 日志列表
      */
-    public int insertHead(ILoggingEvent event, LogTrace logTrace) {
+    public void insertLogs(List<LogRecord> records) {
         LogTraceConfig.datasourceInfo = dataSource.toString();
-        int key = 0;
-        try {
-            PreparedStatement insertHead = dataSource.getConnection().prepareStatement(INSERT_HEAD_LOG_SQL, Statement.RETURN_GENERATED_KEYS);
-            insertHead.setString(1, event.getLevel().levelStr);
-            insertHead.setString(2, event.getThreadName());
-            insertHead.setString(3, event.getLoggerName());
-            insertHead.setString(4, logTrace.getMode());
-            insertHead.setString(5, logTrace.getType());
-            insertHead.setString(6, logTrace.getRequestPath());
-            insertHead.setString(7, logTrace.getClassName());
-            insertHead.setString(8, logTrace.getMethodName());
-            insertHead.setString(9, logTrace.getParameters());
-            insertHead.setString(10, logTrace.getReturnString());
-            insertHead.setString(11, logTrace.getStackString());
-            if (insertHead.executeUpdate() == 1) {
-                ResultSet generatedKeys = insertHead.getGeneratedKeys();
-                if (generatedKeys.next()) {
-                    key = generatedKeys.getInt(1);
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            // 本批新出现的字典项
+            Map<Long, String> pending = new HashMap<>(16);
+            try (PreparedStatement insertHead = connection.prepareStatement(INSERT_HEAD_LOG_SQL);
+                 PreparedStatement insertMessage = connection.prepareStatement(INSERT_MESSAGE_LOG_SQL);
+                 PreparedStatement insertDict = connection.prepareStatement(LogDictionary.INSERT_DICT_SQL)) {
+                for (LogRecord record : records) {
+                    setHeadParams(insertHead, record, pending);
+                    insertHead.addBatch();
+                    addMessageBatch(insertMessage, record.getLogTrace(), pending);
                 }
+                if (!pending.isEmpty()) {
+                    LogDictionary.addBatch(insertDict, pending);
+                    insertDict.executeBatch();
+                }
+                insertHead.executeBatch();
+                insertMessage.executeBatch();
+                connection.commit();
+                LogDictionary.markPersisted(pending);
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
             }
-            insertHead.getConnection().close();
         } catch (SQLException e) {
-            log.error("插入日志头失败：" + e.toString());
+            log.error("插入日志失败：" + e.toString());
         }
+    }
 
-        return key;
+    /** 设置日志头的插入参数，位置、请求路径、类名和方法名保存为字典 ID */
+    private void setHeadParams(PreparedStatement insertHead, LogRecord record, Map<Long, String> pending)
+            throws SQLException {
+        LogTrace logTrace = record.getLogTrace();
+        insertHead.setLong(1, logTrace.getHeadId());
+        insertHead.setString(2, record.getLevel());
+        insertHead.setString(3, record.getThread());
+        insertHead.setLong(4, LogDictionary.encode(record.getSite(), pending));
+        insertHead.setString(5, logTrace.getMode());
+        insertHead.setString(6, logTrace.getType());
+        insertHead.setLong(7, LogDictionary.encode(logTrace.getRequestPath(), pending));
+        insertHead.setLong(8, LogDictionary.encode(logTrace.getClassName(), pending));
+        insertHead.setLong(9, LogDictionary.encode(logTrace.getMethodName(), pending));
+        insertHead.setString(10, logTrace.getParameters());
+        insertHead.setString(11, logTrace.getReturnString());
+        insertHead.setString(12, logTrace.getStackString());
+        insertHead.setObject(13, logTrace.getDuration(), Types.BIGINT);
+    }
+
+    /** 将一条日志的全部日志信息加入批量插入，位置保存为字典 ID */
+    private void addMessageBatch(PreparedStatement insertMessage, LogTrace logTrace, Map<Long, String> pending)
+            throws SQLException {
+        for (LogData logData : logTrace.getLogDataList()) {
+            insertMessage.setLong(1, logTrace.getHeadId());
+            insertMessage.setString(2, logData.getLevel());
+            insertMessage.setLong(3, LogDictionary.encode(logData.getSite(), pending));
+            // 如果是函数入参记录的话，转化成入参
+            if (logData.getContent() == null) {
+                insertMessage.setString(4, plainInlineParams(logData.getParamList()));
+            } else {
+                insertMessage.setString(4, logData.getContent());
+            }
+            insertMessage.setObject(5, logData.getDuration(), Types.BIGINT);
+            insertMessage.addBatch();
+        }
+    }
+
+    /**
+     * 从数据库中获取日志（按页码分页，页数较深时需要扫描并丢弃前面的全部记录）
+     * @param level 日志等级过滤
+     * @param type 日志类型过滤
+     * @param last 倒数第 n 页
+     * @param max 每一页的数量
+     * @return 日志列表
+     */
+    public List<LogTrace> getLogTraceList(String level, String type, int last, int max) {
+        return queryLogTraceList(level, type, null, null, max, max * last, true);
     }
 
     /**
-     * 插入日志信息
-     * @param logTrace 日志
-     * @param key 日志头主键
+     * 从数据库中按游标获取日志（keyset 分页）
+     * 日志头 ID 按时间递增，取小于游标的最新 max 条，翻页开销与页数无关，且不受新插入日志的影响
+     * @param level 日志等级过滤
+     * @param type 日志类型过滤
+     * @param before 游标，即上一页最后一条日志的头 ID，为空时从最新的日志开始
+     * @param max 每一页的数量
+     * @param withMessage 是否同时加载日志信息，为 false 时只返回日志头，日志信息在展开时通过 getLogDataList 加载
+     * @return 日志列表
      */
-    public void insertMessage(LogTrace logTrace, int key) {
-        LogTraceConfig.datasourceInfo = dataSource.toString();
+    public List<LogTrace> getLogTracePage(String level, String type, Long before, int max, boolean withMessage) {
+        return getLogTracePage(level, type, before, null, null, max, withMessage);
+    }
 
-        // 检查主键
-        if (key == 0) {
-            log.error("插入日志信息失败，主键获取不到");
-            return;
+    /**
+     * 从数据库中按游标获取某一时间范围内的日志
+     * 时间范围转化为日志头 ID 的范围，查询只会访问范围内的分区
+     * @param from 起始时间（毫秒，包含），为空时不限制
+     * @param to 结束时间（毫秒，不包含），为空时不限制
+     * @see #getLogTracePage(String, String, Long, int, boolean)
+     */
+    public List<LogTrace> getLogTracePage(String level, String type, Long before, Long from, Long to,
+                                          int max, boolean withMessage) {
+        long upper = before == null || before <= 0 ? Long.MAX_VALUE : before;
+        if (to != null) {
+            upper = Math.min(upper, TraceIdGenerator.lowerBound(to));
         }
+        Long lower = from == null ? null : TraceIdGenerator.lowerBound(from);
+        return queryLogTraceList(level, type, upper, lower, max, 0, withMessage);
+    }
 
-        // 预编译
-        PreparedStatement insertMessage;
-        try {
-            insertMessage = dataSource.getConnection().prepareStatement(INSERT_MESSAGE_LOG_SQL);
-        } catch (SQLException e) {
-            log.error("预编译语句失败：" + e.toString());
-            return;
+    /**
+     * 按日志头 ID 获取日志
+     * @param headIds 日志头 ID
+     * @return 日志列表，从新到旧
+     */
+    public List<LogTrace> getLogTraceList(Collection<Long> headIds) {
+        LogTraceConfig.datasourceInfo = dataSource.toString();
+        if (headIds.isEmpty()) {
+            return new ArrayList<>();
         }
+        StringBuilder sql = new StringBuilder("select * from t_log_head where head_id in (");
+        for (int i = 0; i < headIds.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") order by head_id desc");
 
-        // 依次次插入日志信息
-        List<LogData> logDataList = logTrace.getLogDataList();
-        for (LogData logData : logDataList) {
-            try {
-                insertMessage.setInt(1, key);
-                insertMessage.setString(2, logData.getLevel());
-                insertMessage.setString(3, logData.getSite());
-                // 如果是函数入参记录的话，转化成入参
-                if (logData.getContent() == null) {
-                    insertMessage.setString(4, plainInlineParams(logData.getParamList()));
-                } else {
-                    insertMessage.setString(4, logData.getContent());
+        try (Connection connection = dataSource.getConnection()) {
+            try (PreparedStatement getLogHead = connection.prepareStatement(sql.toString())) {
+                int index = 1;
+                for (Long headId : headIds) {
+                    getLogHead.setLong(index++, headId);
                 }
-                insertMessage.executeUpdate();
-            } catch (SQLException e) {
-                log.error("插入日志信息失败：" + e.toString());
+                return readLogTraceList(connection, getLogHead, true);
             }
+        } catch (SQLException e) {
+            log.error("查询日志头失败：" + e.toString());
         }
+        return new ArrayList<>();
+    }
 
-        try {
-            insertMessage.getConnection().close();
-        } catch (SQLException sqlException) {
-            sqlException.printStackTrace();
+    /**
+     * 获取一条日志的全部日志信息
+     * @param headId 日志头 ID
+     * @return 日志信息列表
+     */
+    public List<LogData> getLogDataList(long headId) {
+        List<LogData> logDataList = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection()) {
+            List<MessageRow> rows = getMessageRows(connection, Collections.singletonList(headId))
+                    .getOrDefault(headId, Collections.emptyList());
+            Set<Long> dictIds = new HashSet<>();
+            for (MessageRow row : rows) {
+                dictIds.add(row.site);
+            }
+            Map<Long, String> dict = LogDictionary.load(connection, dictIds);
+            for (MessageRow row : rows) {
+                logDataList.add(row.toLogData(dict));
+            }
+        } catch (SQLException e) {
+            log.error("查询日志信息失败：" + e.toString());
         }
+        return logDataList;
     }
 
     /**
-     * 从数据库中获取日志
-     * @param level 日志等级过滤
-     * @param type 日志类型过滤
-     * @param last 倒数第 n 页
-     * @param max 每一页的数量
-     * @param offset 分页偏移量
-     * @return 日志列表
+     * 从调用统计表中获取某一时间范围内的调用趋势，不读取日志表
+     * 类名、方法名和请求路径的字典 ID 是字符串的哈希值，过滤时直接计算，不需要查询字典表
+     * @param className 类名过滤，为空时不限制
+     * @param methodName 方法名过滤，为空时不限制
+     * @param requestPath 请求路径过滤，为空时不限制
+     * @param from 起始时间（毫秒，包含）
+     * @param to 结束时间（毫秒，不包含）
+     * @param max 最多返回的数量
+     * @return 各方法各时间桶的统计，按时间桶从旧到新
      */
-    public List<LogTrace> getLogTraceList(String level, String type, int last, int max, int offset) {
-        LogTraceConfig.datasourceInfo = dataSource.toString();
+    public List<RollupEntry> getRollupList(String className, String methodName, String requestPath,
+                                           long from, long to, int max) {
+        List<RollupEntry> rollupList = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("select log_parent, log_method, log_url, bucket_time, call_count, " +
+                "error_count, total_time, max_time, histogram from t_log_rollup " +
+                "where bucket_time >= ? and bucket_time < ?");
+        List<Long> filters = new ArrayList<>(3);
+        if (className != null) {
+            sql.append(" and log_parent = ?");
+            filters.add(LogDictionary.idOf(className));
+        }
+        if (methodName != null) {
+            sql.append(" and log_method = ?");
+            filters.add(LogDictionary.idOf(methodName));
+        }
+        if (requestPath != null) {
+            sql.append(" and log_url = ?");
+            filters.add(LogDictionary.idOf(requestPath));
+        }
+        sql.append(" order by bucket_time limit ?");
 
-        // 存储结果
-        List<LogTrace> logTraceList = new ArrayList<>();
-        // 获取预编译语句
-        PreparedStatement getLogHead = getLogHeadPreparedStatement(level, type, last, max, offset);
-        PreparedStatement getLogData = getLogDataPreparedStatement();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement getRollup = connection.prepareStatement(sql.toString())) {
+            int index = 1;
+            getRollup.setLong(index++, from);
+            getRollup.setLong(index++, to);
+            for (Long filter : filters) {
+                getRollup.setLong(index++, filter);
+            }
+            getRollup.setInt(index, max);
 
-        if (getLogHead != null && getLogData != null) {
-            try {
-                // 把所有日志取出来
-                ResultSet resultSet = getLogHead.executeQuery();
+            List<long[]> rows = new ArrayList<>();
+            List<byte[]> histograms = new ArrayList<>();
+            Set<Long> dictIds = new HashSet<>();
+            try (ResultSet resultSet = getRollup.executeQuery()) {
                 while (resultSet.next()) {
-                    // 获取日志头信息
-                    LogTrace logTrace = new LogTrace();
-                    logTrace.setLevel(resultSet.getString(2));
-                    logTrace.setThread(resultSet.getString(3));
-                    logTrace.setSite(resultSet.getString(4));
-                    logTrace.setMode(resultSet.getString(5));
-                    logTrace.setType(resultSet.getString(6));
-                    logTrace.setRequestPath(resultSet.getString(7));
-                    logTrace.setClassName(resultSet.getString(8));
-                    logTrace.setMethodName(resultSet.getString(9));
-                    logTrace.setParamList(getParamList(resultSet.getString(10)));
-                    logTrace.setReturnString(resultSet.getString(11));
-                    logTrace.setStackList(getStackList(resultSet.getString(12)));
-                    logTrace.setRead(resultSet.getInt(13));
-                    logTrace.setCreateTime(resultSet.getString(14));
-
-                    // 获取具体日志信息列表
-                    logTrace.setLogDataList(getLogDataList(resultSet.getInt(1), getLogData));
-                    logTraceList.add(logTrace);
-                }
-                resultSet.close();
-                return logTraceList;
-            } catch (SQLException e) {
-                log.error("查询日志头失败：" + e.toString());
-            } finally {
-                try {
-                    getLogData.getConnection().close();
-                    getLogHead.getConnection().close();
-                } catch (SQLException e) {
-                    log.error("关闭连接失败：" + e.toString());
+                    long[] row = new long[8];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = resultSet.getLong(i + 1);
+                    }
+                    dictIds.add(row[0]);
+                    dictIds.add(row[1]);
+                    dictIds.add(row[2]);
+                    rows.add(row);
+                    histograms.add(resultSet.getBytes(9));
                 }
             }
+            Map<Long, String> dict = LogDictionary.load(connection, dictIds);
+            for (int i = 0; i < rows.size(); i++) {
+                long[] row = rows.get(i);
+                RollupEntry entry = new RollupEntry();
+                entry.setClassName(LogDictionary.decode(row[0], dict));
+                entry.setMethodName(LogDictionary.decode(row[1], dict));
+                entry.setRequestPath(LogDictionary.decode(row[2], dict));
+                entry.setBucketTime(row[3]);
+                entry.setCount(row[4]);
+                entry.setErrors(row[5]);
+                entry.setTotalTime(row[6]);
+                entry.setMaxTime(row[7]);
+                // 分位数由合并后的直方图计算
+                entry.setHistogram(LatencyHistogram.decode(histograms.get(i)));
+                entry.computePercentiles();
+                rollupList.add(entry);
+            }
+        } catch (SQLException e) {
+            log.error("查询调用统计失败：" + e.toString());
+        }
+        return rollupList;
+    }
+
+    private List<LogTrace> queryLogTraceList(String level, String type, Long before, Long after, int max,
+                                             int offset, boolean withMessage) {
+        LogTraceConfig.datasourceInfo = dataSource.toString();
+
+        // 日志头和日志信息共用一个连接，整页只需要两次查询（加上缓存中缺少的字典项）
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement getLogHead = getLogHeadPreparedStatement(connection, level, type, before, after, max, offset)) {
+            return readLogTraceList(connection, getLogHead, withMessage);
+        } catch (SQLException e) {
+            log.error("查询日志头失败：" + e.toString());
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * 读取日志头和日志信息，再统一加载用到的字典项并还原字符串
+     * @param connection 数据库连接
+     * @param getLogHead 查询日志头的语句
+     * @param withMessage 是否加载日志信息
+     * @return 日志列表，顺序与日志头的查询结果相同
+     */
+    private List<LogTrace> readLogTraceList(Connection connection, PreparedStatement getLogHead, boolean withMessage)
+            throws SQLException {
+        List<HeadRow> heads = new ArrayList<>();
+        try (ResultSet resultSet = getLogHead.executeQuery()) {
+            while (resultSet.next()) {
+                heads.add(new HeadRow(resultSet));
+            }
         }
+        Map<Long, List<MessageRow>> messages = Collections.emptyMap();
+        if (withMessage && !heads.isEmpty()) {
+            List<Long> headIds = new ArrayList<>(heads.size());
+            for (HeadRow head : heads) {
+                headIds.add(head.logTrace.getHeadId());
+            }
+            messages = getMessageRows(connection, headIds);
+        }
+
+        // 收集用到的字典 ID，缓存中没有的一次加载
+        Set<Long> dictIds = new HashSet<>();
+        for (HeadRow head : heads) {
+            Collections.addAll(dictIds, head.site, head.requestPath, head.className, head.methodName);
+        }
+        for (List<MessageRow> rows : messages.values()) {
+            for (MessageRow row : rows) {
+                dictIds.add(row.site);
+            }
+        }
+        Map<Long, String> dict = LogDictionary.load(connection, dictIds);
 
+        List<LogTrace> logTraceList = new ArrayList<>(heads.size());
+        for (HeadRow head : heads) {
+            LogTrace logTrace = head.toLogTrace(dict);
+            for (MessageRow row : messages.getOrDefault(logTrace.getHeadId(), Collections.emptyList())) {
+                logTrace.getLogDataList().add(row.toLogData(dict));
+            }
+            logTraceList.add(logTrace);
+        }
         return logTraceList;
     }
 
-    private List<LogData> getLogDataList(int headId, PreparedStatement getLogData) {
-        // 存放结果
-        List<LogData> logDataList = new ArrayList<>();
-        // 获取预编译语句
-        if (getLogData != null) {
-            try {
-                // 将日志信息取出来
-                getLogData.setInt(1, headId);
-                ResultSet resultSet = getLogData.executeQuery();
+    /**
+     * 使用一条 in 查询取出全部日志头的日志信息
+     * @param connection 数据库连接
+     * @param headIds 日志头 ID
+     * @return 日志头 ID 到日志信息的映射，日志信息按写入顺序排列
+     */
+    private Map<Long, List<MessageRow>> getMessageRows(Connection connection, List<Long> headIds) throws SQLException {
+        StringBuilder sql = new StringBuilder("select * from t_log_message where head_id in (");
+        for (int i = 0; i < headIds.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") order by head_id, message_id");
+
+        Map<Long, List<MessageRow>> messages = new HashMap<>(headIds.size() * 2);
+        try (PreparedStatement getLogData = connection.prepareStatement(sql.toString())) {
+            for (int i = 0; i < headIds.size(); i++) {
+                getLogData.setLong(i + 1, headIds.get(i));
+            }
+            try (ResultSet resultSet = getLogData.executeQuery()) {
+                List<MessageRow> rows = null;
+                long current = 0;
                 while (resultSet.next()) {
-                    // 判断是否为为入参，是的话将参数列表串转化为参数列表
-                    if ("COME".equals(resultSet.getString(3))) {
-                        logDataList.add(new LogData(
-                                resultSet.getString(3),
-                                resultSet.getString(4),
-                                getParamList(resultSet.getString(5))));
-                    } else {
-                        logDataList.add(new LogData(
-                                resultSet.getString(3),
-                                resultSet.getString(4),
-                                resultSet.getString(5)));
+                    // 按头 ID 排序，同一条日志的信息连续出现，只在头 ID 变化时查找
+                    long headId = resultSet.getLong(2);
+                    if (rows == null || current != headId) {
+                        rows = messages.computeIfAbsent(headId, id -> new ArrayList<>());
+                        current = headId;
                     }
+                    rows.add(new MessageRow(resultSet));
                 }
-                return logDataList;
-            } catch (SQLException e) {
-                log.error("查蓄日志信息失败：" + e.toString());
             }
         }
-        return null;
+        return messages;
     }
 
-    private PreparedStatement getLogHeadPreparedStatement(String level, String type, int last, int max, int offset) {
-        // 拼接 sql 语句
-        int num = 0;
+    private PreparedStatement getLogHeadPreparedStatement(Connection connection, String level, String type,
+                                                          Long before, Long after, int max, int offset)
+            throws SQLException {
+        // 拼接 sql 语句，过滤条件与排序字段对应索引 (log_level, log_type, head_id)
+        List<Object> params = new ArrayList<>(4);
         StringBuilder sql = new StringBuilder();
         sql.append("select * from t_log_head where 1 = 1 ");
         if (level != null && !"ALL".equals(level)) {
-            num += 1;
+            params.add(level);
             sql.append("and log_level = ? ");
         }
         if (type != null && !"ALL".equals(type)) {
-            num += 2;
+            params.add(type);
             sql.append("and log_type = ? ");
         }
-        sql.append("order by head_id desc ").append("limit ").append(offset + max * last).append(",").append(max);
-
-        try {
-            Connection connection = dataSource.getConnection();
-            PreparedStatement getLogHead = connection.prepareStatement(sql.toString());
-            switch (num) {
-                case 1: getLogHead.setString(1, level); break;
-                case 2: getLogHead.setString(1, type); break;
-                case 3:
-                    getLogHead.setString(1, level);
-                    getLogHead.setString(2, type);
-                    break;
-                default:
-            }
-            return getLogHead;
-        } catch (SQLException e) {
-            log.error("查询日志头失败：" + e.toString());
+        if (before != null) {
+            params.add(before);
+            sql.append("and head_id < ? ");
+        }
+        if (after != null) {
+            params.add(after);
+            sql.append("and head_id >= ? ");
+        }
+        sql.append("order by head_id desc limit ");
+        if (offset > 0) {
+            sql.append(offset).append(",");
         }
+        sql.append(max);
 
-        return null;
+        PreparedStatement getLogHead = connection.prepareStatement(sql.toString());
+        for (int i = 0; i < params.size(); i++) {
+            getLogHead.setObject(i + 1, params.get(i));
+        }
+        return getLogHead;
     }
 
-    private PreparedStatement getLogDataPreparedStatement() {
-        try {
-            return dataSource.getConnection().prepareStatement("select * from t_log_message where head_id = ?");
-        } catch (SQLException e) {
-            log.error("查询日志信息失败：" + e.toString());
+    /** 日志头的一行，位置、请求路径、类名和方法名为字典 ID，加载字典后再还原 */
+    private static class HeadRow {
+        private final LogTrace logTrace = new LogTrace();
+        private final long site, requestPath, className, methodName;
+
+        private HeadRow(ResultSet resultSet) throws SQLException {
+            logTrace.setHeadId(resultSet.getLong(1));
+            logTrace.setLevel(resultSet.getString(2));
+            logTrace.setThread(resultSet.getString(3));
+            site = resultSet.getLong(4);
+            logTrace.setMode(resultSet.getString(5));
+            logTrace.setType(resultSet.getString(6));
+            requestPath = resultSet.getLong(7);
+            className = resultSet.getLong(8);
+            methodName = resultSet.getLong(9);
+            logTrace.setParamList(getParamList(resultSet.getString(10)));
+            logTrace.setReturnString(resultSet.getString(11));
+            logTrace.setStackList(getStackList(resultSet.getString(12)));
+            logTrace.setRead(resultSet.getInt(13));
+            logTrace.setCreateTime(resultSet.getString(14));
+            logTrace.setDuration(resultSet.getObject(15, Long.class));
+        }
+
+        private LogTrace toLogTrace(Map<Long, String> dict) {
+            logTrace.setSite(LogDictionary.decode(site, dict));
+            logTrace.setRequestPath(LogDictionary.decode(requestPath, dict));
+            logTrace.setClassName(LogDictionary.decode(className, dict));
+            logTrace.setMethodName(LogDictionary.decode(methodName, dict));
+            return logTrace;
+        }
+    }
+
+    /** 日志信息的一行，位置为字典 ID */
+    private static class MessageRow {
+        private final String level;
+        private final long site;
+        private final String message;
+        private final Long duration;
+
+        private MessageRow(ResultSet resultSet) throws SQLException {
+            level = resultSet.getString(3);
+            site = resultSet.getLong(4);
+            message = resultSet.getString(5);
+            duration = resultSet.getObject(7, Long.class);
+        }
+
+        private LogData toLogData(Map<Long, String> dict) {
+            // 判断是否为为入参，是的话将参数列表串转化为参数列表
+            if ("COME".equals(level)) {
+                return new LogData(level, LogDictionary.decode(site, dict), getParamList(message));
+            }
+            return new LogData(level, LogDictionary.decode(site, dict), message, duration);
         }
-        return null;
     }
 }
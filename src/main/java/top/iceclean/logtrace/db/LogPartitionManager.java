@@ -0,0 +1,200 @@
+package top.iceclean.logtrace.db;
+
+import lombok.extern.slf4j.Slf4j;
+import top.iceclean.logtrace.config.LogTraceConfig;
+import top.iceclean.logtrace.id.TraceIdGenerator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 日志表的分区管理器
+ * 日志表按日志头 ID 进行 RANGE 分区，ID 的高位是时间戳，每天一个分区，分区名为 p + 日期（如 p20221018），
+ * 最后一个分区 p_max 接收尚未建好分区的日志，第一次拆分时 p_max 中已有的日志放入 p_history，
+ * p_history 的上界为当天零点，与按天的分区一样过期后整块删除
+ * 后台任务定期从 p_max 中拆出未来几天的分区，并将超过保留天数或超过空间上限的分区整块删除，
+ * 删除分区只是删除文件，不会逐行加锁，也不会把旧数据读进缓冲池
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+@Slf4j
+public class LogPartitionManager {
+    /** 需要管理的表，日志头和日志信息使用相同的分区 */
+    private static final String[] TABLES = {"t_log_head", "t_log_message"};
+    /** 兜底分区 */
+    private static final String MAX_PARTITION = "p_max";
+    /** 第一次拆分时容纳已有日志的分区 */
+    private static final String HISTORY_PARTITION = "p_history";
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("'p'yyyyMMdd");
+
+    private static final String PARTITION_SQL = "select partition_name, partition_description, " +
+            "data_length + index_length from information_schema.partitions " +
+            "where table_schema = database() and table_name = ? and partition_name is not null " +
+            "order by partition_ordinal_position";
+
+    /** 检查线程 */
+    private final ScheduledExecutorService scheduler;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    public LogPartitionManager() {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "log-trace-db-partition");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, LogTraceConfig.Database.partitionInterval);
+        scheduler.scheduleWithFixedDelay(this::maintain, 0, interval, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 预建分区并清理过期分区
+     */
+    public void maintain() {
+        try (Connection connection = LogHandler.dataSource.getConnection()) {
+            Map<String, List<Partition>> partitionMap = new HashMap<>(4);
+            for (String table : TABLES) {
+                List<Partition> partitions = getPartitions(connection, table);
+                if (partitions.isEmpty() || !MAX_PARTITION.equals(partitions.get(partitions.size() - 1).name)) {
+                    log.warn("日志表 {} 未按 mysql.sql 分区，跳过分区管理", table);
+                    return;
+                }
+                partitionMap.put(table, partitions);
+            }
+
+            LocalDate today = LocalDate.now(zone);
+            for (String table : TABLES) {
+                prepare(connection, table, partitionMap.get(table), today);
+            }
+            purge(connection, partitionMap, today);
+        } catch (SQLException | RuntimeException e) {
+            log.error("日志分区维护失败：" + e.toString());
+        }
+    }
+
+    /**
+     * 从 p_max 中拆出今天和未来几天的分区，p_max 中只有尚未到来的日志，拆分时几乎不需要移动数据
+     * 第一次拆分时（只有 p_max）表中可能已有日志，先拆出 p_history 容纳今天以前的日志，不会并入今天的分区
+     */
+    private void prepare(Connection connection, String table, List<Partition> partitions, LocalDate today)
+            throws SQLException {
+        long lastBound = partitions.size() > 1 ? partitions.get(partitions.size() - 2).bound : Long.MIN_VALUE;
+        StringBuilder sql = new StringBuilder();
+        if (partitions.size() == 1) {
+            lastBound = boundOf(today);
+            sql.append("partition ").append(HISTORY_PARTITION).append(" values less than (").append(lastBound).append(")");
+        }
+        for (int i = 0; i <= LogTraceConfig.Database.prepareDays; i++) {
+            LocalDate day = today.plusDays(i);
+            long bound = boundOf(day.plusDays(1));
+            if (bound <= lastBound) {
+                continue;
+            }
+            sql.append(sql.length() == 0 ? "" : ", ")
+                    .append("partition ").append(day.format(NAME_FORMAT))
+                    .append(" values less than (").append(bound).append(")");
+            lastBound = bound;
+        }
+        if (sql.length() > 0) {
+            execute(connection, "alter table " + table + " reorganize partition " + MAX_PARTITION + " into (" +
+                    sql + ", partition " + MAX_PARTITION + " values less than maxvalue)");
+        }
+    }
+
+    /** 删除超过保留天数的分区，仍然超过空间上限时从最旧的分区继续删除，今天及以后的分区不会被删除 */
+    private void purge(Connection connection, Map<String, List<Partition>> partitionMap, LocalDate today)
+            throws SQLException {
+        // 以日志头表的分区为准，合计两张表中同名分区的大小
+        Map<String, Long> sizeMap = new HashMap<>(16);
+        long totalSize = 0;
+        for (List<Partition> partitions : partitionMap.values()) {
+            for (Partition partition : partitions) {
+                sizeMap.merge(partition.name, partition.size, Long::sum);
+                totalSize += partition.size;
+            }
+        }
+
+        long todayBound = boundOf(today);
+        int retentionDays = LogTraceConfig.Database.retentionDays;
+        long expireBound = retentionDays > 0 ? boundOf(today.minusDays(retentionDays)) : Long.MIN_VALUE;
+        long maxSize = LogTraceConfig.Database.maxSize * 1024 * 1024;
+
+        List<String> dropList = new ArrayList<>();
+        for (Partition partition : partitionMap.get(TABLES[0])) {
+            if (MAX_PARTITION.equals(partition.name) || partition.bound > todayBound) {
+                break;
+            }
+            boolean expired = partition.bound <= expireBound;
+            boolean oversize = maxSize > 0 && totalSize > maxSize;
+            if (!expired && !oversize) {
+                break;
+            }
+            dropList.add(partition.name);
+            totalSize -= sizeMap.getOrDefault(partition.name, 0L);
+        }
+
+        if (!dropList.isEmpty()) {
+            String names = String.join(", ", dropList);
+            for (String table : TABLES) {
+                execute(connection, "alter table " + table + " drop partition " + names);
+            }
+            log.info("删除过期日志分区：{}", names);
+        }
+    }
+
+    /** 查询表的全部分区，按分区顺序排列 */
+    private List<Partition> getPartitions(Connection connection, String table) throws SQLException {
+        List<Partition> partitions = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(PARTITION_SQL)) {
+            statement.setString(1, table);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    String description = resultSet.getString(2);
+                    long bound = "MAXVALUE".equalsIgnoreCase(description) ? Long.MAX_VALUE : Long.parseLong(description);
+                    partitions.add(new Partition(resultSet.getString(1), bound, resultSet.getLong(3)));
+                }
+            }
+        }
+        return partitions;
+    }
+
+    private void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    /** 某一天零点的日志 ID 下界 */
+    private long boundOf(LocalDate day) {
+        return TraceIdGenerator.lowerBound(day.atStartOfDay(zone).toInstant().toEpochMilli());
+    }
+
+    /**
+     * 关闭分区管理器
+     */
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /** 分区信息：分区名、上界（不包含）和占用空间 */
+    private static class Partition {
+        private final String name;
+        private final long bound;
+        private final long size;
+
+        private Partition(String name, long bound, long size) {
+            this.name = name;
+            this.bound = bound;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package top.iceclean.logtrace.db;
+
+import top.iceclean.logtrace.bean.LogTrace;
+
+/**
+ * 等待批量写入数据库的一条日志
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class LogRecord {
+    /** logback 日志事件的级别、线程和日志名 */
+    private final String level;
+    private final String thread;
+    private final String site;
+    /** 日志（调用链日志的快照或其他包的日志） */
+    private final LogTrace logTrace;
+
+    public LogRecord(String level, String thread, String site, LogTrace logTrace) {
+        this.level = level;
+        this.thread = thread;
+        this.site = site;
+        this.logTrace = logTrace;
+    }
+
+    public String getLevel() {
+        return level;
+    }
+
+    public String getThread() {
+        return thread;
+    }
+
+    public String getSite() {
+        return site;
+    }
+
+    public LogTrace getLogTrace() {
+        return logTrace;
+    }
+}
@@ -0,0 +1,200 @@
+package top.iceclean.logtrace.db;
+
+import lombok.extern.slf4j.Slf4j;
+import top.iceclean.logtrace.config.LogTraceConfig;
+import top.iceclean.logtrace.metric.LatencyHistogram;
+import top.iceclean.logtrace.metric.RollupEntry;
+import top.iceclean.logtrace.metric.TraceRollup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 调用统计的写入器
+ * 后台任务定期取出内存中已经结束的时间桶写入统计表，类名、方法名和请求路径保存为字典 ID，耗时直方图编码后随统计保存
+ * 同一时间桶已有统计时（多个实例写入同一张表，或时间桶取出后才到达的记录），先锁住该时间桶已有的统计，
+ * 次数和耗时累加、直方图按桶相加后整行覆盖写入，分位数在读取时由合并后的直方图计算
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+@Slf4j
+public class LogRollupWriter {
+    /**
+     * 写入统计语句，写入的是已经与表中统计合并后的值，所以冲突时直接覆盖
+     */
+    public static final String UPSERT_ROLLUP_SQL = "insert into t_log_rollup (" +
+            "log_parent, log_method, log_url, bucket_time, call_count, error_count, " +
+            "total_time, max_time, histogram ) " +
+            "values(?, ?, ?, ?, ?, ?, ?, ?, ?) on duplicate key update " +
+            "call_count = values(call_count), " +
+            "error_count = values(error_count), " +
+            "total_time = values(total_time), " +
+            "max_time = values(max_time), " +
+            "histogram = values(histogram)";
+
+    /** 锁住一个时间桶已有的统计，用于合并 */
+    public static final String LOCK_ROLLUP_SQL = "select log_parent, log_method, log_url, call_count, error_count, " +
+            "total_time, max_time, histogram from t_log_rollup where bucket_time = ? for update";
+
+    /** 删除过期统计语句 */
+    public static final String DELETE_ROLLUP_SQL = "delete from t_log_rollup where bucket_time < ?";
+
+    /** 清理过期统计的间隔 */
+    private static final long PURGE_INTERVAL = TimeUnit.HOURS.toMillis(1);
+    /** 多个实例同时写入同一时间桶发生死锁时的最大尝试次数 */
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final TraceRollup rollup;
+    /** 写入线程 */
+    private final ScheduledExecutorService scheduler;
+    /** 上次清理过期统计的时间 */
+    private long lastPurge;
+
+    public LogRollupWriter() {
+        this.rollup = TraceRollup.open();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "log-trace-db-rollup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, LogTraceConfig.Rollup.flushInterval);
+        scheduler.scheduleWithFixedDelay(() -> flush(false), interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 写入已经结束的时间桶，并按需清理过期统计
+     * @param all 是否连同尚未结束的时间桶一起写入
+     */
+    public void flush(boolean all) {
+        List<RollupEntry> entries = rollup.drain(all);
+        if (entries.isEmpty() && !needPurge()) {
+            return;
+        }
+        try (Connection connection = LogHandler.dataSource.getConnection()) {
+            if (!entries.isEmpty()) {
+                for (int attempt = 1; ; attempt++) {
+                    try {
+                        insertRollups(connection, entries);
+                        break;
+                    } catch (SQLTransactionRollbackException e) {
+                        // 死锁或锁等待超时，事务已回滚，重新读取并合并
+                        if (attempt >= MAX_ATTEMPTS) {
+                            throw e;
+                        }
+                    }
+                }
+            }
+            if (needPurge()) {
+                purge(connection);
+            }
+        } catch (SQLException | RuntimeException e) {
+            log.error("写入调用统计失败：" + e.toString());
+        }
+    }
+
+    /**
+     * 统计和新出现的字典项在同一个事务中写入
+     * 按时间桶锁住表中已有的统计（for update 同时锁住间隙，其他实例无法在合并期间插入同一时间桶），
+     * 与内存中的统计合并后写入，不修改传入的统计，失败重试时可以重新合并
+     */
+    private void insertRollups(Connection connection, List<RollupEntry> entries) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        Map<Long, String> pending = new HashMap<>(16);
+        try (PreparedStatement lock = connection.prepareStatement(LOCK_ROLLUP_SQL);
+             PreparedStatement upsert = connection.prepareStatement(UPSERT_ROLLUP_SQL);
+             PreparedStatement insertDict = connection.prepareStatement(LogDictionary.INSERT_DICT_SQL)) {
+            Map<Long, Map<List<Long>, RollupEntry>> existing = new HashMap<>(4);
+            for (RollupEntry entry : entries) {
+                List<Long> key = Arrays.asList(LogDictionary.encode(entry.getClassName(), pending),
+                        LogDictionary.encode(entry.getMethodName(), pending),
+                        LogDictionary.encode(entry.getRequestPath(), pending));
+                Map<List<Long>, RollupEntry> stored = existing.get(entry.getBucketTime());
+                if (stored == null) {
+                    stored = lockBucket(lock, entry.getBucketTime());
+                    existing.put(entry.getBucketTime(), stored);
+                }
+                RollupEntry old = stored.get(key);
+                long[] histogram = entry.getHistogram().clone();
+                if (old != null) {
+                    LatencyHistogram.merge(histogram, old.getHistogram());
+                }
+                upsert.setLong(1, key.get(0));
+                upsert.setLong(2, key.get(1));
+                upsert.setLong(3, key.get(2));
+                upsert.setLong(4, entry.getBucketTime());
+                upsert.setLong(5, entry.getCount() + (old == null ? 0 : old.getCount()));
+                upsert.setLong(6, entry.getErrors() + (old == null ? 0 : old.getErrors()));
+                upsert.setLong(7, entry.getTotalTime() + (old == null ? 0 : old.getTotalTime()));
+                upsert.setLong(8, Math.max(entry.getMaxTime(), old == null ? 0 : old.getMaxTime()));
+                upsert.setBytes(9, LatencyHistogram.encode(histogram));
+                upsert.addBatch();
+            }
+            if (!pending.isEmpty()) {
+                LogDictionary.addBatch(insertDict, pending);
+                insertDict.executeBatch();
+            }
+            upsert.executeBatch();
+            connection.commit();
+            LogDictionary.markPersisted(pending);
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * 锁住并读取一个时间桶中已有的统计
+     * @return 类名、方法名和请求路径的字典 ID 到统计的映射
+     */
+    private Map<List<Long>, RollupEntry> lockBucket(PreparedStatement lock, long bucketTime) throws SQLException {
+        Map<List<Long>, RollupEntry> stored = new HashMap<>(16);
+        lock.setLong(1, bucketTime);
+        try (ResultSet resultSet = lock.executeQuery()) {
+            while (resultSet.next()) {
+                RollupEntry entry = new RollupEntry();
+                entry.setCount(resultSet.getLong(4));
+                entry.setErrors(resultSet.getLong(5));
+                entry.setTotalTime(resultSet.getLong(6));
+                entry.setMaxTime(resultSet.getLong(7));
+                entry.setHistogram(LatencyHistogram.decode(resultSet.getBytes(8)));
+                stored.put(Arrays.asList(resultSet.getLong(1), resultSet.getLong(2), resultSet.getLong(3)), entry);
+            }
+        }
+        return stored;
+    }
+
+    private boolean needPurge() {
+        return LogTraceConfig.Rollup.retentionDays > 0 && System.currentTimeMillis() - lastPurge >= PURGE_INTERVAL;
+    }
+
+    /** 删除超过保留天数的统计 */
+    private void purge(Connection connection) throws SQLException {
+        lastPurge = System.currentTimeMillis();
+        try (PreparedStatement delete = connection.prepareStatement(DELETE_ROLLUP_SQL)) {
+            delete.setLong(1, lastPurge - TimeUnit.DAYS.toMillis(LogTraceConfig.Rollup.retentionDays));
+            delete.executeUpdate();
+        }
+    }
+
+    /**
+     * 关闭写入器，写入内存中剩余的统计
+     */
+    public void close() {
+        scheduler.shutdownNow();
+        rollup.close();
+        flush(true);
+    }
+}
@@ -0,0 +1,45 @@
+package top.iceclean.logtrace.dispatch;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 加锁等待生产者唤醒，CPU 占用最低，但发布事件时多一次加锁
+ * 只有存在等待中的消费线程时才加锁唤醒，等待设有上限，避免错过唤醒后一直阻塞
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class BlockingWaitStrategy implements WaitStrategy {
+    /** 单次最长等待时间（纳秒） */
+    private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    /** 等待中的消费线程数 */
+    private volatile int waiters;
+
+    @Override
+    public void idle(int idleCount) throws InterruptedException {
+        lock.lock();
+        try {
+            waiters++;
+            available.awaitNanos(MAX_WAIT_NANOS);
+        } finally {
+            waiters--;
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void signal() {
+        if (waiters > 0) {
+            lock.lock();
+            try {
+                available.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package top.iceclean.logtrace.dispatch;
+
+/**
+ * 自旋等待，延迟最低，但会占满一个 CPU 核心，只适合核心充足且对延迟敏感的场景
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class BusySpinWaitStrategy implements WaitStrategy {
+    @Override
+    public void idle(int idleCount) {
+        // 直接返回，由消费线程重新检查
+    }
+}
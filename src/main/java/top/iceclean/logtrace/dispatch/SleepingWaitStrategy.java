@@ -0,0 +1,34 @@
+package top.iceclean.logtrace.dispatch;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 先自旋，再让出 CPU，长时间空闲后每次休眠一小段时间
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class SleepingWaitStrategy implements WaitStrategy {
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 200;
+    /** 休眠时长（纳秒） */
+    private final long sleepNanos;
+
+    public SleepingWaitStrategy(long sleepNanos) {
+        this.sleepNanos = sleepNanos;
+    }
+
+    @Override
+    public void idle(int idleCount) throws InterruptedException {
+        if (idleCount < SPIN_TRIES) {
+            return;
+        }
+        if (idleCount < YIELD_TRIES) {
+            Thread.yield();
+            return;
+        }
+        LockSupport.parkNanos(sleepNanos);
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package top.iceclean.logtrace.dispatch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * 有界、无锁的多生产者环形缓冲区，每个输出（sink）有自己的消费线程
+ * <p>
+ * 生产者通过 CAS 抢占序号，写入后发布该序号；每个消费线程按序号顺序读取全部事件，各自记录消费进度。
+ * 缓冲区的容量以最慢的消费线程为准，满了之后新事件直接丢弃并计数，生产者永远不会阻塞。
+ * 最后一个消费线程处理完事件后清空槽位，缓冲区不会一直持有已处理的事件。
+ * 处理事件抛出的异常交给错误处理器，每个输出每 10 秒最多报告一次，其间的次数合并报告。
+ * 关闭时先停止接收，消费线程处理完已发布的事件后退出。
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class TraceRingBuffer<E> {
+    /** 同一个输出两次报告错误的最小间隔 */
+    private static final long ERROR_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+    private final Object[] entries;
+    /** 每个槽位还未处理该事件的消费线程数量 */
+    private final AtomicIntegerArray pending;
+    /** 每个槽位当前发布的序号，未发布为 -1 */
+    private final AtomicLongArray published;
+    private final int mask;
+    private final int capacity;
+    /** 已被生产者抢占的最大序号 */
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final List<Sink> sinks = new ArrayList<>();
+    private final WaitStrategy waitStrategy;
+    /** 缓冲区已满时丢弃的事件数量 */
+    private final LongAdder dropped = new LongAdder();
+    /** 错误处理器，参数为错误信息和异常 */
+    private final BiConsumer<String, Throwable> errorHandler;
+    private volatile boolean running;
+
+    /**
+     * @param bufferSize 缓冲区大小，向上取整为 2 的幂
+     * @param waitStrategy 消费线程的等待策略
+     * @param errorHandler 处理事件失败时的错误处理器，参数为错误信息和异常，
+     *                     在消费线程中执行，不能再写日志，否则失败的日志会再次进入缓冲区（如使用 appender 的 addError）
+     */
+    public TraceRingBuffer(int bufferSize, WaitStrategy waitStrategy, BiConsumer<String, Throwable> errorHandler) {
+        int size = Integer.highestOneBit(Math.max(bufferSize, 2) - 1) << 1;
+        this.entries = new Object[size];
+        this.published = new AtomicLongArray(size);
+        this.pending = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        this.mask = size - 1;
+        this.capacity = size;
+        this.waitStrategy = waitStrategy;
+        this.errorHandler = Objects.requireNonNull(errorHandler, "errorHandler");
+    }
+
+    /**
+     * 添加一个输出，需要在 start 之前调用
+     * @param name 输出名称，用于线程名和统计
+     * @param handler 事件处理，在该输出的消费线程中执行
+     */
+    public void addSink(String name, Consumer<E> handler) {
+        if (running) {
+            throw new IllegalStateException("sink must be added before the ring buffer starts");
+        }
+        sinks.add(new Sink(name, handler));
+    }
+
+    /** 启动所有消费线程 */
+    public void start() {
+        running = true;
+        for (Sink sink : sinks) {
+            sink.thread.start();
+        }
+    }
+
+    /**
+     * 发布事件
+     * @param event 事件
+     * @return 缓冲区已满或已关闭时丢弃事件并返回 false
+     */
+    public boolean publish(E event) {
+        if (!running) {
+            dropped.increment();
+            return false;
+        }
+        long current;
+        long next;
+        do {
+            current = claimed.get();
+            next = current + 1;
+            // 槽位还没被最慢的消费线程读过，说明缓冲区已满
+            if (next - capacity > minSequence(current)) {
+                dropped.increment();
+                return false;
+            }
+        } while (!claimed.compareAndSet(current, next));
+
+        int index = (int) next & mask;
+        entries[index] = event;
+        pending.set(index, sinks.size());
+        published.lazySet(index, next);
+        waitStrategy.signal();
+        return true;
+    }
+
+    /**
+     * 关闭缓冲区，等待消费线程处理完已发布的事件
+     * @param timeoutMillis 等待每个消费线程的最长时间
+     */
+    public void stop(long timeoutMillis) {
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (Sink sink : sinks) {
+            waitStrategy.signal();
+            try {
+                sink.thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (sink.thread.isAlive()) {
+                // 超时则不再等待，剩余事件放弃
+                sink.thread.interrupt();
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * 获取每个输出的积压数量
+     * @return 输出名称和积压数量
+     */
+    public Map<String, Long> getDepths() {
+        Map<String, Long> depths = new LinkedHashMap<>();
+        long current = claimed.get();
+        for (Sink sink : sinks) {
+            String name = sink.name;
+            for (int i = 2; depths.containsKey(name); i++) {
+                name = sink.name + "#" + i;
+            }
+            depths.put(name, Math.max(0, current - sink.sequence.get()));
+        }
+        return depths;
+    }
+
+    /** 最慢的消费线程已处理到的序号，没有消费线程时不限制 */
+    private long minSequence(long defaultValue) {
+        long min = defaultValue;
+        for (Sink sink : sinks) {
+            min = Math.min(min, sink.sequence.get());
+        }
+        return min;
+    }
+
+    /** 一个输出及其消费线程 */
+    private class Sink implements Runnable {
+        private final String name;
+        private final Consumer<E> handler;
+        /** 已处理的最大序号 */
+        private final AtomicLong sequence = new AtomicLong(-1);
+        private final Thread thread;
+        /** 上次报告错误的时间，以及之后未报告的错误次数，只在消费线程中访问 */
+        private long lastErrorTime;
+        private long suppressed;
+
+        private Sink(String name, Consumer<E> handler) {
+            this.name = name;
+            this.handler = handler;
+            this.thread = new Thread(this, "log-trace-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            long next = sequence.get() + 1;
+            int idleCount = 0;
+            while (true) {
+                int index = (int) next & mask;
+                if (published.get(index) == next) {
+                    try {
+                        handler.accept((E) entries[index]);
+                    } catch (Throwable e) {
+                        // 单个事件处理失败不影响后续事件
+                        reportError(e);
+                    }
+                    // 最后一个处理的消费线程清空槽位，之后才更新进度，生产者不会在清空前复用该槽位
+                    if (pending.decrementAndGet(index) == 0) {
+                        entries[index] = null;
+                    }
+                    sequence.lazySet(next);
+                    next++;
+                    idleCount = 0;
+                } else if (!running && next > claimed.get()) {
+                    // 已关闭且处理完全部事件
+                    return;
+                } else {
+                    try {
+                        waitStrategy.idle(idleCount++);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /** 报告处理失败，限制报告频率 */
+        private void reportError(Throwable e) {
+            long now = System.nanoTime();
+            if (lastErrorTime != 0 && now - lastErrorTime < ERROR_INTERVAL) {
+                suppressed++;
+                return;
+            }
+            String message = "log-trace 输出 " + name + " 处理日志失败" + (suppressed > 0 ? "（此前 " + suppressed + " 次失败未报告）" : "");
+            lastErrorTime = now;
+            suppressed = 0;
+            try {
+                errorHandler.accept(message, e);
+            } catch (Throwable ignored) {
+                // 错误处理器本身失败时放弃报告
+            }
+        }
+    }
+}
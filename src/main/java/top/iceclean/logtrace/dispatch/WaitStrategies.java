@@ -0,0 +1,32 @@
+package top.iceclean.logtrace.dispatch;
+
+import top.iceclean.logtrace.constants.LogWaitStrategy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 等待策略工厂
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class WaitStrategies {
+    private WaitStrategies() {}
+
+    /**
+     * 根据配置创建等待策略，未知的配置使用 SLEEPING
+     * @param strategy 策略名称，见 LogWaitStrategy
+     * @return 等待策略
+     */
+    public static WaitStrategy of(String strategy) {
+        switch (strategy) {
+            case LogWaitStrategy.WAIT_BUSY_SPIN:
+                return new BusySpinWaitStrategy();
+            case LogWaitStrategy.WAIT_YIELDING:
+                return new YieldingWaitStrategy();
+            case LogWaitStrategy.WAIT_BLOCKING:
+                return new BlockingWaitStrategy();
+            default:
+                return new SleepingWaitStrategy(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+    }
+}
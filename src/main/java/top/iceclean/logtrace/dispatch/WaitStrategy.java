@@ -0,0 +1,20 @@
+package top.iceclean.logtrace.dispatch;
+
+/**
+ * 环形缓冲区消费线程的等待策略
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public interface WaitStrategy {
+    /**
+     * 没有可处理的事件时等待一次，之后消费线程会重新检查
+     * @param idleCount 连续空闲的次数，有事件处理后重新从 0 开始
+     * @throws InterruptedException 消费线程被中断
+     */
+    void idle(int idleCount) throws InterruptedException;
+
+    /**
+     * 有新事件发布或缓冲区关闭时调用，唤醒等待中的消费线程
+     */
+    default void signal() {}
+}
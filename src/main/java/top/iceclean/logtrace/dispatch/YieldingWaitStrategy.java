@@ -0,0 +1,18 @@
+package top.iceclean.logtrace.dispatch;
+
+/**
+ * 先自旋一段时间，之后每次空闲都让出 CPU
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class YieldingWaitStrategy implements WaitStrategy {
+    /** 自旋次数 */
+    private static final int SPIN_TRIES = 100;
+
+    @Override
+    public void idle(int idleCount) {
+        if (idleCount >= SPIN_TRIES) {
+            Thread.yield();
+        }
+    }
+}
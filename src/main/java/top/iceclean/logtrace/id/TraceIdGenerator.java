@@ -0,0 +1,96 @@
+package top.iceclean.logtrace.id;
+
+import top.iceclean.logtrace.config.LogTraceConfig;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁、按时间递增的 64 位日志 ID 生成器
+ * <pre>
+ * | 1 位符号 | 41 位毫秒时间戳（自 2022-01-01 起） | 10 位节点号 | 12 位序号 |
+ * </pre>
+ * 日志头 ID 在创建日志时就确定，日志头和日志信息可以在同一批中写入数据库，ID 本身也可以作为按时间排序的分页游标
+ * 同一毫秒内序号用完或时钟回拨时，沿用上一个 ID 的时间继续递增，保证同一节点生成的 ID 严格递增
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class TraceIdGenerator {
+    /** 起始时间 2022-01-01 00:00:00 UTC */
+    public static final long EPOCH = 1640995200000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    public static final int TIMESTAMP_SHIFT = NODE_BITS + SEQUENCE_BITS;
+    private static final long MAX_NODE = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final TraceIdGenerator INSTANCE = new TraceIdGenerator(resolveNode());
+
+    /** 节点号左移后的值 */
+    private final long nodeBits;
+    /** 上一次生成的 ID */
+    private final AtomicLong last = new AtomicLong();
+
+    public TraceIdGenerator(long node) {
+        this.nodeBits = (node & MAX_NODE) << SEQUENCE_BITS;
+    }
+
+    /**
+     * 使用全局生成器生成 ID
+     * @return 日志 ID
+     */
+    public static long nextId() {
+        return INSTANCE.next();
+    }
+
+    /**
+     * 获取某一时刻之前生成的 ID 都小于的 ID 下界，用于按时间范围查询
+     * @param epochMillis 时间戳（毫秒）
+     * @return 该时刻的最小 ID
+     */
+    public static long lowerBound(long epochMillis) {
+        return Math.max(0, epochMillis - EPOCH) << TIMESTAMP_SHIFT;
+    }
+
+    /**
+     * 获取 ID 的生成时间
+     * @param id 日志 ID
+     * @return 时间戳（毫秒）
+     */
+    public static long timestampOf(long id) {
+        return (id >>> TIMESTAMP_SHIFT) + EPOCH;
+    }
+
+    /**
+     * 生成下一个 ID
+     * @return 日志 ID
+     */
+    public long next() {
+        while (true) {
+            long previous = last.get();
+            long previousTime = previous >>> TIMESTAMP_SHIFT;
+            long now = System.currentTimeMillis() - EPOCH;
+            long candidate;
+            if (now > previousTime) {
+                candidate = (now << TIMESTAMP_SHIFT) | nodeBits;
+            } else if ((previous & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                candidate = previous + 1;
+            } else {
+                // 序号用完，借用下一毫秒
+                candidate = ((previousTime + 1) << TIMESTAMP_SHIFT) | nodeBits;
+            }
+            if (last.compareAndSet(previous, candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    /** 未配置节点号时，由主机名和进程号计算 */
+    private static long resolveNode() {
+        long node = LogTraceConfig.Database.nodeId;
+        if (node >= 0) {
+            return node;
+        }
+        return ManagementFactory.getRuntimeMXBean().getName().hashCode() & MAX_NODE;
+    }
+}
@@ -0,0 +1,96 @@
+package top.iceclean.logtrace.logback;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import top.iceclean.logtrace.config.LogTraceConfig;
+import top.iceclean.logtrace.dispatch.TraceRingBuffer;
+import top.iceclean.logtrace.dispatch.WaitStrategies;
+import top.iceclean.logtrace.spi.LogFormat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 异步分发日志到各个输出
+ * 日志事件在写日志的线程中只放入环形缓冲区，控制台、文件、数据库和前端推送各自在独立的消费线程中执行，
+ * 请求的耗时不再受输出耗时的影响
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class AsyncDispatchAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+    /** 当前运行中的分发器，用于查询统计信息 */
+    private static volatile AsyncDispatchAppender current;
+
+    private final List<Appender<ILoggingEvent>> appenders = new ArrayList<>();
+    private TraceRingBuffer<ILoggingEvent> ringBuffer;
+
+    /**
+     * 添加一个输出，需要在 start 之前调用
+     * @param appender 已启动的输出
+     */
+    public void addAppender(Appender<ILoggingEvent> appender) {
+        appenders.add(appender);
+    }
+
+    @Override
+    public void start() {
+        // 失败信息写入 logback 的状态管理器，不能再经过日志输出
+        ringBuffer = new TraceRingBuffer<>(LogTraceConfig.Async.bufferSize,
+                WaitStrategies.of(LogTraceConfig.Async.waitStrategy), this::addError);
+        for (Appender<ILoggingEvent> appender : appenders) {
+            ringBuffer.addSink(appender.getName(), appender::doAppend);
+        }
+        ringBuffer.start();
+        super.start();
+        current = this;
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        // 线程名、MDC 和格式化后的消息需要在当前线程确定
+        event.prepareForDeferredProcessing();
+        if (LogTraceConfig.Async.includeCallerData) {
+            event.getCallerData();
+        }
+        // 其他包的日志在这里生成一次 OTHER 日志，各个输出共享
+        ringBuffer.publish(LogFormat.shareOtherLog(event));
+    }
+
+    /**
+     * 关闭时先处理完缓冲区中的事件，再关闭各个输出
+     */
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        ringBuffer.stop(LogTraceConfig.Async.shutdownTimeout);
+        for (Appender<ILoggingEvent> appender : appenders) {
+            appender.stop();
+        }
+        if (current == this) {
+            current = null;
+        }
+    }
+
+    /**
+     * 获取异步分发的统计信息
+     * @return 缓冲区容量、丢弃数量和每个输出的积压数量，未开启异步输出时为空
+     */
+    public static Map<String, Object> stats() {
+        AsyncDispatchAppender dispatcher = current;
+        if (dispatcher == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Object> stats = new HashMap<>(4);
+        stats.put("capacity", dispatcher.ringBuffer.getCapacity());
+        stats.put("dropped", dispatcher.ringBuffer.getDropped());
+        stats.put("depth", dispatcher.ringBuffer.getDepths());
+        return stats;
+    }
+}
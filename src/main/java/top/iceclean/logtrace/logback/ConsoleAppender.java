@@ -3,9 +3,6 @@ package top.iceclean.logtrace.logback;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import top.iceclean.logtrace.bean.LogTrace;
 import top.iceclean.logtrace.spi.LogFormat;
-import top.iceclean.logtrace.web.ViewEndPoint;
-
-import java.io.IOException;
 
 /**
  * 重写 logback 的 ConsoleAppender
@@ -17,22 +14,10 @@ public class ConsoleAppender extends ch.qos.logback.core.ConsoleAppender<ILoggin
     @Override
     protected void subAppend(ILoggingEvent event) {
         super.subAppend(event);
-        // 判断是否为 LogTrace 日志
-        if (LogFormat.isLogTrace(event)) {
-            // 完成日志
-            LogTrace logTrace = LogTrace.getLogTrace();
-            if (logTrace != null) {
-                logTrace.finish();
-            }
-        } else {
-            // 否则生成 OTHER 类型的 LogTrace 日志
-            LogTrace logTrace = LogFormat.getOtherLog(event);
-            try {
-                // 通知前端
-                ViewEndPoint.castLogMessage(logTrace);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        // 判断是否为 LogTrace 日志，是的话完成日志（推送前端由 WebSocketAppender 负责）
+        LogTrace logTrace = LogFormat.getLogTrace(event);
+        if (logTrace != null) {
+            logTrace.finish();
         }
     }
 }
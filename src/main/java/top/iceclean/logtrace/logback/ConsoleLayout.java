@@ -3,6 +3,7 @@ package top.iceclean.logtrace.logback;
 import ch.qos.logback.classic.PatternLayout;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import top.iceclean.logtrace.bean.LogTrace;
+import top.iceclean.logtrace.spi.LogFormat;
 
 /**
  * 重写 logback 的布局，针对控制台的颜色显示
@@ -17,12 +18,13 @@ public class ConsoleLayout extends PatternLayout {
             // 先拿到第一阶段格式化的内容
             String content = this.writeLoopOnConverters(event);
 
-            // 如果能拿到日志追踪器的话，则进行第二阶段格式化，给控制台输出加上颜色
-            LogTrace logTrace = LogTrace.getLogTrace();
+            // 如果是调用链日志的话，则进行第二阶段格式化，将日志内容替换为带颜色的版本
+            LogTrace logTrace = LogFormat.getLogTrace(event);
             if (logTrace != null) {
-                String[] split = content.split("(INLINE)|(RECORD)|(DETAIL)");
-                if (split.length > 1) {
-                    return split[0] + logTrace.toColorString() + "\n";
+                String message = event.getFormattedMessage();
+                int index = content.indexOf(message);
+                if (index >= 0) {
+                    return content.substring(0, index) + logTrace.toColorString() + content.substring(index + message.length());
                 }
             }
 
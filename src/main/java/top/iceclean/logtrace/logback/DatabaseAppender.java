@@ -4,7 +4,12 @@ import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.UnsynchronizedAppenderBase;
 import org.springframework.stereotype.Component;
 import top.iceclean.logtrace.bean.LogTrace;
+import top.iceclean.logtrace.config.LogTraceConfig;
+import top.iceclean.logtrace.db.LogBatchWriter;
 import top.iceclean.logtrace.db.LogHandler;
+import top.iceclean.logtrace.db.LogPartitionManager;
+import top.iceclean.logtrace.db.LogRecord;
+import top.iceclean.logtrace.db.LogRollupWriter;
 import top.iceclean.logtrace.spi.LogFormat;
 
 /**
@@ -18,26 +23,53 @@ public class DatabaseAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
 
     /** 注入数据库处理器 */
     private final LogHandler logHandler = new LogHandler();
+    /** 批量写入器，在 start 时创建 */
+    private LogBatchWriter batchWriter;
+    /** 分区管理器，开启分区时在 start 时创建 */
+    private LogPartitionManager partitionManager;
+    /** 调用统计写入器，开启调用统计时在 start 时创建 */
+    private LogRollupWriter rollupWriter;
+
+    @Override
+    public void start() {
+        batchWriter = new LogBatchWriter(logHandler);
+        if (LogTraceConfig.Database.partitioned) {
+            partitionManager = new LogPartitionManager();
+        }
+        if (LogTraceConfig.Rollup.enabled) {
+            rollupWriter = new LogRollupWriter();
+        }
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        if (batchWriter != null) {
+            batchWriter.close();
+        }
+        if (partitionManager != null) {
+            partitionManager.close();
+        }
+        if (rollupWriter != null) {
+            rollupWriter.close();
+        }
+    }
 
     @Override
     protected void append(ILoggingEvent event) {
-        // 判断日志类型
-        if (LogFormat.isLogTrace(event)) {
-            // 获取日志追踪器
-            LogTrace logTrace = LogTrace.getLogTrace();
-            if (logTrace != null) {
-                // 先插入日志头，然后插入日志信息
-                int key = logHandler.insertHead(event, logTrace);
-                logHandler.insertMessage(logTrace, key);
-                // 完成日志
-                logTrace.finish();
-            }
-        } else {
-            // 生成 OTHER 类型的日志
-            LogTrace logTrace = LogFormat.getOtherLog(event);
-            int key = logHandler.insertHead(event, logTrace);
-            logHandler.insertMessage(logTrace, key);
+        // 数据库操作本身产生的日志不再写入数据库，避免写入失败时循环产生日志
+        if (event.getLoggerName().startsWith(LogHandler.class.getPackage().getName())) {
+            return;
+        }
+
+        // 获取日志追踪器，不是调用链日志则生成 OTHER 类型的日志
+        LogTrace logTrace = LogFormat.getLogTrace(event);
+        if (logTrace == null) {
+            logTrace = LogFormat.getOtherLog(event);
         }
 
+        // 交给批量写入器，写入完成后完成日志
+        batchWriter.add(new LogRecord(event.getLevel().levelStr, event.getThreadName(), event.getLoggerName(), logTrace));
     }
 }
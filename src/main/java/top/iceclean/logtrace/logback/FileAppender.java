@@ -2,6 +2,7 @@ package top.iceclean.logtrace.logback;
 
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import top.iceclean.logtrace.bean.LogTrace;
+import top.iceclean.logtrace.spi.LogFormat;
 
 /**
  * @author : Ice'Clean
@@ -12,7 +13,7 @@ public class FileAppender extends ch.qos.logback.core.FileAppender<ILoggingEvent
     protected void subAppend(ILoggingEvent event) {
         super.subAppend(event);
         // 完成日志
-        LogTrace logTrace = LogTrace.getLogTrace();
+        LogTrace logTrace = LogFormat.getLogTrace(event);
         if (logTrace != null) {
             logTrace.finish();
         }
@@ -0,0 +1,53 @@
+package top.iceclean.logtrace.logback;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import top.iceclean.logtrace.bean.LogTrace;
+import top.iceclean.logtrace.spi.LogFormat;
+import top.iceclean.logtrace.store.LocalLogStore;
+
+import java.io.IOException;
+
+/**
+ * 将日志写入本地存储
+ * 调用链日志写入其快照，其他包的日志转换为 OTHER 类型后写入
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class LocalStoreAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+    private LocalLogStore store;
+
+    @Override
+    public void start() {
+        try {
+            store = LocalLogStore.open();
+            super.start();
+        } catch (IOException e) {
+            addError("打开本地日志存储失败", e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        LogTrace logTrace = LogFormat.getLogTrace(event);
+        boolean snapshot = logTrace != null;
+        if (!snapshot) {
+            logTrace = LogFormat.getOtherLog(event);
+        }
+        try {
+            store.append(logTrace);
+        } finally {
+            if (snapshot) {
+                logTrace.finish();
+            }
+        }
+    }
+}
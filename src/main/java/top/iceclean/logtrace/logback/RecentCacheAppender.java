@@ -0,0 +1,60 @@
+package top.iceclean.logtrace.logback;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import top.iceclean.logtrace.bean.LogTrace;
+import top.iceclean.logtrace.spi.LogFormat;
+import top.iceclean.logtrace.store.RecentTraceCache;
+
+/**
+ * 将日志放入最近日志缓存
+ * 调用链日志放入其快照，其他包的日志转换为 OTHER 类型后放入
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class RecentCacheAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+    /** 无法估算大小时使用的默认值 */
+    private static final int DEFAULT_SIZE = 1024;
+
+    private RecentTraceCache cache;
+
+    @Override
+    public void start() {
+        cache = RecentTraceCache.open();
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        LogTrace logTrace = LogFormat.getLogTrace(event);
+        boolean snapshot = logTrace != null;
+        if (!snapshot) {
+            logTrace = LogFormat.getOtherLog(event);
+        }
+        try {
+            cache.add(logTrace, sizeOf(logTrace));
+        } finally {
+            if (snapshot) {
+                logTrace.finish();
+            }
+        }
+    }
+
+    /** 以 JSON 的字符数估算占用的内存，快照的 JSON 有缓存，前端推送时也会用到 */
+    private int sizeOf(LogTrace logTrace) {
+        try {
+            return logTrace.toJson().length() * 2;
+        } catch (JsonProcessingException e) {
+            return DEFAULT_SIZE;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package top.iceclean.logtrace.logback;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import top.iceclean.logtrace.bean.LogTrace;
+import top.iceclean.logtrace.search.TraceIndex;
+import top.iceclean.logtrace.spi.LogFormat;
+
+/**
+ * 将日志加入全文索引
+ * 调用链日志使用其快照的文本，其他包的日志转换为 OTHER 类型后加入
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class SearchIndexAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+    private TraceIndex index;
+
+    @Override
+    public void start() {
+        index = TraceIndex.open();
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        if (index != null) {
+            index.close();
+        }
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        LogTrace logTrace = LogFormat.getLogTrace(event);
+        boolean snapshot = logTrace != null;
+        if (!snapshot) {
+            logTrace = LogFormat.getOtherLog(event);
+        }
+        try {
+            index.add(logTrace);
+        } finally {
+            if (snapshot) {
+                logTrace.finish();
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package top.iceclean.logtrace.logback;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import top.iceclean.logtrace.spi.LogFormat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 同步分发日志到各个输出
+ * 未开启异步输出时各个输出挂在这里，在写日志的线程中依次执行，
+ * 其他包的日志在分发前生成一次 OTHER 日志并随事件传给各个输出，所有输出看到的是同一个日志头 ID
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class SyncDispatchAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+    private final List<Appender<ILoggingEvent>> appenders = new ArrayList<>();
+
+    /**
+     * 添加一个输出，需要在 start 之前调用
+     * @param appender 已启动的输出
+     */
+    public void addAppender(Appender<ILoggingEvent> appender) {
+        appenders.add(appender);
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        ILoggingEvent shared = LogFormat.shareOtherLog(event);
+        for (Appender<ILoggingEvent> appender : appenders) {
+            appender.doAppend(shared);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        for (Appender<ILoggingEvent> appender : appenders) {
+            appender.stop();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package top.iceclean.logtrace.logback;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import top.iceclean.logtrace.bean.LogTrace;
+import top.iceclean.logtrace.spi.LogFormat;
+import top.iceclean.logtrace.web.ViewEndPoint;
+
+import java.io.IOException;
+
+/**
+ * 将日志推送到前端
+ * 调用链日志推送其快照，其他包的日志转换为 OTHER 类型后推送
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class WebSocketAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+    @Override
+    protected void append(ILoggingEvent event) {
+        LogTrace logTrace = LogFormat.getLogTrace(event);
+        boolean snapshot = logTrace != null;
+        if (!snapshot) {
+            logTrace = LogFormat.getOtherLog(event);
+        }
+        try {
+            ViewEndPoint.castLogMessage(logTrace);
+        } catch (IOException e) {
+            // 不能再通过日志输出，否则会推送失败的日志又触发推送
+            addError("日志同步到前端失败", e);
+        } finally {
+            if (snapshot) {
+                logTrace.finish();
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package top.iceclean.logtrace.metric;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时直方图，记录纳秒耗时，内存大小固定，记录和读取都不加锁
+ * 桶按对数线性划分：每个 2 的幂次区间再均分为 8 个子桶，分位数的相对误差不超过 1/16，
+ * 超过 2^40 纳秒（约 18 分钟）的耗时计入最后一个桶
+ * 读取时各个桶可能正在被写入，得到的分位数是近似值
+ * 各桶的次数可以导出并编码为紧凑的字节数组持久化，多个直方图按桶相加后仍能准确计算合并后的分位数
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class LatencyHistogram {
+    /** 每个 2 的幂次区间的子桶数量为 2^SUB_BITS */
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    /** 记录的最大幂次 */
+    private static final int MAX_EXPONENT = 40;
+    /** 桶的数量 */
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一次耗时
+     * @param nanos 耗时（纳秒），负数按 0 记录
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(indexOf(value));
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // 其他线程更新了最大值，重新比较
+        }
+        // 最后增加数量，读取时数量不会超过各个桶的合计
+        count.incrementAndGet();
+    }
+
+    /** 耗时所在的桶：小于 8 的值各占一个桶，其余按最高位的幂次和其后 3 位定位 */
+    private static int indexOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /** 桶中耗时的代表值：桶范围的中点 */
+    private static long valueOf(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_COUNT + SUB_BITS - 1;
+        long width = 1L << (exponent - SUB_BITS);
+        long lower = (long) (SUB_COUNT + index % SUB_COUNT) << (exponent - SUB_BITS);
+        return lower + width / 2;
+    }
+
+    /**
+     * 获取记录的次数
+     * @return 次数
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * 获取耗时的总和
+     * @return 总耗时（纳秒）
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * 获取最大耗时
+     * @return 最大耗时（纳秒）
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * 获取耗时分位数
+     * @param quantile 分位，如 0.99
+     * @return 分位数（纳秒），没有记录时为 0
+     */
+    public long percentile(double quantile) {
+        return percentiles(quantile)[0];
+    }
+
+    /**
+     * 一次遍历获取多个耗时分位数
+     * @param quantiles 分位，需要从小到大排列
+     * @return 各个分位数（纳秒），没有记录时为 0
+     */
+    public long[] percentiles(double... quantiles) {
+        return percentiles(bucketCounts(), max.get(), quantiles);
+    }
+
+    /**
+     * 获取各个桶的次数快照
+     * @return 各桶的次数，长度固定
+     */
+    public long[] bucketCounts() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * 根据各桶的次数计算耗时分位数，用于合并后或从数据库读出的直方图
+     * @param counts 各桶的次数，由 bucketCounts 或 decode 得到
+     * @param maxValue 最大耗时（纳秒），分位数不超过该值，未知时传 0
+     * @param quantiles 分位，需要从小到大排列
+     * @return 各个分位数（纳秒），没有记录时为 0
+     */
+    public static long[] percentiles(long[] counts, long maxValue, double... quantiles) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        long[] result = new long[quantiles.length];
+        if (total == 0) {
+            return result;
+        }
+        long seen = 0;
+        int q = 0;
+        for (int i = 0; i < counts.length && q < quantiles.length; i++) {
+            seen += counts[i];
+            while (q < quantiles.length && seen >= Math.max(1, (long) Math.ceil(quantiles[q] * total))) {
+                // 分位数不超过记录到的最大耗时（最大值可能稍晚于桶更新）
+                long value = valueOf(i);
+                result[q++] = maxValue > 0 ? Math.min(value, maxValue) : value;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 将另一组桶的次数加到目标上
+     * @param target 目标，长度固定
+     * @param counts 要加上的次数
+     */
+    public static void merge(long[] target, long[] counts) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            target[i] += counts[i];
+        }
+    }
+
+    /**
+     * 将各桶的次数编码为字节数组：只保存非空的桶，每个桶依次写入与上一个非空桶的下标差和次数，均为变长整数
+     * 耗时集中在少数几个桶内，通常只有几十个字节
+     * @param counts 各桶的次数
+     * @return 编码结果
+     */
+    public static byte[] encode(long[] counts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        int last = -1;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                writeVarLong(out, i - last);
+                writeVarLong(out, counts[i]);
+                last = i;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 解码 encode 的结果，超出范围的桶和截断的数据忽略
+     * @param bytes 编码结果，为 null 时视为空直方图
+     * @return 各桶的次数，长度固定
+     */
+    public static long[] decode(byte[] bytes) {
+        long[] counts = new long[BUCKET_COUNT];
+        if (bytes == null) {
+            return counts;
+        }
+        int[] cursor = {0};
+        long index = -1;
+        while (cursor[0] < bytes.length) {
+            long delta = readVarLong(bytes, cursor);
+            long count = readVarLong(bytes, cursor);
+            index += delta;
+            if (delta <= 0 || count < 0 || index >= BUCKET_COUNT) {
+                break;
+            }
+            counts[(int) index] = count;
+        }
+        return counts;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** 读取一个变长整数，cursor[0] 为当前位置，数据截断时返回 -1 */
+    private static long readVarLong(byte[] bytes, int[] cursor) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (cursor[0] >= bytes.length) {
+                return -1;
+            }
+            byte b = bytes[cursor[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,117 @@
+package top.iceclean.logtrace.metric;
+
+import top.iceclean.logtrace.bean.MethodMeta;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 各方法的耗时统计
+ * 每个被追踪的方法对应一个固定大小的耗时直方图，方法第一次被调用时创建，之后记录不加锁，
+ * 统计从应用启动开始累计，可以输出为 JSON 或 Prometheus 的文本格式
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class MethodMetrics {
+    /** 输出的分位数 */
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+    /** Prometheus 指标名 */
+    private static final String METRIC_NAME = "log_trace_method_duration_seconds";
+    /** 方法元数据到耗时直方图的映射，元数据本身有缓存，同一方法始终是同一个对象 */
+    private static final ConcurrentMap<MethodMeta, LatencyHistogram> HISTOGRAMS = new ConcurrentHashMap<>();
+
+    private MethodMetrics() {
+    }
+
+    /**
+     * 记录一次方法调用的耗时
+     * @param meta 方法元数据
+     * @param nanos 耗时（纳秒）
+     */
+    public static void record(MethodMeta meta, long nanos) {
+        LatencyHistogram histogram = HISTOGRAMS.get(meta);
+        if (histogram == null) {
+            histogram = HISTOGRAMS.computeIfAbsent(meta, key -> new LatencyHistogram());
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * 获取各方法的耗时统计，耗时单位为纳秒
+     * @return 各方法的类名、方法名、请求路径、调用次数、总耗时、最大耗时和 p50、p99、p999 分位数
+     */
+    public static List<Map<String, Object>> stats() {
+        List<Map<String, Object>> stats = new ArrayList<>(HISTOGRAMS.size());
+        for (Map.Entry<MethodMeta, LatencyHistogram> entry : sorted()) {
+            MethodMeta meta = entry.getKey();
+            LatencyHistogram histogram = entry.getValue();
+            long[] percentiles = histogram.percentiles(QUANTILES);
+            Map<String, Object> stat = new LinkedHashMap<>(16);
+            stat.put("className", meta.getClassName());
+            stat.put("methodName", meta.getMethodName());
+            stat.put("requestPath", meta.getRequestPath());
+            stat.put("count", histogram.getCount());
+            stat.put("sum", histogram.getSum());
+            stat.put("max", histogram.getMax());
+            stat.put("p50", percentiles[0]);
+            stat.put("p99", percentiles[1]);
+            stat.put("p999", percentiles[2]);
+            stats.add(stat);
+        }
+        return stats;
+    }
+
+    /**
+     * 以 Prometheus 文本格式输出各方法的耗时，类型为 summary，单位为秒
+     * @return 文本格式的指标
+     */
+    public static String prometheus() {
+        StringBuilder builder = new StringBuilder(256 + HISTOGRAMS.size() * 512);
+        builder.append("# HELP ").append(METRIC_NAME).append(" Duration of methods traced by log-trace.\n");
+        builder.append("# TYPE ").append(METRIC_NAME).append(" summary\n");
+        for (Map.Entry<MethodMeta, LatencyHistogram> entry : sorted()) {
+            MethodMeta meta = entry.getKey();
+            LatencyHistogram histogram = entry.getValue();
+            long[] percentiles = histogram.percentiles(QUANTILES);
+            String labels = "class=\"" + escape(meta.getMethod().getDeclaringClass().getName()) +
+                    "\",method=\"" + escape(signatureOf(meta)) + "\"";
+            for (int i = 0; i < QUANTILES.length; i++) {
+                builder.append(METRIC_NAME).append('{').append(labels)
+                        .append(",quantile=\"").append(QUANTILES[i]).append("\"} ")
+                        .append(seconds(percentiles[i])).append('\n');
+            }
+            builder.append(METRIC_NAME).append("_sum{").append(labels).append("} ")
+                    .append(seconds(histogram.getSum())).append('\n');
+            builder.append(METRIC_NAME).append("_count{").append(labels).append("} ")
+                    .append(histogram.getCount()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /** 按类名和方法名排序，输出顺序稳定 */
+    private static List<Map.Entry<MethodMeta, LatencyHistogram>> sorted() {
+        List<Map.Entry<MethodMeta, LatencyHistogram>> entries = new ArrayList<>(HISTOGRAMS.entrySet());
+        entries.sort(Comparator.comparing((Map.Entry<MethodMeta, LatencyHistogram> entry) -> entry.getKey().getClassName())
+                .thenComparing(entry -> entry.getKey().getMethodName()));
+        return entries;
+    }
+
+    /** 方法名加参数类型，如 findById(Long)，重载的方法不会得到相同的标签 */
+    private static String signatureOf(MethodMeta meta) {
+        StringJoiner joiner = new StringJoiner(",", meta.getMethodName() + "(", ")");
+        for (Class<?> type : meta.getMethod().getParameterTypes()) {
+            joiner.add(type.getSimpleName());
+        }
+        return joiner.toString();
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    /** 转义标签值中的反斜杠、双引号和换行 */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,143 @@
+package top.iceclean.logtrace.metric;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * 一个方法在一个时间桶内的调用统计，耗时单位为微秒
+ * 分位数由耗时直方图计算，直方图随统计一起持久化，同一时间桶的多次写入按桶合并
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class RollupEntry {
+    /** 时间桶的起始时间（毫秒） */
+    private long bucketTime;
+    private String className;
+    private String methodName;
+    private String requestPath;
+    /** 调用次数和错误次数 */
+    private long count;
+    private long errors;
+    /** 总耗时、最大耗时和耗时分位数 */
+    private long totalTime;
+    private long maxTime;
+    private long p50Time;
+    private long p90Time;
+    private long p99Time;
+    /** 耗时直方图各桶的次数（纳秒桶），只用于写入和合并，不输出 */
+    private long[] histogram;
+
+    /**
+     * 平均耗时
+     * @return 平均耗时（微秒），没有调用时为 0
+     */
+    public long getAvgTime() {
+        return count == 0 ? 0 : totalTime / count;
+    }
+
+    public long getBucketTime() {
+        return bucketTime;
+    }
+
+    public void setBucketTime(long bucketTime) {
+        this.bucketTime = bucketTime;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public void setClassName(String className) {
+        this.className = className;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public void setMethodName(String methodName) {
+        this.methodName = methodName;
+    }
+
+    public String getRequestPath() {
+        return requestPath;
+    }
+
+    public void setRequestPath(String requestPath) {
+        this.requestPath = requestPath;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public void setErrors(long errors) {
+        this.errors = errors;
+    }
+
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    public void setTotalTime(long totalTime) {
+        this.totalTime = totalTime;
+    }
+
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    public void setMaxTime(long maxTime) {
+        this.maxTime = maxTime;
+    }
+
+    public long getP50Time() {
+        return p50Time;
+    }
+
+    public void setP50Time(long p50Time) {
+        this.p50Time = p50Time;
+    }
+
+    public long getP90Time() {
+        return p90Time;
+    }
+
+    public void setP90Time(long p90Time) {
+        this.p90Time = p90Time;
+    }
+
+    public long getP99Time() {
+        return p99Time;
+    }
+
+    public void setP99Time(long p99Time) {
+        this.p99Time = p99Time;
+    }
+
+    @JsonIgnore
+    public long[] getHistogram() {
+        return histogram;
+    }
+
+    public void setHistogram(long[] histogram) {
+        this.histogram = histogram;
+    }
+
+    /**
+     * 根据直方图和最大耗时计算 p50、p90、p99
+     */
+    public void computePercentiles() {
+        long[] percentiles = LatencyHistogram.percentiles(histogram, maxTime * 1000, 0.5, 0.9, 0.99);
+        p50Time = percentiles[0] / 1000;
+        p90Time = percentiles[1] / 1000;
+        p99Time = percentiles[2] / 1000;
+    }
+}
@@ -0,0 +1,176 @@
+package top.iceclean.logtrace.metric;
+
+import top.iceclean.logtrace.config.LogTraceConfig;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 起始方法的调用统计
+ * 每次调用链结束时，按类名、方法名、请求路径和所在的时间桶累加调用次数、错误次数和耗时直方图，
+ * 时间桶结束后由写入器取出，连同直方图写入数据库的统计表，内存中只保留最近的一两个时间桶
+ * 记录不加锁：时间桶和方法的统计项通过并发 Map 创建，统计项内部使用原子计数，
+ * 时间桶被取出后才到达的记录会重新创建该时间桶，下次写入时与统计表中的直方图合并
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class TraceRollup {
+    /** 时间桶结束后等待多久再取出，留给正在记录的线程完成写入 */
+    private static final long GRACE_MILLIS = 1000;
+    /** 当前使用的统计 */
+    private static volatile TraceRollup current;
+
+    private final long bucketMillis;
+    private final int maxKeys;
+    /** 时间桶起始时间到该时间桶内各方法统计项的映射 */
+    private final ConcurrentSkipListMap<Long, ConcurrentMap<Key, Cell>> windows = new ConcurrentSkipListMap<>();
+    /** 因方法数量超过上限而未统计的调用次数 */
+    private final AtomicLong dropped = new AtomicLong();
+
+    private TraceRollup() {
+        this.bucketMillis = Math.max(1, LogTraceConfig.Rollup.bucketSize) * 1000L;
+        this.maxKeys = Math.max(1, LogTraceConfig.Rollup.maxKeys);
+    }
+
+    /**
+     * 按配置创建统计并设为当前统计
+     * @return 统计
+     */
+    public static TraceRollup open() {
+        TraceRollup rollup = new TraceRollup();
+        current = rollup;
+        return rollup;
+    }
+
+    /**
+     * 获取当前统计
+     * @return 统计，未开启时为 null
+     */
+    public static TraceRollup current() {
+        return current;
+    }
+
+    /**
+     * 关闭统计，之后的调用不再记录
+     */
+    public void close() {
+        if (current == this) {
+            current = null;
+        }
+    }
+
+    /**
+     * 记录一次起始方法的调用
+     * @param className 类名
+     * @param methodName 方法名
+     * @param requestPath 请求路径
+     * @param nanos 耗时（纳秒）
+     * @param error 是否出现异常
+     */
+    public void record(String className, String methodName, String requestPath, long nanos, boolean error) {
+        long bucket = System.currentTimeMillis() / bucketMillis * bucketMillis;
+        ConcurrentMap<Key, Cell> window = windows.computeIfAbsent(bucket, time -> new ConcurrentHashMap<>(64));
+        Key key = new Key(className, methodName, requestPath);
+        Cell cell = window.get(key);
+        if (cell == null) {
+            if (window.size() >= maxKeys) {
+                dropped.incrementAndGet();
+                return;
+            }
+            cell = window.computeIfAbsent(key, k -> new Cell());
+        }
+        cell.histogram.record(nanos);
+        if (error) {
+            cell.errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * 取出已经结束的时间桶，取出后从内存中移除
+     * @param all 是否连同尚未结束的时间桶一起取出（关闭时使用）
+     * @return 各时间桶内各方法的统计
+     */
+    public List<RollupEntry> drain(boolean all) {
+        long bound = System.currentTimeMillis() - bucketMillis - GRACE_MILLIS;
+        List<RollupEntry> entries = new ArrayList<>();
+        for (Long bucket : windows.keySet()) {
+            if (!all && bucket > bound) {
+                break;
+            }
+            ConcurrentMap<Key, Cell> window = windows.remove(bucket);
+            if (window == null) {
+                continue;
+            }
+            for (Map.Entry<Key, Cell> entry : window.entrySet()) {
+                entries.add(entryOf(bucket, entry.getKey(), entry.getValue()));
+            }
+        }
+        return entries;
+    }
+
+    private RollupEntry entryOf(long bucket, Key key, Cell cell) {
+        LatencyHistogram histogram = cell.histogram;
+        RollupEntry entry = new RollupEntry();
+        entry.setBucketTime(bucket);
+        entry.setClassName(key.className);
+        entry.setMethodName(key.methodName);
+        entry.setRequestPath(key.requestPath);
+        entry.setCount(histogram.getCount());
+        entry.setErrors(cell.errors.get());
+        entry.setTotalTime(histogram.getSum() / 1000);
+        entry.setMaxTime(histogram.getMax() / 1000);
+        entry.setHistogram(histogram.bucketCounts());
+        entry.computePercentiles();
+        return entry;
+    }
+
+    /**
+     * 获取因方法数量超过上限而未统计的调用次数
+     * @return 次数
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /** 统计的维度：类名、方法名和请求路径 */
+    private static class Key {
+        private final String className;
+        private final String methodName;
+        private final String requestPath;
+        private final int hash;
+
+        private Key(String className, String methodName, String requestPath) {
+            this.className = className;
+            this.methodName = methodName;
+            this.requestPath = requestPath;
+            this.hash = Objects.hash(className, methodName, requestPath);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Objects.equals(className, key.className) && Objects.equals(methodName, key.methodName)
+                    && Objects.equals(requestPath, key.requestPath);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /** 一个方法在一个时间桶内的统计项 */
+    private static class Cell {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final AtomicLong errors = new AtomicLong();
+    }
+}
@@ -0,0 +1,21 @@
+package top.iceclean.logtrace.render;
+
+/**
+ * 参数渲染器，将参数值直接写入日志缓冲区，不产生中间的 toString() 结果
+ * 被追踪方法的参数和返回值类型由 LogProcessor 在编译期生成对应的实现（类名为 类型名$$ArgRenderer）
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public interface ArgRenderer {
+    /** 生成的渲染器类名后缀 */
+    String SUFFIX = "$$ArgRenderer";
+
+    /**
+     * 渲染参数值，缓冲区长度超过 limit 后不再继续渲染（超出的部分由调用方截断）
+     * @param value 参数值，不为 null
+     * @param out 日志缓冲区
+     * @param depth 当前嵌套深度
+     * @param limit 缓冲区的长度上限
+     */
+    void render(Object value, StringBuilder out, int depth, int limit);
+}
@@ -0,0 +1,169 @@
+package top.iceclean.logtrace.render;
+
+import top.iceclean.logtrace.config.LogTraceConfig;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 参数渲染入口，按类型缓存渲染器
+ * 优先使用编译期生成的渲染器，其次是内置的数组、集合和 Map 渲染，其余类型使用 toString()
+ * 渲染受嵌套深度、元素个数和总长度限制，超过总长度后各个渲染器不再继续渲染剩余的元素和属性
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class ArgRenderers {
+    /** 省略标记 */
+    private static final String ELLIPSIS = "...";
+
+    /** 直接使用 toString() 的渲染器，只复制到超过上限的第一个字符为止 */
+    private static final ArgRenderer TO_STRING = (value, out, depth, limit) -> {
+        String string = String.valueOf(value);
+        out.append(string, 0, Math.min(string.length(), Math.max(0, limit - out.length() + 1)));
+    };
+
+    private static final ArgRenderer ARRAY = (value, out, depth, limit) -> {
+        out.append('[');
+        int length = Array.getLength(value);
+        for (int i = 0; i < length; i++) {
+            if (!appendSeparator(out, i, limit)) {
+                break;
+            }
+            render(Array.get(value, i), out, depth + 1, limit);
+        }
+        out.append(']');
+    };
+
+    private static final ArgRenderer COLLECTION = (value, out, depth, limit) -> {
+        out.append('[');
+        Iterator<?> iterator = ((Collection<?>) value).iterator();
+        for (int i = 0; iterator.hasNext(); i++) {
+            if (!appendSeparator(out, i, limit)) {
+                break;
+            }
+            render(iterator.next(), out, depth + 1, limit);
+        }
+        out.append(']');
+    };
+
+    private static final ArgRenderer MAP = (value, out, depth, limit) -> {
+        out.append('{');
+        Iterator<? extends Map.Entry<?, ?>> iterator = ((Map<?, ?>) value).entrySet().iterator();
+        for (int i = 0; iterator.hasNext(); i++) {
+            if (!appendSeparator(out, i, limit)) {
+                break;
+            }
+            Map.Entry<?, ?> entry = iterator.next();
+            render(entry.getKey(), out, depth + 1, limit);
+            out.append('=');
+            render(entry.getValue(), out, depth + 1, limit);
+        }
+        out.append('}');
+    };
+
+    /** 每种类型对应的渲染器，类卸载时随之释放 */
+    private static final ClassValue<ArgRenderer> RENDERERS = new ClassValue<ArgRenderer>() {
+        @Override
+        protected ArgRenderer computeValue(Class<?> type) {
+            return lookup(type);
+        }
+    };
+
+    private ArgRenderers() {}
+
+    /**
+     * 将参数值渲染为字符串
+     * @param value 参数值
+     * @return 渲染结果，超出长度限制的部分被截断
+     */
+    public static String toString(Object value) {
+        StringBuilder out = new StringBuilder();
+        append(value, out);
+        return out.toString();
+    }
+
+    /**
+     * 将参数值渲染到缓冲区末尾
+     * @param value 参数值
+     * @param out 日志缓冲区
+     */
+    public static void append(Object value, StringBuilder out) {
+        if (value instanceof RenderedArg) {
+            // 日志快照中已经渲染并截断过的参数直接复制
+            ((RenderedArg) value).appendTo(out);
+            return;
+        }
+        int limit = out.length() + LogTraceConfig.Render.maxLength;
+        render(value, out, 0, limit);
+        if (out.length() > limit) {
+            out.setLength(limit);
+            out.append(ELLIPSIS);
+        }
+    }
+
+    /**
+     * 渲染嵌套的值，供生成的渲染器调用
+     * @param value 参数值
+     * @param out 日志缓冲区
+     * @param depth 当前嵌套深度
+     * @param limit 缓冲区的长度上限，已经超过时不再渲染
+     */
+    public static void render(Object value, StringBuilder out, int depth, int limit) {
+        if (out.length() > limit) {
+            return;
+        }
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        ArgRenderer renderer = RENDERERS.get(value.getClass());
+        if (renderer != TO_STRING && depth >= LogTraceConfig.Render.maxDepth) {
+            // 超出深度的对象只保留类型名
+            out.append(value.getClass().getSimpleName()).append('{').append(ELLIPSIS).append('}');
+            return;
+        }
+        renderer.render(value, out, depth, limit);
+    }
+
+    /**
+     * 写入元素间的分隔符
+     * @return 超出元素个数限制时写入省略标记并返回 false，缓冲区已经超过长度上限时直接返回 false
+     */
+    private static boolean appendSeparator(StringBuilder out, int index, int limit) {
+        if (out.length() > limit) {
+            return false;
+        }
+        if (index > 0) {
+            out.append(", ");
+        }
+        if (index >= LogTraceConfig.Render.maxElements) {
+            out.append(ELLIPSIS);
+            return false;
+        }
+        return true;
+    }
+
+    private static ArgRenderer lookup(Class<?> type) {
+        if (type.isArray()) {
+            return ARRAY;
+        }
+        if (Collection.class.isAssignableFrom(type)) {
+            return COLLECTION;
+        }
+        if (Map.class.isAssignableFrom(type)) {
+            return MAP;
+        }
+        // 查找编译期生成的渲染器，JDK 自带的类型不会有
+        if (type.getClassLoader() != null) {
+            try {
+                Class<?> rendererClass = Class.forName(type.getName() + ArgRenderer.SUFFIX, true, type.getClassLoader());
+                return (ArgRenderer) rendererClass.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError ignored) {
+                // 没有生成渲染器，使用 toString()
+            }
+        }
+        return TO_STRING;
+    }
+}
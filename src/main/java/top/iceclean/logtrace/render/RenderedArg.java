@@ -0,0 +1,63 @@
+package top.iceclean.logtrace.render;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * 已经渲染好的参数值
+ * 日志快照的全部参数依次渲染到同一个缓冲区中，每个参数只记录自己所在的区间，不单独生成字符串
+ * 之后各个输出再次渲染时直接复制区间的内容，只有序列化为 JSON 时才生成字符串
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public final class RenderedArg implements CharSequence {
+    private final StringBuilder buffer;
+    private final int start;
+    private final int end;
+
+    private RenderedArg(StringBuilder buffer, int start, int end) {
+        this.buffer = buffer;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * 将参数值渲染到缓冲区末尾，缓冲区之后只能继续追加
+     * @param value 参数值
+     * @param buffer 日志快照共用的缓冲区
+     * @return 渲染结果所在的区间
+     */
+    public static RenderedArg render(Object value, StringBuilder buffer) {
+        int start = buffer.length();
+        ArgRenderers.append(value, buffer);
+        return new RenderedArg(buffer, start, buffer.length());
+    }
+
+    /**
+     * 将渲染结果复制到日志缓冲区末尾
+     * @param out 日志缓冲区
+     */
+    void appendTo(StringBuilder out) {
+        out.append(buffer, start, end);
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return buffer.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return buffer.subSequence(start + from, start + to);
+    }
+
+    @JsonValue
+    @Override
+    public String toString() {
+        return buffer.substring(start, end);
+    }
+}
@@ -0,0 +1,46 @@
+package top.iceclean.logtrace.sample;
+
+import top.iceclean.logtrace.bean.MethodMeta;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 自适应采样，根据上一个窗口的调用量调整采样概率，使每秒采样的调用链数量趋近目标值
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class AdaptiveSampler implements TraceSampler {
+    /** 统计窗口长度（纳秒） */
+    private static final long WINDOW = 1_000_000_000L;
+
+    /** 每秒目标采样数量 */
+    private final double target;
+    /** 当前采样概率 */
+    private volatile double probability = 1;
+    /** 当前窗口的起始时间 */
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    /** 当前窗口内的调用总数 */
+    private final LongAdder calls = new LongAdder();
+
+    public AdaptiveSampler(double tracesPerSecond) {
+        this.target = Math.max(tracesPerSecond, 0);
+    }
+
+    @Override
+    public boolean sample(MethodMeta meta) {
+        calls.increment();
+        long now = System.nanoTime();
+        long start = windowStart.get();
+        if (now - start >= WINDOW && windowStart.compareAndSet(start, now)) {
+            // 只有一个线程能推进窗口，由它重新计算概率
+            double rate = calls.sumThenReset() * (double) WINDOW / (now - start);
+            double next = rate <= target ? 1 : target / rate;
+            // 与旧概率取平均，避免流量抖动时概率大幅摆动
+            probability = (probability + next) / 2;
+        }
+        double current = probability;
+        return current >= 1 || ThreadLocalRandom.current().nextDouble() < current;
+    }
+}
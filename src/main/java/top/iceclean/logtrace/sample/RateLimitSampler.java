@@ -0,0 +1,65 @@
+package top.iceclean.logtrace.sample;
+
+import top.iceclean.logtrace.bean.MethodMeta;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按请求路径限速采样，每个路径一个令牌桶
+ * 非 Controller 方法（没有请求路径）以方法本身作为限速单位
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class RateLimitSampler implements TraceSampler {
+    /** 每个路径的令牌桶 */
+    private final ConcurrentMap<Object, TokenBucket> buckets = new ConcurrentHashMap<>();
+    /** 每个令牌的生成间隔（纳秒） */
+    private final long interval;
+    /** 允许的突发容量对应的时间（纳秒） */
+    private final long tolerance;
+
+    /**
+     * @param permitsPerSecond 每个路径每秒允许采样的数量
+     * @param burst 每个路径允许的突发数量
+     */
+    public RateLimitSampler(double permitsPerSecond, int burst) {
+        this.interval = (long) (1_000_000_000L / Math.max(permitsPerSecond, 0.001));
+        this.tolerance = interval * Math.max(burst - 1, 0);
+    }
+
+    @Override
+    public boolean sample(MethodMeta meta) {
+        String requestPath = meta.getRequestPath();
+        Object key = requestPath != null ? requestPath : meta.getMethod();
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new TokenBucket());
+        }
+        return bucket.tryAcquire();
+    }
+
+    /**
+     * 无锁令牌桶（GCRA 算法）
+     * 只保存下一个令牌的理论到达时间，获取令牌时用 CAS 推进
+     */
+    private class TokenBucket {
+        private final AtomicLong arrival = new AtomicLong(System.nanoTime());
+
+        private boolean tryAcquire() {
+            long now = System.nanoTime();
+            while (true) {
+                long current = arrival.get();
+                // 理论到达时间超出突发容量，说明令牌已经用完
+                if (current - now > tolerance) {
+                    return false;
+                }
+                long next = Math.max(current, now) + interval;
+                if (arrival.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
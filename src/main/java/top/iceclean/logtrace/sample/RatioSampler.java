@@ -0,0 +1,24 @@
+package top.iceclean.logtrace.sample;
+
+import top.iceclean.logtrace.bean.MethodMeta;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 按固定比例采样
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class RatioSampler implements TraceSampler {
+    /** 采样比例，取值 [0, 1] */
+    private final double ratio;
+
+    public RatioSampler(double ratio) {
+        this.ratio = Math.max(0, Math.min(1, ratio));
+    }
+
+    @Override
+    public boolean sample(MethodMeta meta) {
+        return ratio >= 1 || ThreadLocalRandom.current().nextDouble() < ratio;
+    }
+}
@@ -0,0 +1,17 @@
+package top.iceclean.logtrace.sample;
+
+import top.iceclean.logtrace.bean.MethodMeta;
+
+/**
+ * 调用链采样器，在起始方法进入时决定是否为该调用链创建日志
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public interface TraceSampler {
+    /**
+     * 判断本次调用链是否需要采样
+     * @param meta 起始方法的元数据（进入方法时已经取得，不需要再次查找）
+     * @return 需要采样则返回 true
+     */
+    boolean sample(MethodMeta meta);
+}
@@ -0,0 +1,56 @@
+package top.iceclean.logtrace.sample;
+
+import top.iceclean.logtrace.config.LogTraceConfig;
+import top.iceclean.logtrace.constants.LogSample;
+
+/**
+ * 采样器工厂，根据配置创建并缓存采样器
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class TraceSamplers {
+    /** 全部采样 */
+    public static final TraceSampler ALWAYS = meta -> true;
+
+    private static volatile TraceSampler sampler;
+
+    private TraceSamplers() {}
+
+    /**
+     * 获取当前配置的采样器
+     * @return 采样器
+     */
+    public static TraceSampler get() {
+        TraceSampler current = sampler;
+        if (current == null) {
+            synchronized (TraceSamplers.class) {
+                current = sampler;
+                if (current == null) {
+                    current = sampler = create();
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 替换采样器（配置变更或自定义采样策略时使用）
+     * @param traceSampler 新的采样器
+     */
+    public static void set(TraceSampler traceSampler) {
+        sampler = traceSampler;
+    }
+
+    private static TraceSampler create() {
+        switch (LogTraceConfig.Sample.strategy) {
+            case LogSample.SAMPLE_RATIO:
+                return new RatioSampler(LogTraceConfig.Sample.ratio);
+            case LogSample.SAMPLE_RATE_LIMIT:
+                return new RateLimitSampler(LogTraceConfig.Sample.permitsPerSecond, LogTraceConfig.Sample.burst);
+            case LogSample.SAMPLE_ADAPTIVE:
+                return new AdaptiveSampler(LogTraceConfig.Sample.tracesPerSecond);
+            default:
+                return ALWAYS;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package top.iceclean.logtrace.search;
+
+import java.util.*;
+
+/**
+ * 倒排索引的一个不可变分段
+ * 词典按字典序排列，每个词对应一个压缩的倒排列表，分段创建后不再修改，查询不需要加锁
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+class IndexSegment {
+    private final String[] terms;
+    private final PostingList[] postings;
+    /** 分段中的日志数量以及日志头 ID 的范围 */
+    final int docs;
+    final long minId, maxId;
+    /** 占用的字节数（估算） */
+    final long bytes;
+
+    private IndexSegment(String[] terms, PostingList[] postings, int docs, long minId, long maxId) {
+        this.terms = terms;
+        this.postings = postings;
+        this.docs = docs;
+        this.minId = minId;
+        this.maxId = maxId;
+        long total = 0;
+        for (int i = 0; i < terms.length; i++) {
+            total += terms[i].length() * 2L + 40 + postings[i].bytes();
+        }
+        this.bytes = total;
+    }
+
+    /**
+     * 由写入缓冲区创建分段
+     * @param buffer 词到日志头 ID 的映射，ID 可能乱序或重复
+     * @param docs 日志数量
+     * @param minId 最小的日志头 ID
+     * @param maxId 最大的日志头 ID
+     * @return 分段
+     */
+    static IndexSegment build(Map<String, IdList> buffer, int docs, long minId, long maxId) {
+        String[] terms = buffer.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        PostingList[] postings = new PostingList[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            // 编码时缓冲区可能正在被查询，不能原地排序
+            long[] ids = buffer.get(terms[i]).sortedCopy();
+            postings[i] = PostingList.encode(ids, ids.length);
+        }
+        return new IndexSegment(terms, postings, docs, minId, maxId);
+    }
+
+    /**
+     * 合并多个分段，同一个词的倒排列表合并为一个
+     * @param segments 分段
+     * @return 合并后的分段
+     */
+    static IndexSegment merge(List<IndexSegment> segments) {
+        Map<String, IdList> merged = new HashMap<>(1024);
+        int docs = 0;
+        long minId = Long.MAX_VALUE, maxId = Long.MIN_VALUE;
+        for (IndexSegment segment : segments) {
+            docs += segment.docs;
+            minId = Math.min(minId, segment.minId);
+            maxId = Math.max(maxId, segment.maxId);
+            for (int i = 0; i < segment.terms.length; i++) {
+                IdList ids = merged.computeIfAbsent(segment.terms[i], term -> new IdList());
+                ids.addAll(segment.postings[i].toArray());
+            }
+        }
+        return build(merged, docs, minId, maxId);
+    }
+
+    int termCount() {
+        return terms.length;
+    }
+
+    private PostingList get(String term) {
+        int index = Arrays.binarySearch(terms, term);
+        return index >= 0 ? postings[index] : null;
+    }
+
+    /**
+     * 查询同时包含全部词的日志
+     * 从最短的倒排列表开始，其余列表通过游标跳跃求交集
+     * @param queryTerms 查询词
+     * @param upper 日志头 ID 上界（不包含）
+     * @return 升序的日志头 ID
+     */
+    long[] search(Collection<String> queryTerms, long upper) {
+        PostingList[] lists = new PostingList[queryTerms.size()];
+        int n = 0;
+        for (String term : queryTerms) {
+            PostingList list = get(term);
+            if (list == null) {
+                return new long[0];
+            }
+            lists[n++] = list;
+        }
+        Arrays.sort(lists, Comparator.comparingInt(PostingList::size));
+
+        PostingList.Cursor[] cursors = new PostingList.Cursor[n];
+        for (int i = 1; i < n; i++) {
+            cursors[i] = lists[i].cursor();
+        }
+        IdList result = new IdList();
+        PostingList.Cursor base = lists[0].cursor();
+        outer:
+        while (base.next()) {
+            long id = base.current;
+            if (id >= upper) {
+                break;
+            }
+            for (int i = 1; i < n; i++) {
+                if (!cursors[i].advance(id)) {
+                    break outer;
+                }
+                if (cursors[i].current != id) {
+                    continue outer;
+                }
+            }
+            result.add(id);
+        }
+        return Arrays.copyOf(result.ids, result.size);
+    }
+
+    /** 可增长的 ID 数组 */
+    static class IdList {
+        long[] ids = new long[8];
+        int size;
+
+        void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        void addAll(long[] values) {
+            if (size + values.length > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(size * 2, size + values.length));
+            }
+            System.arraycopy(values, 0, ids, size, values.length);
+            size += values.length;
+        }
+
+        /**
+         * 排序并去重
+         * @return 去重后的长度
+         */
+        int sortUnique() {
+            Arrays.sort(ids, 0, size);
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                if (unique == 0 || ids[unique - 1] != ids[i]) {
+                    ids[unique++] = ids[i];
+                }
+            }
+            size = unique;
+            return unique;
+        }
+
+        /**
+         * 获取排序去重后的副本
+         * @return 升序的 ID
+         */
+        long[] sortedCopy() {
+            IdList copy = new IdList();
+            copy.ids = Arrays.copyOf(ids, size);
+            copy.size = size;
+            return Arrays.copyOf(copy.ids, copy.sortUnique());
+        }
+    }
+}
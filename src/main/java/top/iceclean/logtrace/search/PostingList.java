@@ -0,0 +1,151 @@
+package top.iceclean.logtrace.search;
+
+import java.util.Arrays;
+
+/**
+ * 压缩的倒排列表，保存升序的日志头 ID
+ * 每 128 个 ID 为一块，块内第一个 ID 单独保存，其余保存与前一个 ID 的差值并按 varint 编码，
+ * 时间相近的日志 ID 差值很小，大多只需要 1 ~ 3 个字节
+ * 求交集时通过块的第一个 ID 二分查找直接跳到目标块，不需要解码前面的块
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+class PostingList {
+    static final int BLOCK_SIZE = 128;
+
+    private final byte[] data;
+    /** 每块的第一个 ID 以及该块差值在 data 中的起始位置 */
+    private final long[] blockFirst;
+    private final int[] blockOffset;
+    private final int size;
+
+    private PostingList(byte[] data, long[] blockFirst, int[] blockOffset, int size) {
+        this.data = data;
+        this.blockFirst = blockFirst;
+        this.blockOffset = blockOffset;
+        this.size = size;
+    }
+
+    /**
+     * 编码升序、无重复的 ID
+     * @param ids ID 数组
+     * @param length 有效长度
+     * @return 倒排列表
+     */
+    static PostingList encode(long[] ids, int length) {
+        int blocks = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        long[] blockFirst = new long[blocks];
+        int[] blockOffset = new int[blocks];
+        byte[] data = new byte[Math.max(16, length * 2)];
+        int position = 0;
+        for (int i = 0; i < length; i++) {
+            if (i % BLOCK_SIZE == 0) {
+                blockFirst[i / BLOCK_SIZE] = ids[i];
+                blockOffset[i / BLOCK_SIZE] = position;
+                continue;
+            }
+            if (position + 10 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            long delta = ids[i] - ids[i - 1];
+            while ((delta & ~0x7FL) != 0) {
+                data[position++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            data[position++] = (byte) delta;
+        }
+        return new PostingList(Arrays.copyOf(data, position), blockFirst, blockOffset, length);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** 占用的字节数（估算） */
+    long bytes() {
+        return data.length + blockFirst.length * 12L + 32;
+    }
+
+    /**
+     * 解码全部 ID
+     * @return 升序的 ID
+     */
+    long[] toArray() {
+        long[] ids = new long[size];
+        Cursor cursor = cursor();
+        for (int i = 0; cursor.next(); i++) {
+            ids[i] = cursor.current;
+        }
+        return ids;
+    }
+
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    /** 顺序读取倒排列表的游标，支持跳跃到不小于目标的位置 */
+    class Cursor {
+        private int block = -1;
+        private int index;
+        private int position;
+        long current;
+
+        /**
+         * 移动到下一个 ID
+         * @return 是否还有 ID
+         */
+        boolean next() {
+            if (block >= 0 && index + 1 < BLOCK_SIZE && block * BLOCK_SIZE + index + 1 < size) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                current += delta;
+                index++;
+                return true;
+            }
+            if (block + 1 >= blockFirst.length) {
+                return false;
+            }
+            enter(block + 1);
+            return true;
+        }
+
+        /**
+         * 移动到第一个不小于 target 的 ID
+         * @param target 目标
+         * @return 是否存在这样的 ID
+         */
+        boolean advance(long target) {
+            if (block >= 0 && current >= target) {
+                return true;
+            }
+            // 目标不在当前块时，二分找到最后一个第一个 ID 不大于目标的块
+            int next = block + 1;
+            if (next < blockFirst.length && blockFirst[next] <= target) {
+                int found = Arrays.binarySearch(blockFirst, next, blockFirst.length, target);
+                enter(found >= 0 ? found : -found - 2);
+                if (current >= target) {
+                    return true;
+                }
+            }
+            while (next()) {
+                if (current >= target) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void enter(int target) {
+            block = target;
+            index = 0;
+            position = blockOffset[target];
+            current = blockFirst[target];
+        }
+    }
+}
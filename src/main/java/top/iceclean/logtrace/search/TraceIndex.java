@@ -0,0 +1,344 @@
+package top.iceclean.logtrace.search;
+
+import lombok.extern.slf4j.Slf4j;
+import top.iceclean.logtrace.bean.LogData;
+import top.iceclean.logtrace.bean.LogTrace;
+import top.iceclean.logtrace.config.LogTraceConfig;
+import top.iceclean.logtrace.id.TraceIdGenerator;
+import top.iceclean.logtrace.spi.LogFormat;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 日志的增量倒排索引，支持按日志信息、参数、返回值和异常堆栈中的文本查找日志
+ * 日志输出时对其文本分词，写入内存缓冲区；缓冲区攒够 segmentDocs 条后交给后台线程编码为不可变分段，
+ * 同一级别（日志数量在同一数量级）的分段达到 mergeFactor 个时合并为一个更大的分段，
+ * 总日志数超过 maxDocs 时整段丢弃最旧的分段
+ * 查询依次访问缓冲区、待编码的缓冲区和各个分段，返回匹配的日志头 ID，日志内容由调用方从缓存、本地存储或数据库中获取
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+@Slf4j
+public class TraceIndex {
+    /** 当前使用的索引 */
+    private static volatile TraceIndex current;
+
+    private final int segmentDocs;
+    private final int mergeFactor;
+    private final long maxDocs;
+
+    /** 写入缓冲区，由索引的锁保护 */
+    private Map<String, IndexSegment.IdList> buffer = new HashMap<>(1024);
+    private int bufferDocs;
+    private long bufferMin = Long.MAX_VALUE, bufferMax = Long.MIN_VALUE;
+    /** 已写满、等待编码的缓冲区，写满后不再修改 */
+    private final List<Sealing> sealing = new CopyOnWriteArrayList<>();
+    /** 不可变分段，从旧到新，只由后台线程替换 */
+    private volatile List<IndexSegment> segments = Collections.emptyList();
+    /** 编码和合并分段的后台线程 */
+    private final ExecutorService merger;
+
+    private TraceIndex() {
+        this.segmentDocs = Math.max(1, LogTraceConfig.Search.segmentDocs);
+        this.mergeFactor = Math.max(2, LogTraceConfig.Search.mergeFactor);
+        this.maxDocs = LogTraceConfig.Search.maxDocs;
+        this.merger = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "log-trace-index-merger");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 按配置创建索引并设为当前索引
+     * @return 索引
+     */
+    public static TraceIndex open() {
+        TraceIndex index = new TraceIndex();
+        current = index;
+        return index;
+    }
+
+    /**
+     * 获取当前索引
+     * @return 索引，未开启时为 null
+     */
+    public static TraceIndex current() {
+        return current;
+    }
+
+    /**
+     * 关闭索引
+     */
+    public void close() {
+        merger.shutdownNow();
+        if (current == this) {
+            current = null;
+        }
+    }
+
+    /**
+     * 索引一条日志，分词在锁外进行
+     * @param logTrace 日志
+     */
+    public void add(LogTrace logTrace) {
+        Set<String> tokens = TraceTokenizer.tokenize(textOf(logTrace));
+        long headId = logTrace.getHeadId() == null ? TraceIdGenerator.nextId() : logTrace.getHeadId();
+        Sealing full = null;
+        synchronized (this) {
+            for (String token : tokens) {
+                buffer.computeIfAbsent(token, key -> new IndexSegment.IdList()).add(headId);
+            }
+            bufferDocs++;
+            bufferMin = Math.min(bufferMin, headId);
+            bufferMax = Math.max(bufferMax, headId);
+            if (bufferDocs >= segmentDocs) {
+                full = new Sealing(buffer, bufferDocs, bufferMin, bufferMax);
+                // 先放入待编码列表再换新缓冲区，查询时不会漏掉
+                sealing.add(full);
+                buffer = new HashMap<>(Math.max(1024, buffer.size()));
+                bufferDocs = 0;
+                bufferMin = Long.MAX_VALUE;
+                bufferMax = Long.MIN_VALUE;
+            }
+        }
+        if (full != null) {
+            Sealing target = full;
+            merger.execute(() -> seal(target));
+        }
+    }
+
+    /** 需要索引的文本：类名、方法名、请求路径、参数、返回值、异常堆栈以及全部日志信息 */
+    private String textOf(LogTrace logTrace) {
+        StringBuilder text = LogFormat.borrowBuilder();
+        try {
+            appendText(text, logTrace.getClassName());
+            appendText(text, logTrace.getMethodName());
+            appendText(text, logTrace.getRequestPath());
+            appendText(text, logTrace.getParameters());
+            appendText(text, logTrace.getReturnString());
+            appendText(text, logTrace.getStackString());
+            for (LogData logData : logTrace.getLogDataList()) {
+                appendText(text, logData.getSite());
+                appendText(text, logData.getContent() != null ? logData.getContent()
+                        : LogFormat.plainInlineParams(logData.getParamList()));
+            }
+            return text.toString();
+        } finally {
+            LogFormat.returnBuilder(text);
+        }
+    }
+
+    private void appendText(StringBuilder text, String value) {
+        if (value != null && !LogTraceConfig.DEFAULT_VALUE.equals(value)) {
+            text.append(value).append(' ');
+        }
+    }
+
+    /** 编码写满的缓冲区，然后按需合并和清理分段 */
+    private void seal(Sealing full) {
+        try {
+            IndexSegment segment = IndexSegment.build(full.buffer, full.docs, full.minId, full.maxId);
+            List<IndexSegment> updated = new ArrayList<>(segments);
+            updated.add(segment);
+            segments = updated;
+            sealing.remove(full);
+            mergeSegments();
+            expire();
+        } catch (RuntimeException e) {
+            sealing.remove(full);
+            log.error("日志索引编码失败：" + e.toString());
+        }
+    }
+
+    /** 同一级别的分段达到 mergeFactor 个时合并，合并后可能产生更高一级的合并 */
+    private void mergeSegments() {
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            List<IndexSegment> list = segments;
+            Map<Integer, List<IndexSegment>> tiers = new TreeMap<>();
+            for (IndexSegment segment : list) {
+                tiers.computeIfAbsent(tierOf(segment.docs), tier -> new ArrayList<>()).add(segment);
+            }
+            for (List<IndexSegment> group : tiers.values()) {
+                if (group.size() >= mergeFactor) {
+                    IndexSegment result = IndexSegment.merge(group);
+                    // 合并后的分段放在被合并的第一个分段的位置，保持从旧到新的顺序
+                    List<IndexSegment> updated = new ArrayList<>(list.size());
+                    for (IndexSegment segment : list) {
+                        if (segment == group.get(0)) {
+                            updated.add(result);
+                        } else if (!group.contains(segment)) {
+                            updated.add(segment);
+                        }
+                    }
+                    segments = updated;
+                    merged = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    /** 总日志数超过上限时丢弃最旧的分段 */
+    private void expire() {
+        if (maxDocs <= 0) {
+            return;
+        }
+        List<IndexSegment> list = segments;
+        long total = 0;
+        for (IndexSegment segment : list) {
+            total += segment.docs;
+        }
+        int drop = 0;
+        while (drop < list.size() - 1 && total > maxDocs) {
+            total -= list.get(drop++).docs;
+        }
+        if (drop > 0) {
+            segments = new ArrayList<>(list.subList(drop, list.size()));
+        }
+    }
+
+    /** 分段的级别：日志数量每多 mergeFactor 倍升一级 */
+    private int tierOf(int docs) {
+        int tier = 0;
+        long bound = (long) segmentDocs * mergeFactor;
+        while (docs >= bound) {
+            tier++;
+            bound *= mergeFactor;
+        }
+        return tier;
+    }
+
+    /**
+     * 查找包含查询中全部词的日志
+     * @param query 查询文本，与日志使用相同的分词规则
+     * @param before 游标，只返回日志头 ID 小于它的日志，为空时从最新的日志开始
+     * @param max 最多返回的数量
+     * @return 日志头 ID，从新到旧
+     */
+    public List<Long> search(String query, Long before, int max) {
+        Set<String> terms = TraceTokenizer.tokenize(query);
+        if (terms.isEmpty() || max <= 0) {
+            return Collections.emptyList();
+        }
+        long upper = before == null || before <= 0 ? Long.MAX_VALUE : before;
+        // 降序保存，只保留最新的 max 个
+        TreeSet<Long> result = new TreeSet<>(Comparator.reverseOrder());
+
+        // 当前缓冲区
+        synchronized (this) {
+            collect(result, searchBuffer(buffer, terms, upper), max);
+        }
+        // 先读待编码的缓冲区再读分段，编码完成的缓冲区可能被读到两次，由结果集去重
+        for (Sealing full : sealing) {
+            if (skip(result, max, full.minId, full.maxId, upper)) {
+                continue;
+            }
+            collect(result, searchBuffer(full.buffer, terms, upper), max);
+        }
+        List<IndexSegment> list = segments;
+        for (int i = list.size() - 1; i >= 0; i--) {
+            IndexSegment segment = list.get(i);
+            if (skip(result, max, segment.minId, segment.maxId, upper)) {
+                continue;
+            }
+            collect(result, segment.search(terms, upper), max);
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** 来源中的 ID 都不在上界以下，或都比已有结果旧时跳过 */
+    private boolean skip(TreeSet<Long> result, int max, long minId, long maxId, long upper) {
+        return minId >= upper || result.size() >= max && maxId < result.last();
+    }
+
+    /** 在缓冲区中求交集，缓冲区中的 ID 可能乱序，先排序 */
+    private long[] searchBuffer(Map<String, IndexSegment.IdList> source, Set<String> terms, long upper) {
+        long[][] lists = new long[terms.size()][];
+        int n = 0;
+        for (String term : terms) {
+            IndexSegment.IdList ids = source.get(term);
+            if (ids == null) {
+                return new long[0];
+            }
+            lists[n++] = ids.sortedCopy();
+        }
+        Arrays.sort(lists, Comparator.comparingInt(ids -> ids.length));
+        IndexSegment.IdList matched = new IndexSegment.IdList();
+        outer:
+        for (long id : lists[0]) {
+            if (id >= upper) {
+                break;
+            }
+            for (int i = 1; i < n; i++) {
+                if (Arrays.binarySearch(lists[i], id) < 0) {
+                    continue outer;
+                }
+            }
+            matched.add(id);
+        }
+        return Arrays.copyOf(matched.ids, matched.size);
+    }
+
+    /** 从新到旧加入结果，超出 max 的旧结果被淘汰 */
+    private void collect(TreeSet<Long> result, long[] ids, int max) {
+        for (int i = ids.length - 1; i >= 0; i--) {
+            if (result.size() >= max && ids[i] < result.last()) {
+                break;
+            }
+            result.add(ids[i]);
+            if (result.size() > max) {
+                result.pollLast();
+            }
+        }
+    }
+
+    /**
+     * 获取索引的统计信息
+     * @return 已索引的日志数量、分段数量、词数量和占用内存
+     */
+    public static Map<String, Object> stats() {
+        TraceIndex index = current;
+        if (index == null) {
+            return Collections.emptyMap();
+        }
+        long docs = 0, terms = 0, bytes = 0;
+        List<IndexSegment> list = index.segments;
+        for (IndexSegment segment : list) {
+            docs += segment.docs;
+            terms += segment.termCount();
+            bytes += segment.bytes;
+        }
+        synchronized (index) {
+            docs += index.bufferDocs;
+        }
+        for (Sealing full : index.sealing) {
+            docs += full.docs;
+        }
+        Map<String, Object> stats = new HashMap<>(8);
+        stats.put("docs", docs);
+        stats.put("segments", list.size());
+        stats.put("terms", terms);
+        stats.put("bytes", bytes);
+        return stats;
+    }
+
+    /** 写满、等待编码的缓冲区 */
+    private static class Sealing {
+        private final Map<String, IndexSegment.IdList> buffer;
+        private final int docs;
+        private final long minId, maxId;
+
+        private Sealing(Map<String, IndexSegment.IdList> buffer, int docs, long minId, long maxId) {
+            this.buffer = buffer;
+            this.docs = docs;
+            this.minId = minId;
+            this.maxId = maxId;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package top.iceclean.logtrace.search;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 日志文本的分词器
+ * 英文和数字按非字母数字字符切分并转为小写（如 UserService_findById 切分为 userservice 和 findbyid），
+ * 中文没有分隔符，连续的汉字按二元组切分（如 用户不存在 切分为 用户、户不、不存、存在），单个汉字单独作为词
+ * 建立索引和查询使用同一套规则，查询时要求全部词都出现
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+class TraceTokenizer {
+    /** 过长的词截断，避免堆栈中的长串撑大词典 */
+    private static final int MAX_TOKEN_LENGTH = 32;
+
+    private TraceTokenizer() {
+    }
+
+    /**
+     * 切分文本
+     * @param text 文本
+     * @return 不重复的词，按出现顺序
+     */
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder word = new StringBuilder();
+        int hanStart = -1;
+        int length = text.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? text.charAt(i) : ' ';
+            boolean han = Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN;
+            if (!han && hanStart >= 0) {
+                addHan(tokens, text, hanStart, i);
+                hanStart = -1;
+            }
+            if (han) {
+                flushWord(tokens, word);
+                if (hanStart < 0) {
+                    hanStart = i;
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                if (word.length() < MAX_TOKEN_LENGTH) {
+                    word.append(Character.toLowerCase(c));
+                }
+            } else {
+                flushWord(tokens, word);
+            }
+        }
+        return tokens;
+    }
+
+    private static void flushWord(Set<String> tokens, StringBuilder word) {
+        // 单个字母没有区分度，单个数字保留
+        if (word.length() > 1 || word.length() == 1 && Character.isDigit(word.charAt(0))) {
+            tokens.add(word.toString());
+        }
+        word.setLength(0);
+    }
+
+    private static void addHan(Set<String> tokens, String text, int start, int end) {
+        if (end - start == 1) {
+            tokens.add(text.substring(start, end));
+            return;
+        }
+        for (int i = start; i + 1 < end; i++) {
+            tokens.add(text.substring(i, i + 2));
+        }
+    }
+}
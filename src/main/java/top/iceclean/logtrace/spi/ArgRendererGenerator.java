@@ -0,0 +1,233 @@
+package top.iceclean.logtrace.spi;
+
+import com.sun.tools.javac.api.JavacTrees;
+import top.iceclean.logtrace.render.ArgRenderer;
+
+import javax.annotation.processing.FilerException;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 为被追踪方法的参数和返回值类型生成参数渲染器
+ * 只处理本次编译源码中的类，按实例字段逐个写入，私有字段通过对应的 getter 读取，没有 getter 的私有字段不输出，
+ * 不会调用与字段无关的 getter；类型自己定义了 toString（包括 Lombok 的 @Data、@ToString、@Value）时不生成，保留其原本的输出，
+ * 嵌套的值交给 ArgRenderers 继续渲染
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+class ArgRendererGenerator {
+    /** 会生成 toString 的 Lombok 注解 */
+    private static final List<String> TO_STRING_ANNOTATIONS = Arrays.asList("lombok.Data", "lombok.ToString", "lombok.Value");
+
+    private final ProcessingEnvironment processingEnv;
+    private final Elements elements;
+    private final JavacTrees javacTrees;
+    /** 已经生成过的类型，避免重复生成 */
+    private final Set<String> generated = new HashSet<>();
+
+    ArgRendererGenerator(ProcessingEnvironment processingEnv, JavacTrees javacTrees) {
+        this.processingEnv = processingEnv;
+        this.elements = processingEnv.getElementUtils();
+        this.javacTrees = javacTrees;
+    }
+
+    /**
+     * 为类中所有方法的参数和返回值类型生成渲染器
+     * @param classElement 开启日志追踪的类
+     */
+    void generateFor(Element classElement) throws IOException {
+        for (Element member : classElement.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.METHOD) {
+                continue;
+            }
+            ExecutableElement method = (ExecutableElement) member;
+            for (VariableElement parameter : method.getParameters()) {
+                collect(parameter.asType());
+            }
+            collect(method.getReturnType());
+        }
+    }
+
+    /** 数组的元素类型和泛型参数也一并处理 */
+    private void collect(TypeMirror type) throws IOException {
+        if (type.getKind() == TypeKind.ARRAY) {
+            collect(((ArrayType) type).getComponentType());
+            return;
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return;
+        }
+        DeclaredType declaredType = (DeclaredType) type;
+        for (TypeMirror typeArgument : declaredType.getTypeArguments()) {
+            collect(typeArgument);
+        }
+        TypeElement typeElement = (TypeElement) declaredType.asElement();
+        if (typeElement.getKind() != ElementKind.CLASS || typeElement.getModifiers().contains(Modifier.PRIVATE)
+                || javacTrees.getTree(typeElement) == null || hasToString(typeElement)) {
+            return;
+        }
+        if (generated.add(typeElement.getQualifiedName().toString())) {
+            write(typeElement);
+        }
+    }
+
+    private void write(TypeElement typeElement) throws IOException {
+        String packageName = elements.getPackageOf(typeElement).getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(typeElement).toString();
+        String rendererName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)) + ArgRenderer.SUFFIX;
+        String typeName = typeElement.getQualifiedName().toString();
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("/** 由 LogProcessor 生成的 ").append(typeElement.getSimpleName()).append(" 参数渲染器 */\n")
+                .append("public final class ").append(rendererName).append(" implements top.iceclean.logtrace.render.ArgRenderer {\n")
+                .append("    @Override\n")
+                .append("    @SuppressWarnings({\"rawtypes\", \"unchecked\"})\n")
+                .append("    public void render(Object value, StringBuilder out, int depth, int limit) {\n")
+                .append("        ").append(typeName).append(" target = (").append(typeName).append(") value;\n")
+                .append("        out.append(\"").append(typeElement.getSimpleName()).append("{\");\n");
+        boolean first = true;
+        for (Map.Entry<String, Element> property : collectProperties(typeElement).entrySet()) {
+            Element accessor = property.getValue();
+            String expression = "target." + accessor.getSimpleName() + (accessor.getKind() == ElementKind.METHOD ? "()" : "");
+            TypeMirror valueType = accessor.getKind() == ElementKind.METHOD
+                    ? ((ExecutableElement) accessor).getReturnType() : accessor.asType();
+            if (!first) {
+                // 超过长度上限后不再读取剩余的属性
+                source.append("        if (out.length() > limit) {\n")
+                        .append("            return;\n")
+                        .append("        }\n");
+            }
+            source.append("        out.append(\"").append(first ? "" : ", ").append(property.getKey()).append("=\");\n");
+            if (valueType.getKind().isPrimitive()) {
+                source.append("        out.append(").append(expression).append(");\n");
+            } else {
+                source.append("        top.iceclean.logtrace.render.ArgRenderers.render(").append(expression).append(", out, depth + 1, limit);\n");
+            }
+            first = false;
+        }
+        source.append("        out.append('}');\n")
+                .append("    }\n")
+                .append("}\n");
+
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(
+                    packageName.isEmpty() ? rendererName : packageName + "." + rendererName, typeElement);
+            try (Writer writer = file.openWriter()) {
+                writer.write(source.toString());
+            }
+        } catch (FilerException ignored) {
+            // 其他轮次或其他处理器已经生成过
+        }
+    }
+
+    /** 类型或其父类（Object 除外）是否定义了 toString */
+    private boolean hasToString(TypeElement typeElement) {
+        for (TypeElement type = typeElement; type != null; type = superclassOf(type)) {
+            for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                if (method.getSimpleName().contentEquals("toString") && method.getParameters().isEmpty()) {
+                    return true;
+                }
+            }
+            // Lombok 可能在本处理器之后才生成 toString
+            for (AnnotationMirror annotation : type.getAnnotationMirrors()) {
+                Element annotationType = annotation.getAnnotationType().asElement();
+                if (TO_STRING_ANNOTATIONS.contains(((TypeElement) annotationType).getQualifiedName().toString())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** 父类，Object 或没有父类时返回 null */
+    private TypeElement superclassOf(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+        return "java.lang.Object".contentEquals(element.getQualifiedName()) ? null : element;
+    }
+
+    /**
+     * 按父类在前、声明顺序收集实例字段（不含 static 和 transient），
+     * 生成的渲染器能直接访问的字段直接读取，否则使用同名的 getter，都不行时不输出
+     * @return 字段名和访问方式
+     */
+    private Map<String, Element> collectProperties(TypeElement typeElement) {
+        Deque<TypeElement> hierarchy = new ArrayDeque<>();
+        for (TypeElement type = typeElement; type != null; type = superclassOf(type)) {
+            hierarchy.push(type);
+        }
+        Element renderPackage = elements.getPackageOf(typeElement);
+        Map<String, Element> properties = new LinkedHashMap<>();
+        for (TypeElement type : hierarchy) {
+            boolean samePackage = elements.getPackageOf(type).equals(renderPackage);
+            for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+                Set<Modifier> modifiers = field.getModifiers();
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+                String name = field.getSimpleName().toString();
+                Element accessor = accessible(modifiers, samePackage) ? field : getterOf(typeElement, field, renderPackage);
+                if (accessor != null) {
+                    // 子类的同名字段隐藏父类的字段
+                    properties.remove(name);
+                    properties.put(name, accessor);
+                }
+            }
+        }
+        return properties;
+    }
+
+    /** 生成的渲染器与目标类型在同一个包中，能访问公开成员和同包的非私有成员 */
+    private boolean accessible(Set<Modifier> modifiers, boolean samePackage) {
+        return modifiers.contains(Modifier.PUBLIC) || samePackage && !modifiers.contains(Modifier.PRIVATE);
+    }
+
+    /** 字段对应的 getXxx() 或 isXxx()，返回类型需要与字段相同 */
+    private ExecutableElement getterOf(TypeElement typeElement, VariableElement field, Element renderPackage) {
+        String name = field.getSimpleName().toString();
+        String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        boolean bool = field.asType().getKind() == TypeKind.BOOLEAN;
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(typeElement))) {
+            String methodName = method.getSimpleName().toString();
+            if (!method.getParameters().isEmpty() || method.getModifiers().contains(Modifier.STATIC)
+                    || !(methodName.equals("get" + suffix) || bool && methodName.equals("is" + suffix))
+                    || !processingEnv.getTypeUtils().isSameType(method.getReturnType(), field.asType())) {
+                continue;
+            }
+            boolean samePackage = elements.getPackageOf(method).equals(renderPackage);
+            if (accessible(method.getModifiers(), samePackage)) {
+                return method;
+            }
+        }
+        return null;
+    }
+}
@@ -6,23 +6,28 @@ import org.aopalliance.intercept.MethodInvocation;
 import org.aspectj.lang.annotation.AfterThrowing;
 import org.aspectj.lang.annotation.Aspect;
 import org.springframework.stereotype.Component;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
 import top.iceclean.logtrace.annotation.LogMessage;
 import top.iceclean.logtrace.bean.LogTrace;
+import top.iceclean.logtrace.bean.MethodMeta;
+import top.iceclean.logtrace.bean.UnsampledLogTrace;
 import top.iceclean.logtrace.config.LogTraceConfig;
+import org.springframework.util.ClassUtils;
+import top.iceclean.logtrace.constants.LogContextMode;
 import top.iceclean.logtrace.constants.LogLevel;
 import top.iceclean.logtrace.constants.LogMode;
 import top.iceclean.logtrace.constants.LogType;
-import top.iceclean.logtrace.web.ViewEndPoint;
+import top.iceclean.logtrace.context.LogTraceContext;
+import top.iceclean.logtrace.context.ReactorTraceSupport;
+import top.iceclean.logtrace.id.TraceIdGenerator;
+import top.iceclean.logtrace.metric.MethodMetrics;
+import top.iceclean.logtrace.metric.TraceRollup;
+import top.iceclean.logtrace.render.ArgRenderers;
+import top.iceclean.logtrace.sample.TraceSamplers;
 
-import java.io.IOException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Optional;
 
 /**
  * @author : Ice'Clean
@@ -32,83 +37,251 @@ import java.util.Optional;
 @Component
 @Aspect
 public class LogAdvice implements MethodInterceptor {
+    /** 类路径中是否有 reactor-core，没有的话不能加载响应式支持类 */
+    private static final boolean REACTOR_PRESENT =
+            ClassUtils.isPresent("reactor.core.publisher.Mono", LogAdvice.class.getClassLoader());
 
     @Override
     public Object invoke(MethodInvocation invocation) throws Throwable {
-        // 获取方法的参数类型和参数值
-        Method method = invocation.getMethod();
-        Parameter[] parameters = method.getParameters();
-        Object[] args = invocation.getArguments();
+        TraceFrame frame = enter(MethodMeta.of(invocation.getMethod()), invocation.getArguments());
+        Object result;
+        try {
+            result = invocation.proceed();
+        } catch (Throwable throwable) {
+            // 被采样调用链的异常交由 exceptionLog 记录，这里只处理未采样的起始方法，其余方法只统计耗时
+            if (frame.kind == TraceFrame.KIND_UNSAMPLED_ROOT) {
+                fail(frame, throwable);
+            } else {
+                measure(frame);
+            }
+            throw throwable;
+        }
+        return exit(frame, result);
+    }
 
+    /**
+     * 进入方法，代理模式和编织模式共用
+     * @param meta 方法元数据
+     * @param args 参数值
+     * @return 调用现场，退出方法时交给 exit 或 fail
+     */
+    TraceFrame enter(MethodMeta meta, Object[] args) {
         // 获取该业务线（线程）绑定的系统自定义日志
-        LogTrace threadLog = LogTrace.getLogTrace();
+        LogTrace threadLog = LogTraceContext.get();
+        if (threadLog == null) {
+            // 起始方法由采样器决定是否追踪该调用链（慢调用捕获开启时不经过采样器）
+            // 未采样期间绑定空操作的日志，不收集参数和日志数据
+            if (!LogTraceConfig.Slow.enabled && !TraceSamplers.get().sample(meta)) {
+                LogTraceContext.bind(UnsampledLogTrace.INSTANCE);
+                // 未采样的调用链也计入调用统计和方法耗时统计，只在开启统计时计时
+                long startTime = TraceRollup.current() == null && !LogTraceConfig.Metric.enabled ? 0 : System.nanoTime();
+                return new TraceFrame(TraceFrame.KIND_UNSAMPLED_ROOT, meta, args, null, startTime);
+            }
+        } else if (!threadLog.isSampled()) {
+            // 未采样调用链中的方法直接执行，开启方法耗时统计时只计时
+            return LogTraceConfig.Metric.enabled
+                    ? new TraceFrame(TraceFrame.KIND_UNSAMPLED, meta, null, null, System.nanoTime()) : TraceFrame.NOOP;
+        }
+
+        long startTime = System.nanoTime();
         LogTrace systemLog = null;
         if (threadLog == null) {
             // 如果线程系统日志为空，说明该方法是起始方法，应该创建新的系统日志
-            systemLog = LogTrace.bindLogTrace(bindSystemLog(method, parameters, args));
+            systemLog = LogTraceContext.bind(bindSystemLog(meta, args));
+            systemLog.setStartTime(startTime);
+            if (LogTraceConfig.Slow.enabled) {
+                systemLog.startCapture();
+            }
+        } else if (threadLog.isCapturing()) {
+            // 慢调用捕获时只记录引用，等确定需要写出时再格式化
+            threadLog.captureIn(meta, args);
         } else if (LogMode.MODE_DETAIL.equals(LogTraceConfig.mode) && LogTraceConfig.Output.comeParam) {
             // 如果非空，说明是调用链中的方法，系统日志保留为空，使用起始的系统日志，并在详细模式下时添加入参日志
-            threadLog.inMethod(method, parameters, args);
+            threadLog.inMethod(meta, args);
         }
 
         // 绑定操作日志
         // bindGeneralLog(method, parameters, args);
 
-        // 执行并获取结果，方法进入和退出都有相应记录，便于异常处理时回推到最初的方法
-        LogTrace.getLogTrace().come();
-        Object result = invocation.proceed();
-        LogTrace.getLogTrace().exit();
-
-        // 将一整条调用链的日志写出（到控制台、文件、数据库等，并通过 websocket 通知前端）
-        // 系统日志为空说明调用链还没结束，不执行写出操作
+        // 方法进入和退出都有相应记录，便于异常处理时回推到最初的方法
         if (systemLog != null) {
-            // 设置返回值
-            systemLog.setReturnString(Optional.ofNullable(result).orElse("null").toString());
+            systemLog.come();
+            return new TraceFrame(TraceFrame.KIND_ROOT, meta, args, systemLog, startTime);
+        }
+        threadLog.come();
+        return new TraceFrame(TraceFrame.KIND_NESTED, meta, args, threadLog, startTime);
+    }
 
-            // 判断级别并写入日志
-            if (LogLevel.LEVEL_ERROR.equals(systemLog.getLevel())){
-                log.error(systemLog.toString());
-            } else {
-                log.info(systemLog.toString());
-            }
+    /**
+     * 方法正常退出
+     * @param frame 调用现场
+     * @param result 返回值
+     * @return 需要真正返回的值（响应式模式下为挂上日志的 Mono/Flux）
+     */
+    Object exit(TraceFrame frame, Object result) {
+        long duration = measure(frame);
+        switch (frame.kind) {
+            case TraceFrame.KIND_UNSAMPLED_ROOT:
+                LogTraceContext.remove();
+                rollup(frame, duration, false);
+                return result;
+            case TraceFrame.KIND_ROOT:
+                return exitRoot(frame, result);
+            case TraceFrame.KIND_NESTED:
+                LogTrace threadLog = frame.logTrace;
+                threadLog.exit();
+                if (threadLog.isCapturing()) {
+                    threadLog.captureOut(frame.meta, result, duration);
+                } else if (LogMode.MODE_DETAIL.equals(LogTraceConfig.mode) && LogTraceConfig.Output.exitReturn){
+                    // 在详细模式下添加中间函数的返回值和耗时日志
+                    threadLog.outMethod(frame.meta, result == null ? LogTraceConfig.DEFAULT_VALUE : ArgRenderers.toString(result), duration);
+                }
+                return result;
+            default:
+                return result;
+        }
+    }
 
-            // 将日志同步到前端
-            systemLog.setCreateTime(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").format(LocalDateTime.now()));
-            systemLog.setThread(Thread.currentThread().getName());
-            systemLog.setSite("iceclean.customlog.spi.LogAdvice");
-            ViewEndPoint.castLogMessage(systemLog);
-        } else if (threadLog != null && LogMode.MODE_DETAIL.equals(LogTraceConfig.mode) && LogTraceConfig.Output.exitReturn){
-            // 否则在详细模式下添加中间函数的返回值日志
-            threadLog.outMethod(method, Optional.ofNullable(result).orElse(LogTraceConfig.DEFAULT_VALUE).toString());
+    /** 起始方法退出，将一整条调用链的日志写出（到控制台、文件、数据库等，并通过 websocket 通知前端） */
+    private Object exitRoot(TraceFrame frame, Object result) {
+        LogTrace systemLog = frame.logTrace;
+        long startTime = frame.startTime;
+        systemLog.exit();
+
+        // 响应式模式下，起始方法返回的 Mono/Flux 此时还没有执行，日志随流传递并在流结束时写出
+        if (REACTOR_PRESENT && LogContextMode.CONTEXT_REACTOR.equals(LogTraceConfig.context)
+                && ReactorTraceSupport.isPublisher(result)) {
+            LogTraceContext.remove();
+            // 缓冲区属于当前线程，流结束前线程会被复用，所以先回放出来
+            systemLog.replayCapture();
+            return ReactorTraceSupport.decorate(result, systemLog, logTrace -> writeCapturedLog(logTrace, startTime));
         }
 
-        // 返回结果
+        // 设置返回值并写出
+        systemLog.setReturnString(ArgRenderers.toString(result));
+        writeCapturedLog(systemLog, startTime);
         return result;
     }
 
+    /**
+     * 方法抛出异常退出
+     * @param frame 调用现场
+     * @param throwable 异常
+     */
+    void fail(TraceFrame frame, Throwable throwable) {
+        long duration = measure(frame);
+        if (frame.kind == TraceFrame.KIND_UNSAMPLED_ROOT) {
+            // 未采样的调用链出现异常时才补上起始方法的信息写出 ERROR 日志
+            rollup(frame, duration, true);
+            try {
+                LogTrace systemLog = LogTraceContext.bind(bindSystemLog(frame.meta, frame.args));
+                systemLog.exception(throwable);
+                systemLog.setStackTrace(throwable.getStackTrace());
+                writeLog(systemLog);
+            } finally {
+                LogTraceContext.remove();
+            }
+        } else if (frame.kind == TraceFrame.KIND_ROOT || frame.kind == TraceFrame.KIND_NESTED) {
+            recordException(frame.logTrace, throwable);
+        }
+    }
+
+    /**
+     * 慢调用捕获开启时，只写出耗时超过阈值或出现错误的调用链，其余直接丢弃
+     * @param systemLog 调用链日志
+     * @param startTime 起始方法进入时间（纳秒）
+     */
+    private void writeCapturedLog(LogTrace systemLog, long startTime) {
+        systemLog.setDuration(System.nanoTime() - startTime);
+        rollup(systemLog);
+        if (LogTraceConfig.Slow.enabled && !LogLevel.LEVEL_ERROR.equals(systemLog.getLevel())
+                && systemLog.getDuration() < LogTraceConfig.Slow.threshold * 1_000_000L) {
+            systemLog.discardCapture();
+            LogTraceContext.remove();
+            return;
+        }
+        systemLog.replayCapture();
+        writeLog(systemLog);
+    }
+
+    /**
+     * 计算方法耗时，开启方法耗时统计时计入该方法的耗时直方图
+     * @param frame 调用现场
+     * @return 耗时（纳秒），进入方法时没有计时则为 0
+     */
+    private long measure(TraceFrame frame) {
+        if (frame.startTime == 0) {
+            return 0;
+        }
+        long duration = System.nanoTime() - frame.startTime;
+        if (LogTraceConfig.Metric.enabled) {
+            MethodMetrics.record(frame.meta, duration);
+        }
+        return duration;
+    }
+
+    /** 未采样的起始方法结束时计入调用统计，进入时没有计时则不计入 */
+    private void rollup(TraceFrame frame, long duration, boolean error) {
+        if (frame.startTime != 0) {
+            rollup(frame.meta.getClassName(), frame.meta.getMethodName(), frame.meta.getRequestPath(), duration, error);
+        }
+    }
+
+    /** 被采样的调用链结束时计入调用统计，级别为 ERROR 的计为错误 */
+    private void rollup(LogTrace systemLog) {
+        rollup(systemLog.getClassName(), systemLog.getMethodName(), systemLog.getRequestPath(),
+                systemLog.getDuration(), LogLevel.LEVEL_ERROR.equals(systemLog.getLevel()));
+    }
+
+    /** 起始方法结束时计入调用统计 */
+    private void rollup(String className, String methodName, String requestPath, long duration, boolean error) {
+        TraceRollup rollup = TraceRollup.current();
+        if (rollup != null) {
+            rollup.record(className, methodName, requestPath, duration, error);
+        }
+    }
+
+    /** 将一整条调用链的日志写出 */
+    private void writeLog(LogTrace systemLog) {
+        // 合并已结束的子任务日志
+        systemLog.mergeChildren();
+
+        // 补全日志头信息，之后日志内容不再变化
+        systemLog.setCreateTime(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").format(LocalDateTime.now()));
+        systemLog.setThread(LogFormat.currentThreadName());
+        systemLog.setSite("iceclean.customlog.spi.LogAdvice");
+
+        // 生成只读快照交给各个输出，调用链到此结束，当前线程不再持有该日志
+        LogTrace snapshot = systemLog.snapshot();
+        LogTraceContext.remove();
+
+        // 判断级别并写入日志，快照通过标记随事件传递给各个 appender（包括推送到前端）
+        LogTraceMarker marker = new LogTraceMarker(snapshot);
+        if (LogLevel.LEVEL_ERROR.equals(snapshot.getLevel())){
+            log.error(marker, snapshot.toString());
+        } else {
+            log.info(marker, snapshot.toString());
+        }
+    }
+
     /** 绑定系统日志 */
-    public LogTrace bindSystemLog(Method method, Parameter[] parameters, Object[] args) {
+    public LogTrace bindSystemLog(MethodMeta meta, Object[] args) {
         // 有设置自定义日志格式的话，则为系统日志
         LogTrace logTrace = new LogTrace(LogTraceConfig.mode, LogType.TYPE_SYSTEM);
-        setLogTrace(logTrace, method, parameters, args);
+        logTrace.setHeadId(TraceIdGenerator.nextId());
+        setLogTrace(logTrace, meta, args);
         return logTrace;
     }
 
-    /** 为自定义日志格式赋予详细值 */
-    public void setLogTrace(LogTrace logTrace, Method method, Parameter[] parameters, Object[] args) {
+    /** 为自定义日志格式赋予详细值（均取自方法元数据缓存） */
+    public void setLogTrace(LogTrace logTrace, MethodMeta meta, Object[] args) {
         // 给自定义日志格式赋值
-        logTrace.setClassName(method.getDeclaringClass().toString());
-        logTrace.setMethodName(method.getName());
-        logTrace.setParameter(parameters, args);
+        logTrace.setClassName(meta.getClassName());
+        logTrace.setMethodName(meta.getMethodName());
+        logTrace.setParameter(meta.getParameterNames(), args);
 
         // 获取请求连接
-        GetMapping getMapping = method.getAnnotation(GetMapping.class);
-        PostMapping postMapping = method.getAnnotation(PostMapping.class);
-        RequestMapping requestMapping = method.getAnnotation(RequestMapping.class);
-        String requestUrl = getMapping != null ? getMapping.value()[0] :
-                        postMapping != null ? postMapping.value()[0] :
-                        requestMapping != null ? requestMapping.value()[0] : null;
-        logTrace.setRequestPath(requestUrl);
+        logTrace.setRequestPath(meta.getRequestPath());
     }
 
     /** 绑定通用日志 */
@@ -149,28 +322,30 @@ public class LogAdvice implements MethodInterceptor {
      * 记录异常信息
      * @param exception 捕获到的异常
      */
-    @AfterThrowing(value = "@within(top.iceclean.logtrace.annotation.EnableLogTrace)", throwing = "exception", argNames = "exception")
-    public void exceptionLog(Exception exception) throws IOException {
-        // 获取异常发生的方法
-        StackTraceElement caller = exception.getStackTrace()[0];
-
+    @AfterThrowing(value = "@within(top.iceclean.logtrace.annotation.EnableLogTrace) && !@within(top.iceclean.logtrace.annotation.WovenLogTrace)",
+            throwing = "exception", argNames = "exception")
+    public void exceptionLog(Exception exception) {
         // 获取线程日志
-        LogTrace threadLog = LogTrace.getLogTrace();
-        if (threadLog != null) {
-            // 在调用链退出到最初一层时，写入日志
-            threadLog.exit();
-            if (threadLog.getLayer() == 0) {
-                threadLog.exception(caller.getFileName(), caller.getLineNumber(), caller.getMethodName(), exception.toString());
-                threadLog.setStackTrace(exception.getStackTrace());
-                // 添加异常信息
-                log.error(threadLog.toString());
-
-                // 将日志同步到前端
-                threadLog.setCreateTime(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").format(LocalDateTime.now()));
-                threadLog.setThread(Thread.currentThread().getName());
-                threadLog.setSite("iceclean.customlog.spi.LogAdvice");
-                ViewEndPoint.castLogMessage(threadLog);
-            }
+        LogTrace threadLog = LogTraceContext.get();
+        if (threadLog != null && threadLog.isSampled()) {
+            recordException(threadLog, exception);
+        }
+    }
+
+    /**
+     * 方法抛出异常时退出一层，在调用链退出到最初一层时，添加异常信息并写入日志
+     * 由响应式流持有的日志在起始方法返回后层次已经为 0，操作符中的方法抛出异常也会退出到 0，
+     * 这时不能写出，而是交给流结束时统一写出
+     */
+    private void recordException(LogTrace threadLog, Throwable throwable) {
+        if (threadLog.exit() == 0 && !threadLog.isStreamOwned()) {
+            threadLog.replayCapture();
+            threadLog.mergeChildren();
+            threadLog.exception(throwable);
+            threadLog.setStackTrace(throwable.getStackTrace());
+            threadLog.setDuration(System.nanoTime() - threadLog.getStartTime());
+            rollup(threadLog);
+            writeLog(threadLog);
         }
     }
 }
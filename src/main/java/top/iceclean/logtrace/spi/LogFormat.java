@@ -2,7 +2,11 @@ package top.iceclean.logtrace.spi;
 
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import javafx.util.Pair;
+import org.slf4j.Marker;
 import top.iceclean.logtrace.bean.LogData;
 import top.iceclean.logtrace.bean.LogTrace;
 import top.iceclean.logtrace.config.LogTraceConfig;
@@ -10,15 +14,18 @@ import top.iceclean.logtrace.constants.LogLevel;
 import top.iceclean.logtrace.constants.LogMode;
 import top.iceclean.logtrace.constants.LogStyle;
 import top.iceclean.logtrace.constants.LogType;
+import top.iceclean.logtrace.id.TraceIdGenerator;
+import top.iceclean.logtrace.render.ArgRenderers;
 
 import java.io.File;
-import java.lang.reflect.Parameter;
+import java.io.IOException;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Pattern;
 
 /**
  * 日志格式处理器
@@ -26,7 +33,6 @@ import java.util.regex.Pattern;
  * @date : 2022-04-27
  */
 public class LogFormat {
-
     /**
      * 颜色常量
      */
@@ -39,8 +45,13 @@ public class LogFormat {
     public static final Integer CYAN    = 36;
     public static final Integer WHITE   = 37;
 
-    /** 匹配 LogTrace 格式 */
-    public static final Pattern logTracePattern = Pattern.compile("((INLINE)|(RECORD)|(DETAIL)) \\S+\\n");
+    /** 每个线程复用的格式化缓冲区，借出期间为 null */
+    private static final ThreadLocal<StringBuilder> BUILDER_POOL = new ThreadLocal<>();
+    private static final int INITIAL_BUILDER_SIZE = 1024;
+    private static final int MAX_POOLED_BUILDER_SIZE = 64 * 1024;
+
+    /** ObjectMapper 线程安全，全局共用一个 */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
     /**
      * 为内容更改显示颜色
@@ -53,15 +64,15 @@ public class LogFormat {
 
     /**
      * 将参数名和参数值收集为参数对列表
-     * @param parameters 参数名数组
+     * @param parameterNames 参数名数组
      * @param datum 参数值数组
      * @return 参数对列表
      */
-    public static List<Pair<String, Object>> collectParams(Parameter[] parameters, Object[] datum) {
-        List<Pair<String, Object>> paramList = new ArrayList<>(parameters.length);
+    public static List<Pair<String, Object>> collectParams(String[] parameterNames, Object[] datum) {
+        List<Pair<String, Object>> paramList = new ArrayList<>(parameterNames.length);
         // 将参数名和对应的参数值对上
-        for (int i = 0; i < parameters.length; i++) {
-            paramList.add(new Pair<>(parameters[i].getName(), datum[i]));
+        for (int i = 0; i < parameterNames.length; i++) {
+            paramList.add(new Pair<>(parameterNames[i], datum[i]));
         }
         return paramList;
     }
@@ -74,22 +85,34 @@ public class LogFormat {
      * @return 格式化后的参数字符串
      */
     public static String listParams(List<Pair<String, Object>> paramList, int color, int layer) {
-        if (paramList == null) {
-            return LogTraceConfig.DEFAULT_VALUE;
+        StringBuilder builder = new StringBuilder();
+        appendParams(builder, paramList, color, layer);
+        return builder.toString();
+    }
+
+    /**
+     * 将参数列表格式化后直接写入缓冲区
+     * @param builder 缓冲区
+     * @param paramList 参数列表
+     * @param color 参数名颜色，传入 -1 表示无颜色
+     * @param layer 缩进层级
+     */
+    private static void appendParams(StringBuilder builder, List<Pair<String, Object>> paramList, int color, int layer) {
+        if (paramList == null || paramList.isEmpty()) {
+            builder.append(LogTraceConfig.DEFAULT_VALUE);
+            return;
         }
-        // 参数数据建造器
-        StringBuilder paramDataBuilder = new StringBuilder();
         // 提取出参数列表
         for (Pair<String, Object> paramPair : paramList) {
-            paramDataBuilder.append("\n");
+            builder.append("\n");
             for (int i = 0; i < layer; i++) {
-                paramDataBuilder.append("\t");
+                builder.append("\t");
             }
-            paramDataBuilder.append(" \uF09F ")
+            builder.append(" \uF09F ")
                     .append(color > 0 ? changeColor(paramPair.getKey(), color) : paramPair.getKey())
-                    .append(" : ").append(paramPair.getValue());
+                    .append(" : ");
+            ArgRenderers.append(paramPair.getValue(), builder);
         }
-        return paramDataBuilder.length() > 0 ? paramDataBuilder.toString() : LogTraceConfig.DEFAULT_VALUE;
     }
 
     /**
@@ -101,8 +124,9 @@ public class LogFormat {
         if (paramList != null && paramList.size() > 0) {
             StringBuilder builder = new StringBuilder();
             for (Pair<String, Object> paramPair : paramList) {
-                builder.append(paramPair.getKey()).append("=")
-                        .append(paramPair.getValue()).append("|");
+                builder.append(paramPair.getKey()).append("=");
+                ArgRenderers.append(paramPair.getValue(), builder);
+                builder.append("|");
             }
             return builder.toString();
         }
@@ -133,17 +157,19 @@ public class LogFormat {
      * @return 格式化完毕的日志字符串
      */
     public static String listLogTrace(LogTrace logTrace, int style) {
-        StringBuilder builder = new StringBuilder();
-        String mode = logTrace.getMode();
-        String type = logTrace.getType();
-
-        // 格式化参数
-        String listParams;
-        if (LogStyle.STYLE_COLOR == style) {
-            listParams = listParams(logTrace.getParamList(), BLUE, 1);
-        } else {
-            listParams = listParams(logTrace.getParamList(), -1, 1);
+        StringBuilder builder = borrowBuilder();
+        try {
+            appendLogTrace(builder, logTrace, style);
+            return builder.toString();
+        } finally {
+            returnBuilder(builder);
         }
+    }
+
+    /** 将日志格式化后直接写入缓冲区 */
+    private static void appendLogTrace(StringBuilder builder, LogTrace logTrace, int style) {
+        String mode = logTrace.getMode();
+        builder.append(mode).append(' ').append(logTrace.getType());
 
         // 根据模式输出信息
         if (LogMode.MODE_RECORD.equals(mode) || LogMode.MODE_DETAIL.equals(mode)) {
@@ -151,16 +177,19 @@ public class LogFormat {
             builder.append("\n\t|请求路径 : ").append(logTrace.getRequestPath());
             builder.append("\n\t|所属父类 : ").append(logTrace.getClassName());
             builder.append("\n\t|所属方法 : ").append(logTrace.getMethodName());
-            builder.append("\n\t|传入参数 : ").append(listParams);
+            builder.append("\n\t|传入参数 : ");
+            appendParams(builder, logTrace.getParamList(), LogStyle.STYLE_COLOR == style ? BLUE : -1, 1);
             builder.append("\n\t|请求返回 : ").append(logTrace.getReturnString());
+            if (logTrace.getDuration() != null) {
+                builder.append("\n\t|请求耗时 : ");
+                appendDuration(builder, logTrace.getDuration());
+            }
             builder.append("\n\t|信息输出 : ");
         }
 
         // 输出信息
-        if (LogStyle.STYLE_COLOR == style) {
-            logTrace.getLogDataList().forEach(logData -> builder.append(logData.toColorString()));
-        } else {
-            logTrace.getLogDataList().forEach(builder::append);
+        for (LogData logData : logTrace.getLogDataList()) {
+            appendLogData(builder, logData, style);
         }
 
         // 将堆栈信息列表格式化
@@ -171,8 +200,6 @@ public class LogFormat {
                 builder.append("\n\t \uF09F ").append(stack);
             }
         }
-
-        return mode + " " + type + builder.toString();
     }
 
     /**
@@ -182,12 +209,19 @@ public class LogFormat {
      * @return 格式化完毕的日志数据字符串
      */
     public static String listLogData(LogData logData, int style) {
+        StringBuilder builder = new StringBuilder();
+        appendLogData(builder, logData, style);
+        return builder.toString();
+    }
+
+    /** 将日志数据格式化后直接写入缓冲区 */
+    private static void appendLogData(StringBuilder builder, LogData logData, int style) {
         String level = logData.getLevel();
         String site = logData.getSite();
         String content = logData.getContent();
-        List<Pair<String, Object>> paramList = logData.getParamList();
+        boolean color = LogStyle.STYLE_COLOR == style;
 
-        if (LogStyle.STYLE_COLOR == style) {
+        if (color) {
             // 为产生位置和方法添加颜色
             if (site != null) {
                 if (LogLevel.LEVEL_IN.equals(level) || LogLevel.LEVEL_OUT.equals(level)) {
@@ -197,30 +231,91 @@ public class LogFormat {
                 }
             }
 
-            // 当为方法入参记录时，为入参添加颜色
-            if (content == null) {
-                content = listParams(paramList, BLUE, 2);
-            }
-
             // 为等级添加颜色
             switch (level) {
                 case LogLevel.LEVEL_INFO: level = changeColor(level, GREEN); break;
                 case LogLevel.LEVEL_ERROR:
                     level = changeColor(level, RED);
-                    content = changeColor(content, RED);
+                    if (content != null) {
+                        content = changeColor(content, RED);
+                    }
                     break;
                 default: level = changeColor(level, YELLOW); break;
             }
         }
 
-        // 当为方法入参记录且没有加上颜色时，进行无颜色格式化
+        builder.append("\n\t \uF09F ").append(level);
+        if (site != null) {
+            builder.append(' ').append(site);
+        }
+        builder.append(" : ");
         if (content == null) {
-            content = listParams(paramList, -1, 2);
+            // 方法入参记录，彩色风格下为入参添加颜色
+            appendParams(builder, logData.getParamList(), color ? BLUE : -1, 2);
+        } else {
+            builder.append(content);
         }
+        if (logData.getDuration() != null) {
+            builder.append(" (");
+            appendDuration(builder, logData.getDuration());
+            builder.append(')');
+        }
+    }
 
-        return "\n\t \uF09F " + (site == null ?
-                String.format("%s : %s", level, content) :
-                String.format("%s %s : %s", level, site, content));
+    /** 将纳秒耗时以毫秒输出，保留三位小数 */
+    private static void appendDuration(StringBuilder builder, long nanos) {
+        long micros = nanos / 1000;
+        builder.append(micros / 1000).append('.');
+        long fraction = micros % 1000;
+        if (fraction < 100) {
+            builder.append(fraction < 10 ? "00" : "0");
+        }
+        builder.append(fraction).append(" ms");
+    }
+
+    /**
+     * 从当前线程借出一个可复用的缓冲区，用完后需要通过 returnBuilder 归还
+     * 同一线程中嵌套借出时（如渲染参数时又触发了日志格式化）会得到新的缓冲区
+     * @return 清空的缓冲区
+     */
+    public static StringBuilder borrowBuilder() {
+        StringBuilder builder = BUILDER_POOL.get();
+        if (builder == null) {
+            return new StringBuilder(INITIAL_BUILDER_SIZE);
+        }
+        BUILDER_POOL.set(null);
+        builder.setLength(0);
+        return builder;
+    }
+
+    /**
+     * 归还缓冲区，过大的缓冲区直接丢弃，避免长期占用内存
+     * @param builder 借出的缓冲区
+     */
+    public static void returnBuilder(StringBuilder builder) {
+        if (builder.capacity() <= MAX_POOLED_BUILDER_SIZE) {
+            BUILDER_POOL.set(builder);
+        }
+    }
+
+    /**
+     * 将日志序列化为 JSON
+     * @param logTrace 目标日志
+     * @return JSON 字符串
+     * @throws JsonProcessingException 序列化失败
+     */
+    public static String toJson(LogTrace logTrace) throws JsonProcessingException {
+        return OBJECT_MAPPER.writeValueAsString(logTrace);
+    }
+
+    /**
+     * 将已序列化的日志解析为 JSON 树，返回给前端时不需要再转回日志对象
+     * @param json JSON 字节（UTF-8）
+     * @return JSON 树
+     * @throws IOException 解析失败
+     */
+    public static JsonNode readJson(byte[] json) throws IOException {
+        return OBJECT_MAPPER.readTree(json);
     }
 
     /**
@@ -260,19 +355,53 @@ public class LogFormat {
      * @return 是 LogTrace 日志则返回 true，否则 false
      */
     public static boolean isLogTrace(ILoggingEvent event) {
-       return logTracePattern.matcher(event.getMessage()).find();
+       return event.getMarker() instanceof LogTraceMarker;
+    }
+
+    /**
+     * 获取日志事件携带的调用链日志
+     * @param event logback 的日志事件
+     * @return 调用链日志，不是 LogTrace 日志则返回 null
+     */
+    public static LogTrace getLogTrace(ILoggingEvent event) {
+        Marker marker = event.getMarker();
+        return marker instanceof LogTraceMarker ? ((LogTraceMarker) marker).getLogTrace() : null;
     }
 
     /**
      * 获取其他包的日志
+     * 经过分发器（同步或异步）的事件已携带分发前生成的日志，各个输出得到的是同一条日志，
+     * 没有经过分发器的事件（如在 logback 配置文件中直接使用输出）每次单独生成
      * @param event logback 的日志事件
      * @return LogTrace 日志
      */
     public static LogTrace getOtherLog(ILoggingEvent event) {
+        if (event instanceof OtherLogEvent) {
+            return ((OtherLogEvent) event).getLogTrace();
+        }
+        return createOtherLog(event);
+    }
+
+    /**
+     * 为其他包的日志事件生成 OTHER 类型的日志并随事件携带，调用链日志原样返回
+     * 分发器在分发前调用，各个输出共享同一条日志
+     * @param event logback 的日志事件
+     * @return 要分发的日志事件
+     */
+    public static ILoggingEvent shareOtherLog(ILoggingEvent event) {
+        return isLogTrace(event) ? event : new OtherLogEvent(event, createOtherLog(event));
+    }
+
+    /** 生成其他包的日志 */
+    private static LogTrace createOtherLog(ILoggingEvent event) {
         LogTrace logTrace = new LogTrace();
-        logTrace.setCreateTime(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").format(LocalDateTime.now()));
+        logTrace.setHeadId(TraceIdGenerator.nextId());
+        // 时间和线程取自日志事件本身，而不是生成日志时的时间和线程
+        LocalDateTime createTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(event.getTimeStamp()), ZoneId.systemDefault());
+        logTrace.setCreateTime(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").format(createTime));
         logTrace.setLevel(event.getLevel().levelStr);
-        logTrace.setThread(Thread.currentThread().getName());
+        String threadName = event.getThreadName();
+        logTrace.setThread(threadName == null || threadName.isEmpty() ? currentThreadName() : threadName);
         logTrace.setSite(event.getLoggerName());
         logTrace.setMode(LogMode.MODE_INLINE);
         logTrace.setType(LogType.TYPE_OTHER);
@@ -284,6 +413,16 @@ public class LogFormat {
         return logTrace;
     }
 
+    /**
+     * 获取当前线程名称，虚拟线程默认没有名称，此时使用线程 ID 代替
+     * @return 线程名称
+     */
+    public static String currentThreadName() {
+        Thread thread = Thread.currentThread();
+        String name = thread.getName();
+        return name.isEmpty() ? "thread-" + thread.getId() : name;
+    }
+
     /**
      * 在指定文件夹下查找包含指定名称的文件
      * @param file 目标文件夹
@@ -1,10 +1,16 @@
 package top.iceclean.logtrace.spi;
 
 import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
 import com.sun.tools.javac.api.JavacTrees;
 import com.sun.tools.javac.processing.JavacProcessingEnvironment;
+import com.sun.tools.javac.code.BoundKind;
+import com.sun.tools.javac.code.Flags;
+import com.sun.tools.javac.code.TypeTag;
 import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeCopier;
 import com.sun.tools.javac.tree.TreeMaker;
+import com.sun.tools.javac.tree.TreeScanner;
 import com.sun.tools.javac.tree.TreeTranslator;
 import com.sun.tools.javac.util.*;
 import top.iceclean.logtrace.annotation.EnableLogTrace;
@@ -13,8 +19,23 @@ import lombok.SneakyThrows;
 import javax.annotation.processing.*;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
 import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -26,12 +47,28 @@ import java.util.Set;
 @SupportedAnnotationTypes("top.iceclean.logtrace.annotation.EnableLogTrace")
 @SupportedSourceVersion(SourceVersion.RELEASE_8)
 public class LogProcessor extends AbstractProcessor {
+    /** 注入的日志变量名 */
+    private static final String LOG_TRACE_VAR = "logTrace";
+    /** 需要在编译期确定日志位置的方法 */
+    private static final Set<String> SITE_METHODS = new HashSet<>(Arrays.asList("info", "error"));
+    /** 编织模式使用的类和变量名 */
+    private static final String LOG_WEAVER_CLASS = "top.iceclean.logtrace.spi.LogWeaver";
+    private static final String WEAVE_SITE_CLASS = "top.iceclean.logtrace.spi.WeaveSite";
+    private static final String TRACE_FRAME_CLASS = "top.iceclean.logtrace.spi.TraceFrame";
+    private static final String WOVEN_ANNOTATION = "top.iceclean.logtrace.annotation.WovenLogTrace";
+    private static final String WEAVE_SITE_VAR = "$logTraceSite";
+    private static final String TRACE_FRAME_VAR = "$logTraceFrame";
+    private static final String TRACE_ERROR_VAR = "$logTraceError";
+    private static final String TRACE_RESULT_VAR = "$logTraceResult";
 
     private JavacTrees javacTrees;
     private TreeMaker treeMaker;
     private Names names;
     private Messager messager;
+    private ArgRendererGenerator rendererGenerator;
     private FileWriter fileWriter;
+    /** 编织模式下当前类中每个方法对应的方法位置常量名 */
+    private final Map<JCTree.JCMethodDecl, String> weaveSites = new IdentityHashMap<>();
 
     @SneakyThrows
     @Override
@@ -41,6 +78,8 @@ public class LogProcessor extends AbstractProcessor {
         javacTrees = JavacTrees.instance(processingEnv);
         treeMaker = TreeMaker.instance(context);
         names = Names.instance(context);
+        messager = processingEnv.getMessager();
+        rendererGenerator = new ArgRendererGenerator(processingEnv, javacTrees);
     }
 
     @SneakyThrows
@@ -49,28 +88,49 @@ public class LogProcessor extends AbstractProcessor {
         // 获取注解类的集合，之后依次去处理
         Set<? extends Element> set = roundEnv.getElementsAnnotatedWith(EnableLogTrace.class);
         for (Element element : set) {
-            // 获取当前类的抽象语法树
+            // 为参数和返回值类型生成参数渲染器
+            rendererGenerator.generateFor(element);
+
+            // 获取当前类的抽象语法树，以及所在文件（用于计算日志位置）
             JCTree tree = javacTrees.getTree(element);
+            TreePath path = javacTrees.getPath(element);
+            JCTree.JCCompilationUnit unit = (JCTree.JCCompilationUnit) path.getCompilationUnit();
             // 获取抽象语法树的所有节点
             // Visitor 抽象内部类，内部定义了访问各种语法节点的方法
+            boolean weave = element.getAnnotation(EnableLogTrace.class).weave() && canWeave(element);
             tree.accept(new TreeTranslator() {
                 @Override
                 public void visitClassDef(JCTree.JCClassDecl jcClassDecl) {
+                    // 编织模式只处理注解所在的类，内部类和匿名类不织入
+                    if (weave && jcClassDecl == tree) {
+                        weaveClass(jcClassDecl, (TypeElement) element);
+                    }
                     jcClassDecl.defs.stream()
                             .filter(element -> element.getKind().equals(Tree.Kind.METHOD))
                             .map(methodTree -> (JCTree.JCMethodDecl) methodTree)
+                            .filter(methodTree -> methodTree.body != null)
                             .forEach(methodTree -> {
-                                // 添加从本地线程获取自定义日志的语句
-                                List<JCTree.JCStatement> stats = methodTree.body.stats;
-
-                                // 在构造方法中，有 super 语句的话获取日志需要放到第二句
-                                if (methodTree.getName().toString().contains("<init>") && stats.size() > 0 && stats.get(0).toString().contains("super")) {
-                                    stats.tail.prepend(createGetLogTraceStatement());
-                                } else {
-                                    stats = stats.prepend(createGetLogTraceStatement());
+                                // 只在用到日志变量的方法中添加从上下文获取自定义日志的语句，整个方法只获取一次
+                                if (needLogTrace(methodTree)) {
+                                    List<JCTree.JCStatement> stats = methodTree.body.stats;
+                                    // 变量位置需要在方法体内，否则无法被识别为 effectively final，不能在 lambda 中使用
+                                    treeMaker.at(methodTree.body.pos);
+                                    // 在构造方法中，有 super/this 语句的话获取日志需要放到第二句
+                                    if (isConstructor(methodTree) && !stats.isEmpty() && isConstructorCall(stats.head)) {
+                                        stats = stats.tail.prepend(createGetLogTraceStatement()).prepend(stats.head);
+                                    } else {
+                                        stats = stats.prepend(createGetLogTraceStatement());
+                                    }
+                                    methodTree.body.stats = stats;
                                 }
 
-                                methodTree.body.stats = stats;
+                                // 将 logTrace.info/error 替换为带有编译期日志位置的调用
+                                methodTree.body.accept(new CallSiteTranslator(unit, methodTree.getName().toString()));
+
+                                // 编织模式下将整个方法体包裹在日志追踪中
+                                if (weave && jcClassDecl == tree && siteName(methodTree) != null) {
+                                    weaveMethod(methodTree, siteName(methodTree));
+                                }
                             });
                     super.visitClassDef(jcClassDecl);
                 }
@@ -105,7 +165,7 @@ public class LogProcessor extends AbstractProcessor {
         return makeVarDef(
                 treeMaker.Modifiers(0),
                 "top.iceclean.logtrace.bean.LogTrace",
-                "logTrace",
+                LOG_TRACE_VAR,
                 treeMaker.Apply(
                         List.nil(),
                         treeMaker.Select(
@@ -130,6 +190,327 @@ public class LogProcessor extends AbstractProcessor {
 //        );
     }
 
+    /**
+     * 将方法体中的 logTrace.info(...) / logTrace.error(...)
+     * 替换为 logTrace.infoAt("File.java:123 method", ...) / logTrace.errorAt(...)
+     * 使运行时不再需要通过调用栈获取日志位置，未经处理的类仍会走 info/error 的调用栈方式
+     */
+    private class CallSiteTranslator extends TreeTranslator {
+        /** 文件名，形如 UserService.java */
+        private final String fileName;
+        private final Position.LineMap lineMap;
+        private final String methodName;
+
+        private CallSiteTranslator(JCTree.JCCompilationUnit unit, String methodName) {
+            String path = unit.getSourceFile().getName();
+            this.fileName = path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1);
+            this.lineMap = unit.getLineMap();
+            this.methodName = methodName;
+        }
+
+        @Override
+        public void visitClassDef(JCTree.JCClassDecl tree) {
+            // 内部类的方法会单独处理，这里不进入
+            result = tree;
+        }
+
+        @Override
+        public void visitApply(JCTree.JCMethodInvocation tree) {
+            super.visitApply(tree);
+            if (tree.meth instanceof JCTree.JCFieldAccess && !tree.args.isEmpty()) {
+                JCTree.JCFieldAccess select = (JCTree.JCFieldAccess) tree.meth;
+                if (select.selected instanceof JCTree.JCIdent
+                        && LOG_TRACE_VAR.equals(((JCTree.JCIdent) select.selected).name.toString())
+                        && SITE_METHODS.contains(select.name.toString())) {
+                    String site = fileName + ":" + lineMap.getLineNumber(tree.pos) + " " + methodName;
+                    select.name = names.fromString(select.name.toString() + "At");
+                    tree.args = tree.args.prepend(treeMaker.at(tree.pos).Literal(site));
+                }
+            }
+            result = tree;
+        }
+    }
+
+    /**
+     * 方法体中是否引用了日志变量，且参数和方法体中没有自己声明同名变量
+     */
+    private boolean needLogTrace(JCTree.JCMethodDecl methodTree) {
+        for (JCTree.JCVariableDecl param : methodTree.params) {
+            if (param.name.contentEquals(LOG_TRACE_VAR)) {
+                return false;
+            }
+        }
+        LogTraceUsageScanner scanner = new LogTraceUsageScanner();
+        methodTree.body.accept(scanner);
+        return scanner.used && !scanner.declared;
+    }
+
+    /** 是否为 super(...) 或 this(...) 语句 */
+    private boolean isConstructorCall(JCTree.JCStatement statement) {
+        if (!(statement instanceof JCTree.JCExpressionStatement)) {
+            return false;
+        }
+        JCTree.JCExpression expr = ((JCTree.JCExpressionStatement) statement).expr;
+        if (!(expr instanceof JCTree.JCMethodInvocation)) {
+            return false;
+        }
+        JCTree.JCExpression meth = ((JCTree.JCMethodInvocation) expr).meth;
+        Name name = meth instanceof JCTree.JCIdent ? ((JCTree.JCIdent) meth).name
+                : meth instanceof JCTree.JCFieldAccess ? ((JCTree.JCFieldAccess) meth).name : null;
+        return name != null && (name == names._super || name == names._this);
+    }
+
+    /**
+     * 查找方法体中对日志变量的引用（包括 lambda 和匿名类中的引用）
+     */
+    private static class LogTraceUsageScanner extends TreeScanner {
+        /** 是否引用了日志变量 */
+        private boolean used;
+        /** 是否自己声明了同名变量 */
+        private boolean declared;
+
+        @Override
+        public void visitIdent(JCTree.JCIdent tree) {
+            if (tree.name.contentEquals(LOG_TRACE_VAR)) {
+                used = true;
+            }
+        }
+
+        @Override
+        public void visitVarDef(JCTree.JCVariableDecl tree) {
+            if (tree.name.contentEquals(LOG_TRACE_VAR)) {
+                declared = true;
+            }
+            super.visitVarDef(tree);
+        }
+
+        @Override
+        public void visitClassDef(JCTree.JCClassDecl tree) {
+            // 匿名类和局部类的方法会单独注入，这里只看字段初始化等直接引用外部变量的地方
+            for (JCTree def : tree.defs) {
+                if (!(def instanceof JCTree.JCMethodDecl)) {
+                    scan(def);
+                }
+            }
+        }
+    }
+
+    /**
+     * 只有接口以外的顶层类和静态内部类可以编织（需要声明静态常量）
+     * 枚举不编织：枚举常量在其他静态字段之前初始化，构造方法中调用本类方法时方法位置常量还未赋值
+     */
+    private boolean canWeave(Element element) {
+        if (!element.getKind().isClass() || element.getKind() == ElementKind.ENUM) {
+            return false;
+        }
+        return element.getEnclosingElement().getKind() == ElementKind.PACKAGE
+                || element.getModifiers().contains(Modifier.STATIC);
+    }
+
+    private boolean isConstructor(JCTree.JCMethodDecl methodTree) {
+        return methodTree.getName().contentEquals("<init>");
+    }
+
+    /**
+     * 只编织非私有的实例方法，与代理模式能够拦截的方法一致
+     * 私有方法和静态方法是类内部的辅助方法，覆盖 Object 的方法（toString、equals、hashCode 等）
+     * 会在渲染参数和返回值时被调用，编织后会在写出日志的过程中再次修改调用链
+     */
+    private boolean isTraceable(ExecutableElement method, TypeElement classElement) {
+        Set<Modifier> modifiers = method.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC)) {
+            return false;
+        }
+        Elements elements = processingEnv.getElementUtils();
+        TypeElement object = elements.getTypeElement(Object.class.getName());
+        for (ExecutableElement objectMethod : ElementFilter.methodsIn(object.getEnclosedElements())) {
+            if (method.getSimpleName().contentEquals(objectMethod.getSimpleName())
+                    && elements.overrides(method, objectMethod, classElement)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 每个被编织的方法对应一个方法位置常量，以方法在类中的序号区分 */
+    private String siteName(JCTree.JCMethodDecl methodTree) {
+        return weaveSites.get(methodTree);
+    }
+
+    /**
+     * 为类中每个被编织的方法生成方法位置常量，并标记为已编织，使 Spring AOP 不再代理
+     * private static final WeaveSite $logTraceSite = new WeaveSite(Cls.class, "name", new Class<?>[]{String.class, ...});
+     * 参数类型取自方法元素擦除泛型后的类型，运行时通过 getDeclaredMethod 精确匹配，重载方法不会混淆
+     */
+    private void weaveClass(JCTree.JCClassDecl classDecl, TypeElement classElement) {
+        ListBuffer<JCTree> sites = new ListBuffer<>();
+        weaveSites.clear();
+        Map<JCTree, ExecutableElement> methodElements = new IdentityHashMap<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(classElement.getEnclosedElements())) {
+            JCTree methodTree = javacTrees.getTree(method);
+            if (methodTree != null) {
+                methodElements.put(methodTree, method);
+            }
+        }
+        for (JCTree def : classDecl.defs) {
+            if (!(def instanceof JCTree.JCMethodDecl)) {
+                continue;
+            }
+            JCTree.JCMethodDecl methodTree = (JCTree.JCMethodDecl) def;
+            ExecutableElement method = methodElements.get(methodTree);
+            if (methodTree.body == null || isConstructor(methodTree) || method == null
+                    || !isTraceable(method, classElement)) {
+                continue;
+            }
+            ListBuffer<JCTree.JCExpression> parameterTypes = new ListBuffer<>();
+            treeMaker.at(methodTree.pos);
+            for (VariableElement param : method.getParameters()) {
+                JCTree.JCExpression erased = erasedType(param.asType());
+                if (erased == null) {
+                    break;
+                }
+                parameterTypes.append(treeMaker.Select(erased, names._class));
+            }
+            if (parameterTypes.size() != method.getParameters().size()) {
+                // 参数类型尚未生成等无法确定的情况不编织该方法，保持原样
+                messager.printMessage(Diagnostic.Kind.WARNING,
+                        "LogTrace weave skipped, parameter type unresolved", method);
+                continue;
+            }
+            String siteName = WEAVE_SITE_VAR + weaveSites.size();
+            weaveSites.put(methodTree, siteName);
+            sites.append(makeVarDef(
+                    treeMaker.Modifiers(Flags.PRIVATE | Flags.STATIC | Flags.FINAL),
+                    WEAVE_SITE_CLASS,
+                    siteName,
+                    treeMaker.NewClass(null, List.nil(), memberAccess(WEAVE_SITE_CLASS), List.of(
+                            treeMaker.Select(treeMaker.Ident(classDecl.name), names._class),
+                            treeMaker.Literal(methodTree.getName().toString()),
+                            treeMaker.NewArray(treeMaker.TypeApply(memberAccess("java.lang.Class"),
+                                    List.of(treeMaker.Wildcard(treeMaker.TypeBoundKind(BoundKind.UNBOUND), null))),
+                                    List.nil(), parameterTypes.toList())
+                    ), null)
+            ));
+        }
+        classDecl.defs = classDecl.defs.prependList(sites.toList());
+        classDecl.mods.annotations = classDecl.mods.annotations.append(
+                treeMaker.at(classDecl.pos).Annotation(memberAccess(WOVEN_ANNOTATION), List.nil()));
+    }
+
+    /**
+     * 生成擦除泛型后的类型表达式，如 java.util.List、int、java.lang.String[]
+     * @param type 参数类型
+     * @return 类型表达式，类型无法确定时为 null
+     */
+    private JCTree.JCExpression erasedType(TypeMirror type) {
+        TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        switch (erased.getKind()) {
+            case BOOLEAN: return treeMaker.TypeIdent(TypeTag.BOOLEAN);
+            case BYTE: return treeMaker.TypeIdent(TypeTag.BYTE);
+            case SHORT: return treeMaker.TypeIdent(TypeTag.SHORT);
+            case INT: return treeMaker.TypeIdent(TypeTag.INT);
+            case LONG: return treeMaker.TypeIdent(TypeTag.LONG);
+            case CHAR: return treeMaker.TypeIdent(TypeTag.CHAR);
+            case FLOAT: return treeMaker.TypeIdent(TypeTag.FLOAT);
+            case DOUBLE: return treeMaker.TypeIdent(TypeTag.DOUBLE);
+            case ARRAY:
+                JCTree.JCExpression component = erasedType(((ArrayType) erased).getComponentType());
+                return component == null ? null : treeMaker.TypeArray(component);
+            case DECLARED:
+                TypeElement typeElement = (TypeElement) ((DeclaredType) erased).asElement();
+                return memberAccess(typeElement.getQualifiedName().toString());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 将方法体织入日志追踪，return 语句改为经过 LogWeaver.ret 返回
+     * <pre>
+     * final TraceFrame $logTraceFrame = LogWeaver.enter($logTraceSite, new Object[]{args...});
+     * try { body } catch (final Throwable $logTraceError) {
+     *     LogWeaver.error($logTraceFrame, $logTraceError);
+     *     throw $logTraceError;
+     * } finally {
+     *     LogWeaver.leave($logTraceFrame);
+     * }
+     * </pre>
+     */
+    private void weaveMethod(JCTree.JCMethodDecl methodTree, String siteName) {
+        JCTree.JCBlock body = methodTree.body;
+        boolean isVoid = methodTree.restype instanceof JCTree.JCPrimitiveTypeTree
+                && ((JCTree.JCPrimitiveTypeTree) methodTree.restype).getPrimitiveTypeKind() == TypeKind.VOID;
+        if (!isVoid) {
+            body = new ReturnTranslator(methodTree.restype).translate(body);
+        }
+
+        treeMaker.at(body.pos);
+        ListBuffer<JCTree.JCExpression> args = new ListBuffer<>();
+        for (JCTree.JCVariableDecl param : methodTree.params) {
+            args.append(treeMaker.Ident(param.name));
+        }
+        JCTree.JCExpression argArray = args.isEmpty()
+                ? memberAccess(LOG_WEAVER_CLASS + ".NO_ARGS")
+                : treeMaker.NewArray(memberAccess("java.lang.Object"), List.nil(), args.toList());
+        JCTree.JCVariableDecl frame = makeVarDef(treeMaker.Modifiers(Flags.FINAL), TRACE_FRAME_CLASS, TRACE_FRAME_VAR,
+                weaverCall("enter", treeMaker.Ident(names.fromString(siteName)), argArray));
+
+        JCTree.JCCatch catcher = treeMaker.Catch(
+                makeVarDef(treeMaker.Modifiers(Flags.FINAL), "java.lang.Throwable", TRACE_ERROR_VAR, null),
+                treeMaker.Block(0, List.of(
+                        treeMaker.Exec(weaverCall("error", treeMaker.Ident(names.fromString(TRACE_FRAME_VAR)),
+                                treeMaker.Ident(names.fromString(TRACE_ERROR_VAR)))),
+                        treeMaker.Throw(treeMaker.Ident(names.fromString(TRACE_ERROR_VAR)))
+                )));
+        JCTree.JCBlock finalizer = treeMaker.Block(0, List.of(
+                treeMaker.Exec(weaverCall("leave", treeMaker.Ident(names.fromString(TRACE_FRAME_VAR))))));
+
+        methodTree.body.stats = List.of(frame,
+                treeMaker.Try(treeMaker.Block(0, body.stats), List.of(catcher), finalizer));
+    }
+
+    /** LogWeaver.method(args...) */
+    private JCTree.JCMethodInvocation weaverCall(String method, JCTree.JCExpression... args) {
+        return treeMaker.Apply(List.nil(), memberAccess(LOG_WEAVER_CLASS + "." + method), List.from(args));
+    }
+
+    /**
+     * 将 return expr; 替换为 { final R $logTraceResult = expr; return LogWeaver.ret($logTraceFrame, $logTraceResult); }
+     * 不进入 lambda 和内部类
+     */
+    private class ReturnTranslator extends TreeTranslator {
+        private final JCTree.JCExpression returnType;
+        private final TreeCopier<Void> copier = new TreeCopier<>(treeMaker);
+
+        private ReturnTranslator(JCTree.JCExpression returnType) {
+            this.returnType = returnType;
+        }
+
+        @Override
+        public void visitClassDef(JCTree.JCClassDecl tree) {
+            result = tree;
+        }
+
+        @Override
+        public void visitLambda(JCTree.JCLambda tree) {
+            result = tree;
+        }
+
+        @Override
+        public void visitReturn(JCTree.JCReturn tree) {
+            if (tree.expr == null) {
+                result = tree;
+                return;
+            }
+            treeMaker.at(tree.pos);
+            JCTree.JCVariableDecl value = treeMaker.VarDef(treeMaker.Modifiers(Flags.FINAL),
+                    names.fromString(TRACE_RESULT_VAR), copier.copy(returnType), tree.expr);
+            result = treeMaker.Block(0, List.of(value, treeMaker.Return(weaverCall("ret",
+                    treeMaker.Ident(names.fromString(TRACE_FRAME_VAR)),
+                    treeMaker.Ident(names.fromString(TRACE_RESULT_VAR))))));
+        }
+    }
+
     /**
      * 创建 域/方法 的多级访问, 方法的标识只能是最后一个
      */
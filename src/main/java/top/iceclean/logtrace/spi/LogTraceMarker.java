@@ -0,0 +1,136 @@
+package top.iceclean.logtrace.spi;
+
+import org.slf4j.Marker;
+import top.iceclean.logtrace.bean.LogTrace;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 调用链日志的标记，LogAdvice 写出日志时随日志事件一起传给 logback
+ * appender 和 layout 通过它识别调用链日志并直接拿到日志本身，不需要再匹配日志内容或查找线程上下文
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public final class LogTraceMarker implements Marker {
+    private static final long serialVersionUID = 1L;
+
+    /** 标记名称 */
+    public static final String NAME = "LOG_TRACE";
+
+    /** 携带的调用链日志，不参与序列化 */
+    private final transient LogTrace logTrace;
+    /** 其他组件（如过滤器）添加的引用标记，大多数日志没有，第一次添加时才创建 */
+    private volatile List<Marker> references;
+
+    public LogTraceMarker(LogTrace logTrace) {
+        this.logTrace = logTrace;
+    }
+
+    public LogTrace getLogTrace() {
+        return logTrace;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /** 与 slf4j 的 BasicMarker 一致：引用不能为空，已经包含的引用和自身不重复添加 */
+    @Override
+    public void add(Marker reference) {
+        if (reference == null) {
+            throw new IllegalArgumentException("A null value cannot be added to a Marker as reference.");
+        }
+        if (reference.contains(this)) {
+            return;
+        }
+        synchronized (this) {
+            if (references == null) {
+                references = new CopyOnWriteArrayList<>();
+            } else if (references.contains(reference)) {
+                return;
+            }
+            references.add(reference);
+        }
+    }
+
+    @Override
+    public boolean remove(Marker reference) {
+        List<Marker> current = references;
+        return current != null && current.remove(reference);
+    }
+
+    @Override
+    @Deprecated
+    public boolean hasChildren() {
+        return hasReferences();
+    }
+
+    @Override
+    public boolean hasReferences() {
+        List<Marker> current = references;
+        return current != null && !current.isEmpty();
+    }
+
+    @Override
+    public Iterator<Marker> iterator() {
+        List<Marker> current = references;
+        return current == null ? Collections.<Marker>emptyIterator() : current.iterator();
+    }
+
+    @Override
+    public boolean contains(Marker other) {
+        if (other == null) {
+            return false;
+        }
+        if (NAME.equals(other.getName())) {
+            return true;
+        }
+        List<Marker> current = references;
+        if (current != null) {
+            for (Marker reference : current) {
+                if (reference.contains(other)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean contains(String name) {
+        if (name == null) {
+            return false;
+        }
+        if (NAME.equals(name)) {
+            return true;
+        }
+        List<Marker> current = references;
+        if (current != null) {
+            for (Marker reference : current) {
+                if (reference.contains(name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Marker && NAME.equals(((Marker) obj).getName());
+    }
+
+    @Override
+    public int hashCode() {
+        return NAME.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return NAME;
+    }
+}
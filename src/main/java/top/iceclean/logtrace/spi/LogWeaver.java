@@ -0,0 +1,84 @@
+package top.iceclean.logtrace.spi;
+
+/**
+ * 编织模式下织入方法体的入口，调用方式由 LogProcessor 生成：
+ * <pre>
+ * final TraceFrame $logTraceFrame = LogWeaver.enter($logTraceSite0, new Object[]{...});
+ * try {
+ *     ...
+ *     final R $logTraceResult = ...;
+ *     return LogWeaver.ret($logTraceFrame, $logTraceResult);
+ * } catch (final Throwable $logTraceError) {
+ *     LogWeaver.error($logTraceFrame, $logTraceError);
+ *     throw $logTraceError;
+ * } finally {
+ *     LogWeaver.leave($logTraceFrame);
+ * }
+ * </pre>
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class LogWeaver {
+    /** 没有参数的方法共用的参数数组 */
+    public static final Object[] NO_ARGS = {};
+
+    /** 与代理模式共用同一套处理逻辑 */
+    private static final LogAdvice ADVICE = new LogAdvice();
+
+    private LogWeaver() {}
+
+    /**
+     * 进入方法
+     * 类初始化完成前（如静态字段的初始化中调用了本类方法）方法位置常量可能还未赋值，此时不追踪
+     * @param site 方法位置
+     * @param args 参数值
+     * @return 调用现场
+     */
+    public static TraceFrame enter(WeaveSite site, Object[] args) {
+        if (site == null) {
+            return TraceFrame.NOOP;
+        }
+        return ADVICE.enter(site.getMeta(), args);
+    }
+
+    /**
+     * 方法带返回值退出
+     * @param frame 调用现场
+     * @param result 返回值
+     * @return 需要真正返回的值（响应式模式下为挂上日志的 Mono/Flux）
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T ret(TraceFrame frame, T result) {
+        if (frame.kind == TraceFrame.KIND_NOOP) {
+            return result;
+        }
+        frame.exited = true;
+        return (T) ADVICE.exit(frame, result);
+    }
+
+    /**
+     * 方法抛出异常
+     * 已经经过 ret 退出的（如 ret 本身或写出日志时抛出异常）不再重复退出
+     * @param frame 调用现场
+     * @param throwable 异常
+     */
+    public static void error(TraceFrame frame, Throwable throwable) {
+        if (frame.kind == TraceFrame.KIND_NOOP || frame.exited) {
+            return;
+        }
+        frame.exited = true;
+        ADVICE.fail(frame, throwable);
+    }
+
+    /**
+     * 离开方法，没有经过 ret 和 error 的（即 void 方法）在这里退出
+     * @param frame 调用现场
+     */
+    public static void leave(TraceFrame frame) {
+        if (frame.kind == TraceFrame.KIND_NOOP || frame.exited) {
+            return;
+        }
+        frame.exited = true;
+        ADVICE.exit(frame, null);
+    }
+}
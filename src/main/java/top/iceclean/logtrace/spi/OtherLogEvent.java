@@ -0,0 +1,112 @@
+package top.iceclean.logtrace.spi;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.LoggerContextVO;
+import org.slf4j.Marker;
+import top.iceclean.logtrace.bean.LogTrace;
+
+import java.util.Map;
+
+/**
+ * 其他包的日志事件，携带分发前生成的 OTHER 类型日志
+ * 分发器（同步或异步）将它传给各个输出，各个输出通过它共享同一条 OTHER 日志，
+ * 保证数据库、本地存储、缓存、索引和前端看到的是相同的日志头 ID，其余方法全部委托给原事件
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public final class OtherLogEvent implements ILoggingEvent {
+    private final ILoggingEvent event;
+    private final LogTrace logTrace;
+
+    OtherLogEvent(ILoggingEvent event, LogTrace logTrace) {
+        this.event = event;
+        this.logTrace = logTrace;
+    }
+
+    public LogTrace getLogTrace() {
+        return logTrace;
+    }
+
+    @Override
+    public String getThreadName() {
+        return event.getThreadName();
+    }
+
+    @Override
+    public Level getLevel() {
+        return event.getLevel();
+    }
+
+    @Override
+    public String getMessage() {
+        return event.getMessage();
+    }
+
+    @Override
+    public Object[] getArgumentArray() {
+        return event.getArgumentArray();
+    }
+
+    @Override
+    public String getFormattedMessage() {
+        return event.getFormattedMessage();
+    }
+
+    @Override
+    public String getLoggerName() {
+        return event.getLoggerName();
+    }
+
+    @Override
+    public LoggerContextVO getLoggerContextVO() {
+        return event.getLoggerContextVO();
+    }
+
+    @Override
+    public IThrowableProxy getThrowableProxy() {
+        return event.getThrowableProxy();
+    }
+
+    @Override
+    public StackTraceElement[] getCallerData() {
+        return event.getCallerData();
+    }
+
+    @Override
+    public boolean hasCallerData() {
+        return event.hasCallerData();
+    }
+
+    @Override
+    public Marker getMarker() {
+        return event.getMarker();
+    }
+
+    @Override
+    public Map<String, String> getMDCPropertyMap() {
+        return event.getMDCPropertyMap();
+    }
+
+    @Override
+    @Deprecated
+    public Map<String, String> getMdc() {
+        return event.getMdc();
+    }
+
+    @Override
+    public long getTimeStamp() {
+        return event.getTimeStamp();
+    }
+
+    @Override
+    public void prepareForDeferredProcessing() {
+        event.prepareForDeferredProcessing();
+    }
+
+    @Override
+    public String toString() {
+        return event.toString();
+    }
+}
@@ -0,0 +1,44 @@
+package top.iceclean.logtrace.spi;
+
+import top.iceclean.logtrace.bean.LogTrace;
+import top.iceclean.logtrace.bean.MethodMeta;
+
+/**
+ * 一次被追踪方法调用的现场，在进入方法时创建，退出方法时交回 LogAdvice
+ * 代理模式和编织模式共用
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class TraceFrame {
+    /** 未采样调用链中的方法，不做任何处理 */
+    static final int KIND_NOOP = 0;
+    /** 未采样调用链的起始方法 */
+    static final int KIND_UNSAMPLED_ROOT = 1;
+    /** 调用链的起始方法 */
+    static final int KIND_ROOT = 2;
+    /** 调用链中的方法 */
+    static final int KIND_NESTED = 3;
+    /** 未采样调用链中的方法，开启方法耗时统计时只计时 */
+    static final int KIND_UNSAMPLED = 4;
+
+    /** 全局共享的空现场，不可写入 */
+    static final TraceFrame NOOP = new TraceFrame(KIND_NOOP, null, null, null, 0);
+
+    final int kind;
+    final MethodMeta meta;
+    final Object[] args;
+    /** 所属调用链的日志 */
+    final LogTrace logTrace;
+    /** 进入方法的时间（纳秒），为 0 时没有计时 */
+    final long startTime;
+    /** 【编织模式】 是否已经退出方法 */
+    boolean exited;
+
+    TraceFrame(int kind, MethodMeta meta, Object[] args, LogTrace logTrace, long startTime) {
+        this.kind = kind;
+        this.meta = meta;
+        this.args = args;
+        this.logTrace = logTrace;
+        this.startTime = startTime;
+    }
+}
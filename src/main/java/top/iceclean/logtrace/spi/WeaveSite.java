@@ -0,0 +1,36 @@
+package top.iceclean.logtrace.spi;
+
+import top.iceclean.logtrace.bean.MethodMeta;
+
+import java.lang.reflect.Method;
+
+/**
+ * 编织模式下的方法位置，由 LogProcessor 为每个被编织的方法生成一个静态常量
+ * 在类初始化时通过方法名和擦除后的参数类型精确找到对应的方法，之后直接使用其元数据
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class WeaveSite {
+    private final MethodMeta meta;
+
+    /**
+     * @param type 所属类
+     * @param methodName 方法名
+     * @param parameterTypes 擦除泛型后的参数类型
+     */
+    public WeaveSite(Class<?> type, String methodName, Class<?>[] parameterTypes) {
+        this.meta = MethodMeta.of(resolve(type, methodName, parameterTypes));
+    }
+
+    public MethodMeta getMeta() {
+        return meta;
+    }
+
+    private static Method resolve(Class<?> type, String methodName, Class<?>[] parameterTypes) {
+        try {
+            return type.getDeclaredMethod(methodName, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("LogTrace weave error，method not found：" + type.getName() + "." + methodName, e);
+        }
+    }
+}
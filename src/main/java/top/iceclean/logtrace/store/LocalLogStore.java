@@ -0,0 +1,341 @@
+package top.iceclean.logtrace.store;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.extern.slf4j.Slf4j;
+import top.iceclean.logtrace.bean.LogTrace;
+import top.iceclean.logtrace.config.LogTraceConfig;
+import top.iceclean.logtrace.id.TraceIdGenerator;
+import top.iceclean.logtrace.spi.LogFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地日志存储，未配置数据库时为前端提供历史日志
+ * 日志序列化为 JSON 后顺序追加到分段文件中，分段写满后滚动到新的分段，超过 maxSegments 时删除最旧的分段
+ * 查询从最新的分段往前，先通过分段和稀疏索引块的 ID 范围、等级和类型掩码跳过不相关的块，再逐条比较
+ * 写入由调用线程加锁完成，查询不加锁
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+@Slf4j
+public class LocalLogStore {
+    /** 分段文件后缀，文件名为第一条记录的序号 */
+    private static final String SUFFIX = ".seg";
+    /** 当前打开的存储 */
+    private static volatile LocalLogStore current;
+
+    private final File directory;
+    private final int segmentSize;
+    private final int indexInterval;
+    private final int maxSegments;
+    private final LogStoreDictionary dictionary = new LogStoreDictionary();
+    /** 全部分段，按序号递增，滚动时整体替换 */
+    private volatile LogSegment[] segments;
+    /** 因过大或序列化失败而未写入的日志数量 */
+    private final AtomicLong dropped = new AtomicLong();
+
+    private LocalLogStore(File directory) {
+        this.directory = directory;
+        this.segmentSize = (int) Math.min(Integer.MAX_VALUE, Math.max(1, LogTraceConfig.Store.segmentSize) * 1024 * 1024);
+        this.indexInterval = Math.max(1, LogTraceConfig.Store.indexInterval);
+        this.maxSegments = Math.max(1, LogTraceConfig.Store.maxSegments);
+    }
+
+    /**
+     * 打开配置目录下的存储，重建已有分段的索引
+     * @return 存储
+     * @throws IOException 目录无法创建或分段无法打开
+     */
+    public static LocalLogStore open() throws IOException {
+        File directory = new File(LogTraceConfig.Store.path);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("无法创建日志存储目录：" + directory.getAbsolutePath());
+        }
+        LocalLogStore store = new LocalLogStore(directory);
+        store.load();
+        current = store;
+        return store;
+    }
+
+    /**
+     * 获取当前打开的存储
+     * @return 存储，未开启本地存储时为 null
+     */
+    public static LocalLogStore current() {
+        return current;
+    }
+
+    private void load() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null || files.length == 0) {
+            segments = new LogSegment[] {openSegment(0)};
+            return;
+        }
+        // 文件名是补零的序号，按名称排序即按序号排序
+        Arrays.sort(files);
+        LogSegment[] loaded = new LogSegment[files.length];
+        for (int i = 0; i < files.length; i++) {
+            String name = files[i].getName();
+            long baseSeq = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+            loaded[i] = LogSegment.open(files[i], baseSeq, segmentSize, indexInterval, dictionary);
+        }
+        segments = loaded;
+    }
+
+    private LogSegment openSegment(long baseSeq) throws IOException {
+        File file = new File(directory, String.format("%020d%s", baseSeq, SUFFIX));
+        return LogSegment.open(file, baseSeq, segmentSize, indexInterval, dictionary);
+    }
+
+    /**
+     * 追加一条日志
+     * @param logTrace 日志
+     * @return 是否写入，日志超过分段大小或无法序列化时不写入
+     */
+    public boolean append(LogTrace logTrace) {
+        // 序列化在锁外进行
+        byte[] json;
+        try {
+            json = logTrace.toJson().getBytes(StandardCharsets.UTF_8);
+        } catch (JsonProcessingException e) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        byte[] level = LogStoreDictionary.encode(logTrace.getLevel());
+        byte[] type = LogStoreDictionary.encode(logTrace.getType());
+        long headId = logTrace.getHeadId() == null ? TraceIdGenerator.nextId() : logTrace.getHeadId();
+        int recordSize = LogSegment.HEADER_SIZE + 2 + level.length + type.length + json.length;
+
+        synchronized (this) {
+            LogSegment[] array = segments;
+            LogSegment active = array[array.length - 1];
+            if (!active.hasRoom(recordSize)) {
+                if (recordSize > segmentSize) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                try {
+                    active = roll(active);
+                } catch (IOException e) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+            }
+            active.append(headId, level, type, json,
+                    dictionary.levelBit(logTrace.getLevel(), true), dictionary.typeBit(logTrace.getType(), true));
+        }
+        return true;
+    }
+
+    /** 滚动到新的分段，超过数量上限时删除最旧的分段 */
+    private LogSegment roll(LogSegment active) throws IOException {
+        active.flush();
+        LogSegment next = openSegment(active.baseSeq + active.count);
+        LogSegment[] array = segments;
+        int from = Math.max(0, array.length + 1 - maxSegments);
+        LogSegment[] rolled = new LogSegment[array.length + 1 - from];
+        System.arraycopy(array, from, rolled, 0, array.length - from);
+        rolled[rolled.length - 1] = next;
+        segments = rolled;
+        for (int i = 0; i < from; i++) {
+            array[i].delete();
+        }
+        return next;
+    }
+
+    /**
+     * 按页码获取日志
+     * @param level 日志等级过滤
+     * @param type 日志类型过滤
+     * @param last 倒数第 n 页
+     * @param max 每一页的数量
+     * @return 日志列表（JSON），从新到旧
+     */
+    public List<JsonNode> getLogTraceList(String level, String type, int last, int max) {
+        return query(level, type, Long.MAX_VALUE, Long.MIN_VALUE, max * last, max);
+    }
+
+    /**
+     * 按游标获取某一时间范围内的日志
+     * @param level 日志等级过滤
+     * @param type 日志类型过滤
+     * @param before 游标，即上一页最后一条日志的头 ID，为空时从最新的日志开始
+     * @param from 起始时间（毫秒，包含），为空时不限制
+     * @param to 结束时间（毫秒，不包含），为空时不限制
+     * @param max 每一页的数量
+     * @return 日志列表（JSON），从新到旧
+     */
+    public List<JsonNode> getLogTracePage(String level, String type, Long before, Long from, Long to, int max) {
+        long upper = before == null || before <= 0 ? Long.MAX_VALUE : before;
+        if (to != null) {
+            upper = Math.min(upper, TraceIdGenerator.lowerBound(to));
+        }
+        long lower = from == null ? Long.MIN_VALUE : TraceIdGenerator.lowerBound(from);
+        return query(level, type, upper, lower, 0, max);
+    }
+
+    /**
+     * 获取日志头 ID 在 [lower, upper) 中、等级和类型匹配的日志，按日志头 ID 从新到旧跳过前 skip 条
+     * 记录按调用链结束的顺序写入，ID 不单调，所以先用堆保留 ID 最大的 skip + max 条命中记录，
+     * 当更早的块中最大的 ID 已经不在范围内、或不大于堆中最小的 ID 时停止扫描，最后再排序读取
+     */
+    private List<JsonNode> query(String level, String type, long upper, long lower, int skip, int max) {
+        List<JsonNode> result = new ArrayList<>(Math.max(0, max));
+        boolean allLevel = level == null || "ALL".equals(level);
+        boolean allType = type == null || "ALL".equals(type);
+        long levelBit = allLevel ? -1L : dictionary.levelBit(level, false);
+        long typeBit = allType ? -1L : dictionary.typeBit(type, false);
+        // 从未出现过的等级或类型
+        if (levelBit == 0 || typeBit == 0 || max <= 0) {
+            return result;
+        }
+        int need = skip + max;
+        PriorityQueue<Hit> newest = new PriorityQueue<>(Math.min(need, 1024), Comparator.comparingLong(hit -> hit.headId));
+
+        LogSegment[] array = segments;
+        // olderMax[i] 为第 0 到 i 个分段中最大的日志头 ID
+        long[] olderMax = new long[array.length];
+        for (int i = 0; i < array.length; i++) {
+            olderMax[i] = Math.max(i > 0 ? olderMax[i - 1] : Long.MIN_VALUE, array[i].maxHeadId);
+        }
+        scan:
+        for (int i = array.length - 1; i >= 0; i--) {
+            LogSegment segment = array[i];
+            // 先读 size，再读索引
+            int limit = segment.size;
+            int blockCount = segment.blockCount;
+            LogSegment.Block[] blocks = segment.blocks;
+            if (blockCount == 0 || segment.minHeadId >= upper || segment.maxHeadId < lower) {
+                continue;
+            }
+            long before = i > 0 ? olderMax[i - 1] : Long.MIN_VALUE;
+            for (int b = blockCount - 1; b >= 0; b--) {
+                LogSegment.Block block = blocks[b];
+                // 这一块及更早的记录中最大的 ID
+                long bound = Math.max(block.prefixMaxHeadId, before);
+                if (bound < lower || newest.size() == need && bound <= newest.peek().headId) {
+                    break scan;
+                }
+                if (block.minHeadId >= upper || block.maxHeadId < lower
+                        || newest.size() == need && block.maxHeadId <= newest.peek().headId) {
+                    continue;
+                }
+                if ((block.levelMask & levelBit) == 0 || (block.typeMask & typeBit) == 0) {
+                    continue;
+                }
+
+                for (int position : segment.positionsOf(b, limit)) {
+                    long headId = segment.headIdAt(position);
+                    if (headId >= upper || headId < lower) {
+                        continue;
+                    }
+                    if (newest.size() == need && headId <= newest.peek().headId) {
+                        continue;
+                    }
+                    if (!allLevel && !level.equals(segment.levelAt(position))) {
+                        continue;
+                    }
+                    if (!allType && !type.equals(segment.typeAt(position))) {
+                        continue;
+                    }
+                    newest.add(new Hit(headId, segment, position));
+                    if (newest.size() > need) {
+                        newest.poll();
+                    }
+                }
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(newest);
+        hits.sort(Comparator.comparingLong((Hit hit) -> hit.headId).reversed());
+        for (int i = skip; i < hits.size(); i++) {
+            Hit hit = hits.get(i);
+            JsonNode node = readJson(hit.segment, hit.position);
+            if (node != null) {
+                result.add(node);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按日志头 ID 获取一条日志
+     * @param headId 日志头 ID
+     * @return 日志（JSON），不存在时为 null
+     */
+    public JsonNode find(long headId) {
+        LogSegment[] array = segments;
+        for (int i = array.length - 1; i >= 0; i--) {
+            LogSegment segment = array[i];
+            int limit = segment.size;
+            int blockCount = segment.blockCount;
+            LogSegment.Block[] blocks = segment.blocks;
+            if (blockCount == 0 || headId < segment.minHeadId || headId > segment.maxHeadId) {
+                continue;
+            }
+            for (int b = blockCount - 1; b >= 0; b--) {
+                LogSegment.Block block = blocks[b];
+                if (headId < block.minHeadId || headId > block.maxHeadId) {
+                    continue;
+                }
+                for (int position : segment.positionsOf(b, limit)) {
+                    if (segment.headIdAt(position) == headId) {
+                        return readJson(segment, position);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private JsonNode readJson(LogSegment segment, int position) {
+        try {
+            return LogFormat.readJson(segment.jsonAt(position));
+        } catch (IOException e) {
+            log.warn("本地日志解析失败：" + e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * 获取未写入的日志数量
+     * @return 数量
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * 关闭存储，将映射内存刷到磁盘
+     */
+    public synchronized void close() {
+        for (LogSegment segment : segments) {
+            segment.flush();
+        }
+        if (current == this) {
+            current = null;
+        }
+    }
+
+    /** 查询命中的一条记录 */
+    private static class Hit {
+        private final long headId;
+        private final LogSegment segment;
+        private final int position;
+
+        private Hit(long headId, LogSegment segment, int position) {
+            this.headId = headId;
+            this.segment = segment;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package top.iceclean.logtrace.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * 本地存储的一个分段文件
+ * 文件创建时预分配固定大小并整体映射到内存，日志按顺序追加，读取直接访问映射内存
+ * <pre>
+ * 记录格式：| 4 字节长度 | 8 字节日志头 ID | 1 字节等级长度 | 等级 | 1 字节类型长度 | 类型 | JSON |
+ * </pre>
+ * 长度字段最后写入，长度为 0 的位置即为文件末尾，写入中途宕机的记录在重新打开时被忽略
+ * 每 indexInterval 条记录建立一个稀疏索引块，记录块的起始位置、序号、ID 范围以及块内出现过的等级和类型
+ * 记录按调用链结束的顺序追加，而日志头 ID 在调用链开始时生成，所以块内和块之间的 ID 并不单调，
+ * 块和分段记录的是真实的最小、最大 ID
+ * 只有写线程（持有 LocalLogStore 的锁）修改分段，读线程先读 volatile 的 size，再读索引和数据，不需要加锁
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+class LogSegment {
+    /** 记录头的固定部分：长度和日志头 ID */
+    static final int HEADER_SIZE = 12;
+
+    private final File file;
+    /** 第一条记录的序号 */
+    final long baseSeq;
+    private final MappedByteBuffer buffer;
+    private final int indexInterval;
+
+    /** 已写入的字节数，读线程只读取这个位置之前的数据 */
+    volatile int size;
+    /** 已写入的记录数 */
+    volatile int count;
+    /** 最小和最大的日志头 ID */
+    volatile long minHeadId = Long.MAX_VALUE;
+    volatile long maxHeadId = Long.MIN_VALUE;
+    /** 稀疏索引 */
+    volatile Block[] blocks = new Block[16];
+    volatile int blockCount;
+
+    private LogSegment(File file, long baseSeq, MappedByteBuffer buffer, int indexInterval) {
+        this.file = file;
+        this.baseSeq = baseSeq;
+        this.buffer = buffer;
+        this.indexInterval = indexInterval;
+    }
+
+    /**
+     * 创建或打开一个分段，打开已有分段时扫描记录重建索引
+     * @param file 分段文件
+     * @param baseSeq 第一条记录的序号
+     * @param capacity 新建分段的大小
+     * @param indexInterval 索引间隔
+     * @param dictionary 等级和类型的编码
+     * @return 分段
+     * @throws IOException 文件读写失败
+     */
+    static LogSegment open(File file, long baseSeq, int capacity, int indexInterval, LogStoreDictionary dictionary)
+            throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() == 0) {
+                raf.setLength(capacity);
+            }
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            LogSegment segment = new LogSegment(file, baseSeq, buffer, indexInterval);
+            segment.recover(dictionary);
+            return segment;
+        }
+    }
+
+    /** 扫描已有记录，重建索引 */
+    private void recover(LogStoreDictionary dictionary) {
+        int position = 0;
+        int capacity = buffer.capacity();
+        while (position + HEADER_SIZE <= capacity) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + 4 + length > capacity) {
+                break;
+            }
+            long headId = buffer.getLong(position + 4);
+            int levelLength = buffer.get(position + HEADER_SIZE) & 0xFF;
+            String level = readString(position + HEADER_SIZE + 1, levelLength);
+            String type = readString(position + HEADER_SIZE + 2 + levelLength,
+                    buffer.get(position + HEADER_SIZE + 1 + levelLength) & 0xFF);
+            index(position, headId, dictionary.levelBit(level, true), dictionary.typeBit(type, true));
+            position += 4 + length;
+            size = position;
+        }
+    }
+
+    /**
+     * 剩余空间是否能写下一条记录
+     * @param recordSize 记录大小
+     * @return 是否能写下
+     */
+    boolean hasRoom(int recordSize) {
+        return size + recordSize <= buffer.capacity();
+    }
+
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * 追加一条记录，只能由写线程调用
+     */
+    void append(long headId, byte[] level, byte[] type, byte[] json, long levelBit, long typeBit) {
+        int position = size;
+        ByteBuffer writer = buffer.duplicate();
+        writer.position(position + 4);
+        writer.putLong(headId);
+        writer.put((byte) level.length).put(level);
+        writer.put((byte) type.length).put(type);
+        writer.put(json);
+        // 内容写完后再写入长度
+        buffer.putInt(position, writer.position() - position - 4);
+        index(position, headId, levelBit, typeBit);
+        size = writer.position();
+    }
+
+    /** 更新稀疏索引，在 size 之前写入，保证读线程看到 size 时索引已经包含对应记录 */
+    private void index(int position, long headId, long levelBit, long typeBit) {
+        int current = count;
+        Block block;
+        if (current % indexInterval == 0) {
+            block = new Block(position, baseSeq + current);
+            Block[] array = blocks;
+            if (blockCount == array.length) {
+                array = Arrays.copyOf(array, array.length * 2);
+            }
+            array[blockCount] = block;
+            blocks = array;
+            blockCount++;
+        } else {
+            block = blocks[blockCount - 1];
+        }
+        block.levelMask |= levelBit;
+        block.typeMask |= typeBit;
+        block.minHeadId = Math.min(block.minHeadId, headId);
+        block.maxHeadId = Math.max(block.maxHeadId, headId);
+        block.count++;
+        minHeadId = Math.min(minHeadId, headId);
+        maxHeadId = Math.max(maxHeadId, headId);
+        // 当前块是最后一块，分段的最大 ID 就是截至该块的最大 ID
+        block.prefixMaxHeadId = maxHeadId;
+        count = current + 1;
+    }
+
+    /**
+     * 读取一个块内全部记录的位置
+     * @param index 块下标
+     * @param limit 读线程看到的 size
+     * @return 记录位置，按写入顺序
+     */
+    int[] positionsOf(int index, int limit) {
+        // 先读块数再读数组，保证数组中包含全部块
+        int total = blockCount;
+        Block[] array = blocks;
+        int end = index + 1 < total ? Math.min(array[index + 1].position, limit) : limit;
+        int[] positions = new int[indexInterval];
+        int num = 0;
+        for (int position = array[index].position; position < end && num < positions.length; num++) {
+            positions[num] = position;
+            position += 4 + buffer.getInt(position);
+        }
+        return Arrays.copyOf(positions, num);
+    }
+
+    long headIdAt(int position) {
+        return buffer.getLong(position + 4);
+    }
+
+    String levelAt(int position) {
+        return readString(position + HEADER_SIZE + 1, buffer.get(position + HEADER_SIZE) & 0xFF);
+    }
+
+    String typeAt(int position) {
+        int levelLength = buffer.get(position + HEADER_SIZE) & 0xFF;
+        int typePosition = position + HEADER_SIZE + 1 + levelLength;
+        return readString(typePosition + 1, buffer.get(typePosition) & 0xFF);
+    }
+
+    /** 读取记录中的 JSON */
+    byte[] jsonAt(int position) {
+        int end = position + 4 + buffer.getInt(position);
+        int levelLength = buffer.get(position + HEADER_SIZE) & 0xFF;
+        int typePosition = position + HEADER_SIZE + 1 + levelLength;
+        int start = typePosition + 1 + (buffer.get(typePosition) & 0xFF);
+        byte[] json = new byte[end - start];
+        ByteBuffer reader = buffer.duplicate();
+        reader.position(start);
+        reader.get(json);
+        return json;
+    }
+
+    private String readString(int position, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer reader = buffer.duplicate();
+        reader.position(position);
+        reader.get(bytes);
+        return LogStoreDictionary.decode(bytes);
+    }
+
+    /** 将映射内存刷到磁盘 */
+    void flush() {
+        buffer.force();
+    }
+
+    /** 删除分段文件，映射内存在没有引用后由 GC 回收 */
+    void delete() {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * 稀疏索引块
+     * 除当前块外创建后不再修改，当前块只由写线程修改
+     */
+    static class Block {
+        /** 块中第一条记录的位置 */
+        final int position;
+        /** 块中第一条记录的序号 */
+        final long firstSeq;
+        /** 块中最小和最大的日志头 ID */
+        long minHeadId = Long.MAX_VALUE;
+        long maxHeadId = Long.MIN_VALUE;
+        /** 分段中从第一块到这一块的最大日志头 ID，查询时据此判断更早的块中是否还有更新的日志 */
+        long prefixMaxHeadId = Long.MIN_VALUE;
+        /** 块中出现过的等级和类型 */
+        long levelMask, typeMask;
+        /** 块中的记录数 */
+        int count;
+
+        Block(int position, long firstSeq) {
+            this.position = position;
+            this.firstSeq = firstSeq;
+        }
+    }
+}
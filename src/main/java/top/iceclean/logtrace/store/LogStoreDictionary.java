@@ -0,0 +1,61 @@
+package top.iceclean.logtrace.store;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 日志等级和类型到索引位的映射
+ * 每个出现过的等级和类型占用索引块掩码中的一位，超过 63 个时共用最高位，查询时退化为逐条比较
+ * 映射只在内存中维护，打开存储时随索引一起重建
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+class LogStoreDictionary {
+    /** 共用的溢出位 */
+    private static final long OVERFLOW_BIT = 1L << 63;
+
+    private final Map<String, Long> levels = new ConcurrentHashMap<>();
+    private final Map<String, Long> types = new ConcurrentHashMap<>();
+
+    /**
+     * 获取等级对应的索引位
+     * @param level 等级
+     * @param create 不存在时是否分配
+     * @return 索引位，不存在且不分配时返回 0
+     */
+    long levelBit(String level, boolean create) {
+        return bitOf(levels, level, create);
+    }
+
+    /**
+     * 获取类型对应的索引位
+     * @param type 类型
+     * @param create 不存在时是否分配
+     * @return 索引位，不存在且不分配时返回 0
+     */
+    long typeBit(String type, boolean create) {
+        return bitOf(types, type, create);
+    }
+
+    private static long bitOf(Map<String, Long> map, String key, boolean create) {
+        Long bit = map.get(key);
+        if (bit != null || !create) {
+            return bit == null ? 0 : bit;
+        }
+        // 只有写线程分配，不会出现重复分配
+        long next = map.size() < 63 ? 1L << map.size() : OVERFLOW_BIT;
+        map.put(key, next);
+        return next;
+    }
+
+    static byte[] encode(String value) {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        // 长度只占一个字节
+        return bytes.length <= 255 ? bytes : java.util.Arrays.copyOf(bytes, 255);
+    }
+
+    static String decode(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
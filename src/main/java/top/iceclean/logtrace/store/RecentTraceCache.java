@@ -0,0 +1,265 @@
+package top.iceclean.logtrace.store;
+
+import top.iceclean.logtrace.bean.LogTrace;
+import top.iceclean.logtrace.config.LogTraceConfig;
+import top.iceclean.logtrace.id.TraceIdGenerator;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 最近日志的内存缓存，前端的前几页直接从这里返回，不再查询数据库
+ * 日志按序号放入环形数组，数量超过容量或占用内存超过上限时淘汰最旧的日志，
+ * 每个等级和类型各有一个环形索引，记录该等级或类型的日志序号
+ * 日志按结束的顺序放入，而日志头 ID 在调用链开始时生成，所以序号递增时日志头 ID 不一定递增：
+ * 查询时扫描整个缓存，按日志头 ID 从新到旧排序后分页，与数据库的游标分页顺序一致
+ * 淘汰时记录被淘汰日志的最大头 ID，只有一页中的日志都比它新时，才能确定没有日志因淘汰而缺失，
+ * 否则由调用方回退到数据库查询
+ * 写入加锁，查询不加锁：查询时校验序号是否已被淘汰或覆盖
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class RecentTraceCache {
+    /** 当前使用的缓存 */
+    private static volatile RecentTraceCache current;
+
+    private final int mask;
+    private final long maxMemory;
+    /** 是否没有数据库和本地存储，此时缓存就是全部的历史日志，不足一页时也直接返回 */
+    private final boolean complete;
+    private final AtomicReferenceArray<Entry> ring;
+    /** 等级和类型的索引 */
+    private final Map<String, IndexRing> levelIndex = new ConcurrentHashMap<>();
+    private final Map<String, IndexRing> typeIndex = new ConcurrentHashMap<>();
+
+    /** 下一条日志的序号 */
+    private volatile long head;
+    /** 最旧的未淘汰日志的序号 */
+    private volatile long tail;
+    /** 未淘汰日志占用的内存（估算） */
+    private long memory;
+    /** 已淘汰日志的最大头 ID，头 ID 大于它的日志如果已经结束，一定还在缓存中 */
+    private volatile long evictedHeadId = Long.MIN_VALUE;
+
+    public RecentTraceCache(int capacity, long maxMemory, boolean complete) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.maxMemory = maxMemory;
+        this.complete = complete;
+        this.ring = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * 按配置创建缓存并设为当前缓存
+     * @return 缓存
+     */
+    public static RecentTraceCache open() {
+        RecentTraceCache cache = new RecentTraceCache(LogTraceConfig.Recent.capacity,
+                LogTraceConfig.Recent.maxMemory * 1024 * 1024,
+                !LogTraceConfig.Database.enabled && !LogTraceConfig.Store.enabled);
+        current = cache;
+        return cache;
+    }
+
+    /**
+     * 获取当前缓存
+     * @return 缓存，未开启时为 null
+     */
+    public static RecentTraceCache current() {
+        return current;
+    }
+
+    /**
+     * 关闭缓存
+     */
+    public void close() {
+        if (current == this) {
+            current = null;
+        }
+    }
+
+    /**
+     * 添加一条日志，必要时淘汰最旧的日志
+     * @param logTrace 日志，需要是不再修改的快照
+     * @param size 日志占用内存的估算值
+     */
+    public synchronized void add(LogTrace logTrace, int size) {
+        long seq = head;
+        // 先淘汰，保证新日志的位置已经空出
+        while (tail < seq && (seq - tail >= ring.length() || memory + size > maxMemory)) {
+            Entry evicted = ring.get((int) (tail & mask));
+            memory -= evicted.size;
+            if (evicted.headId > evictedHeadId) {
+                evictedHeadId = evicted.headId;
+            }
+            tail = tail + 1;
+        }
+        long headId = logTrace.getHeadId() == null ? TraceIdGenerator.nextId() : logTrace.getHeadId();
+        Entry entry = new Entry(seq, headId, logTrace, size);
+        ring.set((int) (seq & mask), entry);
+        memory += size;
+        indexOf(levelIndex, logTrace.getLevel()).add(seq);
+        indexOf(typeIndex, logTrace.getType()).add(seq);
+        head = seq + 1;
+    }
+
+    private IndexRing indexOf(Map<String, IndexRing> index, String key) {
+        return index.computeIfAbsent(key == null ? "" : key, k -> new IndexRing(ring.length()));
+    }
+
+    /**
+     * 按页码获取日志
+     * @param level 日志等级过滤
+     * @param type 日志类型过滤
+     * @param last 倒数第 n 页
+     * @param max 每一页的数量
+     * @return 日志列表，按日志头 ID 从新到旧，无法确定这一页的日志都在缓存中时返回 null
+     */
+    public List<LogTrace> getLogTraceList(String level, String type, int last, int max) {
+        return query(level, type, Long.MAX_VALUE, Long.MIN_VALUE, max * last, max);
+    }
+
+    /**
+     * 按游标获取某一时间范围内的日志
+     * @param level 日志等级过滤
+     * @param type 日志类型过滤
+     * @param before 游标，即上一页最后一条日志的头 ID，为空时从最新的日志开始
+     * @param from 起始时间（毫秒，包含），为空时不限制
+     * @param to 结束时间（毫秒，不包含），为空时不限制
+     * @param max 每一页的数量
+     * @return 日志列表，按日志头 ID 从新到旧，无法确定这一页的日志都在缓存中时返回 null
+     */
+    public List<LogTrace> getLogTracePage(String level, String type, Long before, Long from, Long to, int max) {
+        long upper = before == null || before <= 0 ? Long.MAX_VALUE : before;
+        if (to != null) {
+            upper = Math.min(upper, TraceIdGenerator.lowerBound(to));
+        }
+        long lower = from == null ? Long.MIN_VALUE : TraceIdGenerator.lowerBound(from);
+        return query(level, type, upper, lower, 0, max);
+    }
+
+    private List<LogTrace> query(String level, String type, long upper, long lower, int skip, int max) {
+        boolean allLevel = level == null || "ALL".equals(level);
+        boolean allType = type == null || "ALL".equals(type);
+        // 有过滤条件时遍历对应的索引，另一个条件逐条比较
+        IndexRing index = null;
+        if (!allLevel) {
+            index = levelIndex.get(level);
+        } else if (!allType) {
+            index = typeIndex.get(type);
+        }
+        if ((!allLevel || !allType) && index == null) {
+            return complete || lower > evictedHeadId ? new ArrayList<>() : null;
+        }
+
+        // 小顶堆保留头 ID 最大的 skip + max 条
+        int limit = skip + max;
+        PriorityQueue<Entry> newest = new PriorityQueue<>(Math.max(1, Math.min(limit, ring.length())),
+                Comparator.comparingLong((Entry entry) -> entry.headId));
+        long end = index == null ? head : index.head;
+        long start = Math.max(0, end - ring.length());
+        long previous = Long.MAX_VALUE;
+        for (long i = end - 1; i >= start && limit > 0; i--) {
+            long seq = index == null ? i : index.get(i);
+            // 索引位置已被新的序号覆盖，或日志已被淘汰，更早的日志都已被淘汰
+            if (seq >= previous || seq < tail) {
+                break;
+            }
+            previous = seq;
+            Entry entry = ring.get((int) (seq & mask));
+            if (entry == null || entry.seq != seq) {
+                break;
+            }
+            // 头 ID 与序号的顺序无关，不在范围内的日志只跳过
+            if (entry.headId >= upper || entry.headId < lower) {
+                continue;
+            }
+            if (!allLevel && !allType && !type.equals(entry.logTrace.getType())) {
+                continue;
+            }
+            newest.add(entry);
+            if (newest.size() > limit) {
+                newest.poll();
+            }
+        }
+
+        List<LogTrace> result = new ArrayList<>(Math.max(0, max));
+        // 扫描结束后再读取淘汰边界，扫描期间被淘汰的日志也会计入
+        long evicted = evictedHeadId;
+        boolean full = newest.size() == limit;
+        // 堆中最旧的一条是这一页的下界，比淘汰边界新时，范围内结束了的日志都在缓存中
+        boolean covered = complete || (full ? newest.isEmpty() || newest.peek().headId > evicted : lower > evicted);
+        if (!covered) {
+            return null;
+        }
+        List<Entry> sorted = new ArrayList<>(newest);
+        sorted.sort(Comparator.comparingLong((Entry entry) -> entry.headId).reversed());
+        for (int i = skip; i < sorted.size(); i++) {
+            result.add(sorted.get(i).logTrace);
+        }
+        return result;
+    }
+
+    /**
+     * 按日志头 ID 获取缓存中的日志
+     * @param headIds 日志头 ID
+     * @return 找到的日志
+     */
+    public Map<Long, LogTrace> find(Collection<Long> headIds) {
+        Map<Long, LogTrace> found = new HashMap<>(headIds.size() * 2);
+        if (headIds.isEmpty()) {
+            return found;
+        }
+        // 头 ID 与序号的顺序无关，需要扫描整个缓存
+        long end = head;
+        for (long seq = end - 1; seq >= Math.max(0, end - ring.length()) && found.size() < headIds.size(); seq--) {
+            Entry entry = ring.get((int) (seq & mask));
+            if (entry == null || entry.seq != seq || seq < tail) {
+                break;
+            }
+            if (headIds.contains(entry.headId)) {
+                found.put(entry.headId, entry.logTrace);
+            }
+        }
+        return found;
+    }
+
+    /** 缓存中的一条日志 */
+    private static class Entry {
+        private final long seq;
+        private final long headId;
+        private final LogTrace logTrace;
+        private final int size;
+
+        private Entry(long seq, long headId, LogTrace logTrace, int size) {
+            this.seq = seq;
+            this.headId = headId;
+            this.logTrace = logTrace;
+            this.size = size;
+        }
+    }
+
+    /** 等级或类型的索引，按顺序记录日志的序号，容量与日志环相同 */
+    private static class IndexRing {
+        private final AtomicLongArray seqs;
+        private final int mask;
+        private volatile long head;
+
+        private IndexRing(int capacity) {
+            this.seqs = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+        }
+
+        /** 只由持有缓存锁的写线程调用 */
+        private void add(long seq) {
+            seqs.set((int) (head & mask), seq);
+            head = head + 1;
+        }
+
+        private long get(long i) {
+            return seqs.get((int) (i & mask));
+        }
+    }
+}
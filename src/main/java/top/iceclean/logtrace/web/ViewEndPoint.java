@@ -1,7 +1,7 @@
 package top.iceclean.logtrace.web;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import javafx.util.Pair;
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -10,7 +10,12 @@ import org.springframework.web.bind.annotation.*;
 import top.iceclean.logtrace.bean.LogTrace;
 import top.iceclean.logtrace.config.LogTraceConfig;
 import top.iceclean.logtrace.db.LogHandler;
+import top.iceclean.logtrace.logback.AsyncDispatchAppender;
+import top.iceclean.logtrace.metric.MethodMetrics;
+import top.iceclean.logtrace.search.TraceIndex;
 import top.iceclean.logtrace.spi.LogFormat;
+import top.iceclean.logtrace.store.LocalLogStore;
+import top.iceclean.logtrace.store.RecentTraceCache;
 
 import javax.websocket.*;
 import javax.websocket.server.ServerEndpoint;
@@ -46,8 +51,6 @@ public class ViewEndPoint {
 
     /** 保存筛选状态（筛选的等级和类别） */
     private String level = "ALL", type = "ALL";
-    /** 记录筛选偏移量，分页从 offset 开始进行，在一次筛选中，若有新的日志插入到数据库，则 offset+1 */
-    private int offset;
 
     @GetMapping("/log")
     public String logView() {
@@ -58,15 +61,181 @@ public class ViewEndPoint {
     @GetMapping("/log/{level}/{type}/{last}/{max}")
     public Object getLogMessage(@PathVariable String level, @PathVariable String type,
                                 @PathVariable int last, @PathVariable int max) {
+        this.level = level;
+        this.type = type;
+        // 前几页优先从最近日志缓存中获取
+        RecentTraceCache cache = RecentTraceCache.current();
+        List<LogTrace> recent = cache == null ? null : cache.getLogTraceList(level, type, last, max);
+        if (recent != null) {
+            return recent;
+        }
+        if (LogTraceConfig.database.isEnabled()) {
+            return logHandler.getLogTraceList(level, type, last, max);
+        }
+        LocalLogStore store = LocalLogStore.current();
+        if (store != null) {
+            return store.getLogTraceList(level, type, last, max);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * 按游标分页获取日志，before 为上一页返回的 next，首页不传
+     * 返回当前页的日志列表，以及下一页的游标（没有下一页时为空）
+     * 页较大时可传 message=false 只取日志头，展开时再通过 /log/message/{headId} 加载日志信息
+     * from、to 为时间范围（毫秒），开启分区时只会查询范围内的分区
+     */
+    @ResponseBody
+    @GetMapping("/log/{level}/{type}/page/{max}")
+    public Object getLogPage(@PathVariable String level, @PathVariable String type, @PathVariable int max,
+                             @RequestParam(required = false) Long before,
+                             @RequestParam(required = false) Long from,
+                             @RequestParam(required = false) Long to,
+                             @RequestParam(defaultValue = "true") boolean message) {
+        Map<String, Object> response = new HashMap<>(4);
+        List<?> logTraceList = new ArrayList<>();
+        // 游标转为字符串，避免前端丢失精度
+        String next = null;
+        this.level = level;
+        this.type = type;
+        // 前几页优先从最近日志缓存中获取
+        RecentTraceCache cache = RecentTraceCache.current();
+        List<LogTrace> recent = cache == null ? null : cache.getLogTracePage(level, type, before, from, to, max);
+        LocalLogStore store = LocalLogStore.current();
+        if (recent != null || LogTraceConfig.database.isEnabled()) {
+            List<LogTrace> page = recent != null ? recent
+                    : logHandler.getLogTracePage(level, type, before, from, to, max, message);
+            if (page.size() == max) {
+                next = String.valueOf(page.get(max - 1).getHeadId());
+            }
+            logTraceList = page;
+        } else if (store != null) {
+            // 本地存储中的日志本身就带有日志信息
+            List<JsonNode> page = store.getLogTracePage(level, type, before, from, to, max);
+            if (page.size() == max) {
+                next = page.get(max - 1).path("headId").asText();
+            }
+            logTraceList = page;
+        }
+        response.put("list", logTraceList);
+        response.put("next", next);
+        return response;
+    }
+
+    /**
+     * 全文搜索日志，返回同时包含查询中全部词的日志，从新到旧
+     * before 为上一页返回的 next，首页不传
+     */
+    @ResponseBody
+    @GetMapping("/log/search")
+    public Object searchLog(@RequestParam String q, @RequestParam(required = false) Long before,
+                            @RequestParam(defaultValue = "20") int max) {
+        Map<String, Object> response = new HashMap<>(4);
+        TraceIndex index = TraceIndex.current();
+        List<Long> headIds = index == null ? new ArrayList<>() : index.search(q, before, max);
+
+        // 依次从最近日志缓存、数据库和本地存储中获取日志内容
+        RecentTraceCache cache = RecentTraceCache.current();
+        Map<Long, Object> found = new HashMap<>(headIds.size() * 2);
+        if (cache != null) {
+            found.putAll(cache.find(headIds));
+        }
+        List<Long> missing = new ArrayList<>();
+        for (Long headId : headIds) {
+            if (!found.containsKey(headId)) {
+                missing.add(headId);
+            }
+        }
+        LocalLogStore store = LocalLogStore.current();
+        if (!missing.isEmpty() && LogTraceConfig.database.isEnabled()) {
+            for (LogTrace logTrace : logHandler.getLogTraceList(missing)) {
+                found.put(logTrace.getHeadId(), logTrace);
+            }
+        } else if (!missing.isEmpty() && store != null) {
+            for (Long headId : missing) {
+                JsonNode logTrace = store.find(headId);
+                if (logTrace != null) {
+                    found.put(headId, logTrace);
+                }
+            }
+        }
+
+        List<Object> logTraceList = new ArrayList<>(headIds.size());
+        for (Long headId : headIds) {
+            Object logTrace = found.get(headId);
+            if (logTrace != null) {
+                logTraceList.add(logTrace);
+            }
+        }
+        response.put("list", logTraceList);
+        // 游标转为字符串，避免前端丢失精度
+        response.put("next", headIds.size() < max ? null : String.valueOf(headIds.get(headIds.size() - 1)));
+        return response;
+    }
+
+    /** 全文索引的统计：已索引的日志数量、分段数量、词数量和占用内存 */
+    @ResponseBody
+    @GetMapping("/log/search/stats")
+    public Object getSearchStats() {
+        return TraceIndex.stats();
+    }
+
+    /**
+     * 获取调用趋势，数据来自调用统计表，按时间桶从旧到新
+     * 类名、方法名和请求路径不传时不过滤，from、to 为时间范围（毫秒），默认为最近一小时
+     */
+    @ResponseBody
+    @GetMapping("/log/rollup")
+    public Object getRollup(@RequestParam(required = false) String className,
+                            @RequestParam(required = false) String methodName,
+                            @RequestParam(required = false) String requestPath,
+                            @RequestParam(required = false) Long from,
+                            @RequestParam(required = false) Long to,
+                            @RequestParam(defaultValue = "1440") int max) {
+        if (!LogTraceConfig.database.isEnabled()) {
+            return new ArrayList<>();
+        }
+        long end = to == null ? System.currentTimeMillis() : to;
+        long start = from == null ? end - 3600_000L : from;
+        return logHandler.getRollupList(className, methodName, requestPath, start, end, max);
+    }
+
+    /** 各方法的耗时统计：调用次数、总耗时、最大耗时和 p50、p99、p999 分位数（纳秒） */
+    @ResponseBody
+    @GetMapping("/log/metric")
+    public Object getMethodMetric() {
+        return MethodMetrics.stats();
+    }
+
+    /** 以 Prometheus 文本格式输出各方法的耗时，供 Prometheus 抓取 */
+    @ResponseBody
+    @GetMapping(value = "/log/metric/prometheus", produces = "text/plain; version=0.0.4; charset=utf-8")
+    public String getPrometheusMetric() {
+        return MethodMetrics.prometheus();
+    }
+
+    /** 获取一条日志的日志信息，用于展开只加载了日志头的日志 */
+    @ResponseBody
+    @GetMapping("/log/message/{headId}")
+    public Object getLogData(@PathVariable long headId) {
         if (LogTraceConfig.database.isEnabled()) {
-            offset = 0;
-            this.level = level;
-            this.type = type;
-            return logHandler.getLogTraceList(level, type, last, max, offset);
+            return logHandler.getLogDataList(headId);
+        }
+        LocalLogStore store = LocalLogStore.current();
+        JsonNode logTrace = store == null ? null : store.find(headId);
+        if (logTrace != null) {
+            return logTrace.path("logDataList");
         }
         return new ArrayList<>();
     }
 
+    /** 异步输出的缓冲区统计：容量、丢弃数量和各输出的积压数量 */
+    @ResponseBody
+    @GetMapping("/log/async/stats")
+    public Object getAsyncStats() {
+        return AsyncDispatchAppender.stats();
+    }
+
 //    @GetMapping("/log/read/{logId}")
 //    public Object readLogMessage(@PathVariable int logId) {
 //
@@ -116,10 +285,6 @@ public class ViewEndPoint {
         return session;
     }
 
-    public void incrementOffset() {
-        offset++;
-    }
-
     public boolean needSend(LogTrace logTrace) {
         return ("ALL".equals(level) || level.equals(logTrace.getLevel())) &&
                 "ALL".equals(type) || type.equals(logTrace.getType());
@@ -152,12 +317,13 @@ public class ViewEndPoint {
 
     /** 将新的日志信息广播出去 */
     public static void castLogMessage(LogTrace logTrace) throws IOException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        String message = objectMapper.writeValueAsString(logTrace);
+        // 没有前端连接时不需要序列化
+        if (CONNECT.isEmpty()) {
+            return;
+        }
+        String message = logTrace.toJson();
         synchronized (CONNECT) {
             for (ViewEndPoint endPoint : CONNECT) {
-                // 偏移量自增
-                endPoint.incrementOffset();
                 // 判断是否发送发送会话
                 if (endPoint.needSend(logTrace)) {
                     endPoint.getSession().getBasicRemote().sendText(message);
@@ -0,0 +1,11 @@
+-- 从旧版本的表结构升级
+-- 旧版本的 head_id、message_id 为自增 int，位置、请求路径、类名和方法名直接以 varchar 保存；
+-- 新版本的 head_id 由应用按时间生成（bigint），这些字符串改为保存字典 ID（应用计算的 64 位哈希值），表按 head_id 分区
+-- 字典 ID 无法在 SQL 中计算，分区也不能通过修改列类型得到，所以不能原地 alter，需要重建日志表：
+--   1. 停止应用，执行本脚本，旧表改名保留（不再被应用读取，确认不需要后可以自行删除）
+--   2. 执行 mysql.sql 创建新的日志表、字典表和调用统计表
+--   3. 启动应用
+-- 新旧版本的日志不能混用同一张表，旧表中的日志在新版本的前端中不可见
+
+rename table t_log_head to t_log_head_legacy,
+             t_log_message to t_log_message_legacy;
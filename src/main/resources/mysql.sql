@@ -1,27 +1,72 @@
+-- 全新建表使用本脚本；已有旧版本的日志表（head_id 为自增 int）时先执行 mysql-upgrade.sql
+
 -- 日志头表
+-- head_id 由应用在创建日志时生成（时间戳 + 节点号 + 序号），按时间递增
+-- 两张表都按 head_id 进行 RANGE 分区，开启 log-trace.database.partitioned 后，
+-- 由应用从 p_max 中拆出每天的分区（如 p20221018，首次拆分时已有的日志放入 p_history），并整块删除过期的分区
 create table t_log_head(
-    head_id     int       auto_increment comment '日志头 ID' primary key,
+    head_id     bigint                   comment '日志头 ID' primary key,
     log_level   char(10)                 comment '日志级别',
     log_thread  varchar(255)             comment '日志线程',
-    log_site    varchar(255)             comment '日志产生位置',
+    log_site    bigint                   comment '日志产生位置（字典 ID）',
     log_mode    varchar(20)              comment '日志模式',
     log_type    varchar(20)              comment '日志类型',
-    log_url     varchar(255)             comment '请求路径',
-    log_parent  varchar(255)             comment '所属父类',
-    log_method  varchar(255)             comment '所属方法',
+    log_url     bigint                   comment '请求路径（字典 ID）',
+    log_parent  bigint                   comment '所属父类（字典 ID）',
+    log_method  bigint                   comment '所属方法（字典 ID）',
     log_params  varchar(255)             comment '传入参数',
     log_return  varchar(255)             comment '请求返回',
     log_stack   text                     comment '日志的堆栈调用信息',
     log_read    int       default 0      comment '是否已读',
-    create_time timestamp default CURRENT_TIMESTAMP not null comment '创建时间'
+    create_time timestamp default CURRENT_TIMESTAMP not null comment '创建时间',
+    log_duration bigint                  comment '请求耗时（纳秒）',
+    -- 游标分页：按等级、类型过滤后沿 head_id 倒序扫描，无过滤时直接走主键
+    index idx_level_type_head (log_level, log_type, head_id),
+    index idx_level_head (log_level, head_id),
+    index idx_type_head (log_type, head_id)
+) partition by range (head_id) (
+    partition p_max values less than maxvalue
 );
 
 -- 日志信息表
 create table t_log_message(
-    message_id  int       auto_increment comment '日志信息 ID' primary key,
-    head_id     int                      comment '日志头 ID',
+    message_id  bigint    auto_increment comment '日志信息 ID',
+    head_id     bigint                   comment '日志头 ID',
     log_level   char(10)                 comment '日志级别',
-    log_site    varchar(255)             comment '日志产生位置',
+    log_site    bigint                   comment '日志产生位置（字典 ID）',
     log_message text                     comment '日志信息',
-    create_time timestamp default CURRENT_TIMESTAMP not null comment '创建时间'
-)
+    create_time timestamp default CURRENT_TIMESTAMP not null comment '创建时间',
+    log_duration bigint                  comment '方法耗时（纳秒），只有跳出方法的日志才有',
+    -- 分区键必须包含在主键中，按 (head_id, message_id) 聚簇，同一条日志的信息连续存放
+    primary key (head_id, message_id),
+    index idx_message_id (message_id)
+) partition by range (head_id) (
+    partition p_max values less than maxvalue
+);
+
+-- 字典表
+-- 日志表中重复的位置、请求路径、类名和方法名只保存字典 ID，字符串在这里只保存一次
+-- dict_id 为字符串的 64 位哈希值，由应用计算
+create table t_log_dict(
+    dict_id     bigint                   comment '字典 ID' primary key,
+    dict_value  text                     comment '字符串'
+);
+
+
+-- 调用统计表
+-- 按类名、方法名、请求路径和时间桶统计起始方法的调用，由应用定期以 upsert 写入，耗时单位为微秒
+-- 开启 log-trace.rollup.enabled 后使用，超过保留天数的统计由应用删除
+create table t_log_rollup(
+    log_parent  bigint                   comment '所属父类（字典 ID）',
+    log_method  bigint                   comment '所属方法（字典 ID）',
+    log_url     bigint                   comment '请求路径（字典 ID）',
+    bucket_time bigint                   comment '时间桶起始时间（毫秒）',
+    call_count  bigint    default 0      comment '调用次数',
+    error_count bigint    default 0      comment '错误次数',
+    total_time  bigint    default 0      comment '总耗时',
+    max_time    bigint    default 0      comment '最大耗时',
+    histogram   blob                     comment '耗时直方图（非空桶的下标差和次数，变长编码），读取时计算分位数',
+    -- 按方法查询趋势时沿主键扫描，不限方法时按时间范围扫描
+    primary key (log_parent, log_method, log_url, bucket_time),
+    index idx_bucket_time (bucket_time)
+);
\ No newline at end of file
@@ -0,0 +1,85 @@
+package top.iceclean.logtrace.context;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import top.iceclean.logtrace.bean.LogTrace;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 日志追踪上下文与原先按线程名存放日志的 Map 的对比基准测试
+ * map 开头的方法复现原先 LogTrace.getLogTrace 的做法：取线程名，再对共享的 ConcurrentHashMap 做 containsKey 和 get
+ * context 开头的方法使用 LogTraceContext，多个线程同时执行
+ * 通过 main 方法在测试类路径下运行
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class LogTraceContextBenchmark {
+    /** 原先的线程名到日志的映射 */
+    private static final Map<String, LogTrace> LOG_TRACE_MAP = new ConcurrentHashMap<>();
+
+    @State(Scope.Thread)
+    public static class Bound {
+        private final LogTrace logTrace = new LogTrace();
+
+        @Setup
+        public void setUp() {
+            LogTraceContext.bind(logTrace);
+            LOG_TRACE_MAP.put(Thread.currentThread().getName(), logTrace);
+        }
+
+        @TearDown
+        public void tearDown() {
+            LogTraceContext.remove();
+            LOG_TRACE_MAP.remove(Thread.currentThread().getName());
+        }
+    }
+
+    @Benchmark
+    public LogTrace contextGet(Bound bound) {
+        return LogTraceContext.get();
+    }
+
+    @Benchmark
+    public LogTrace mapGet(Bound bound) {
+        String threadName = Thread.currentThread().getName();
+        return LOG_TRACE_MAP.containsKey(threadName) ? LOG_TRACE_MAP.get(threadName) : null;
+    }
+
+    /** 一次调用链的开始和结束：绑定、多次获取、移除 */
+    @Benchmark
+    public LogTrace contextBindGetRemove(Bound bound) {
+        LogTrace logTrace = LogTraceContext.bind(bound.logTrace);
+        for (int i = 0; i < 4; i++) {
+            logTrace = LogTraceContext.get();
+        }
+        LogTraceContext.remove();
+        return logTrace;
+    }
+
+    @Benchmark
+    public LogTrace mapBindGetRemove(Bound bound) {
+        LOG_TRACE_MAP.put(Thread.currentThread().getName(), bound.logTrace);
+        LogTrace logTrace = null;
+        for (int i = 0; i < 4; i++) {
+            String threadName = Thread.currentThread().getName();
+            logTrace = LOG_TRACE_MAP.containsKey(threadName) ? LOG_TRACE_MAP.get(threadName) : null;
+        }
+        LOG_TRACE_MAP.remove(Thread.currentThread().getName());
+        return logTrace;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LogTraceContextBenchmark.class.getSimpleName()).build()).run();
+    }
+}
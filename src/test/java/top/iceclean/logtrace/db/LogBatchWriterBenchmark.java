@@ -0,0 +1,124 @@
+package top.iceclean.logtrace.db;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import top.iceclean.logtrace.bean.LogTrace;
+import top.iceclean.logtrace.config.LogTraceConfig;
+import top.iceclean.logtrace.constants.LogMode;
+import top.iceclean.logtrace.constants.LogType;
+import top.iceclean.logtrace.id.TraceIdGenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 日志批量写入的吞吐量基准测试，数据库为 H2 内存数据库（MySQL 兼容模式）
+ * insertLogs 比较每批不同数量时每条日志的写入吞吐量，enqueue 测量写日志线程放入缓冲区的吞吐量（后台同时写入数据库）
+ * 通过 main 方法在测试类路径下运行
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogBatchWriterBenchmark {
+    /** insertLogs 每次调用写入的日志数量 */
+    private static final int RECORDS = 1000;
+
+    @Param({"1", "10", "100"})
+    public int batchSize;
+
+    private JdbcDataSource dataSource;
+    private LogHandler logHandler;
+    private LogBatchWriter batchWriter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:log-trace-benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (InputStream input = LogBatchWriterBenchmark.class.getResourceAsStream("/benchmark/h2-schema.sql");
+             Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            String schema = new Scanner(input, StandardCharsets.UTF_8.name()).useDelimiter("\\A").next();
+            for (String sql : schema.split(";")) {
+                if (!sql.replaceAll("--.*", "").trim().isEmpty()) {
+                    statement.execute(sql);
+                }
+            }
+        }
+        LogHandler.dataSource = dataSource;
+        LogTraceConfig.Database.batchSize = batchSize;
+        logHandler = new LogHandler();
+        batchWriter = new LogBatchWriter(logHandler);
+    }
+
+    @TearDown(Level.Iteration)
+    public void truncate() throws SQLException {
+        // 每轮清空日志表，避免内存数据库不断变大影响后面的结果
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("truncate table t_log_head");
+            statement.execute("truncate table t_log_message");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        batchWriter.close();
+        System.out.println("batchSize=" + batchSize + " dropped=" + batchWriter.getDropped());
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("drop all objects");
+        }
+    }
+
+    /** 按 batchSize 分批写入 RECORDS 条日志，结果为每秒写入的日志条数 */
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void insertLogs() {
+        List<LogRecord> records = new ArrayList<>(RECORDS);
+        for (int i = 0; i < RECORDS; i++) {
+            records.add(record());
+        }
+        for (int from = 0; from < RECORDS; from += batchSize) {
+            logHandler.insertLogs(records.subList(from, Math.min(RECORDS, from + batchSize)));
+        }
+    }
+
+    /** 多个线程同时放入批量写入器，缓冲区满时丢弃的数量在结束时输出 */
+    @Benchmark
+    @Threads(4)
+    public boolean enqueue() {
+        return batchWriter.add(record());
+    }
+
+    /** 一条调用链日志，日志头 ID 各不相同，类名、方法名等字典项只在第一次写入 */
+    private static LogRecord record() {
+        LogTrace logTrace = new LogTrace(LogMode.MODE_DETAIL, LogType.TYPE_SYSTEM);
+        logTrace.setHeadId(TraceIdGenerator.nextId());
+        logTrace.setClassName("top.iceclean.sample.OrderService");
+        logTrace.setMethodName("createOrder");
+        logTrace.setRequestPath("/order/create");
+        logTrace.setDuration(1_000_000L);
+        logTrace.info("创建订单");
+        return new LogRecord("INFO", "http-nio-8080-exec-1", "top.iceclean.sample.OrderService", logTrace);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LogBatchWriterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,168 @@
+package top.iceclean.logtrace.spi;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import top.iceclean.logtrace.annotation.WovenLogTrace;
+import top.iceclean.logtrace.bean.LogData;
+import top.iceclean.logtrace.bean.LogTrace;
+import top.iceclean.logtrace.context.LogTraceContext;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * LogProcessor 的编译期处理：日志变量注入、日志位置替换和编织模式
+ * 使用 javax.tools.JavaCompiler 带上 LogProcessor 编译 src/test/resources/processor 下的示例类，再加载运行
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+public class LogProcessorTest {
+    private static Path output;
+    private static URLClassLoader loader;
+
+    @BeforeClass
+    public static void compileSamples() throws IOException, URISyntaxException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("需要在 JDK 上运行", compiler);
+        output = Files.createTempDirectory("log-processor-test");
+
+        Path sampleDir = Paths.get(LogProcessorTest.class.getResource("/processor/sample").toURI());
+        List<File> sources;
+        try (Stream<Path> files = Files.list(sampleDir)) {
+            sources = files.map(Path::toFile).collect(Collectors.toList());
+        }
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            List<String> options = Arrays.asList(
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-processor", LogProcessor.class.getName(),
+                    "-d", output.toString());
+            boolean success = compiler.getTask(null, fileManager, diagnostics, options, null,
+                    fileManager.getJavaFileObjectsFromFiles(sources)).call();
+            StringBuilder errors = new StringBuilder();
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                    errors.append(diagnostic).append('\n');
+                }
+            }
+            assertTrue("示例类编译失败：\n" + errors, success);
+        }
+        loader = new URLClassLoader(new URL[]{output.toUri().toURL()}, LogProcessorTest.class.getClassLoader());
+    }
+
+    @AfterClass
+    public static void cleanUp() throws IOException {
+        if (loader != null) {
+            loader.close();
+        }
+        if (output != null) {
+            try (Stream<Path> files = Files.walk(output)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @Test
+    public void injectsLogTraceAndCallSites() throws Exception {
+        LogTrace logTrace = LogTraceContext.bind(new LogTrace());
+        try {
+            Class<?> type = loader.loadClass("sample.Injected");
+            // 有 this(...) 的构造方法中，获取日志的语句放在第二句
+            Object injected = type.getConstructor().newInstance();
+            assertEquals("hello default", type.getMethod("hello").invoke(injected));
+            // 参数与日志变量同名时不注入
+            assertEquals("value", type.getMethod("shadowed", String.class).invoke(injected, "value"));
+
+            List<String> sites = new ArrayList<>();
+            for (LogData logData : logTrace.getLogDataList()) {
+                sites.add(logData.getSite());
+            }
+            assertEquals(Arrays.asList("Injected.java:13 <init>", "Injected.java:18 <init>", "Injected.java:23 hello"), sites);
+        } finally {
+            LogTraceContext.remove();
+        }
+    }
+
+    @Test
+    public void weavesClassAndResolvesOverloadsExactly() throws Exception {
+        Class<?> type = loader.loadClass("sample.Woven");
+        assertNotNull(type.getAnnotation(WovenLogTrace.class));
+        // 静态字段初始化时调用的静态方法不编织，原样执行
+        assertEquals("init", type.getDeclaredField("INIT").get(null));
+
+        Set<String> signatures = new HashSet<>();
+        for (Field field : type.getDeclaredFields()) {
+            if (!field.getName().startsWith("$logTraceSite")) {
+                continue;
+            }
+            assertTrue(Modifier.isStatic(field.getModifiers()));
+            field.setAccessible(true);
+            Method method = ((WeaveSite) field.get(null)).getMeta().getMethod();
+            signatures.add(method.getName() + Arrays.toString(method.getParameterTypes()));
+        }
+        // 只编织非私有的实例方法，静态方法 helper、私有方法 reveal 和覆盖 Object 的方法不编织
+        assertEquals(new HashSet<>(Arrays.asList(
+                "f[interface java.util.List]",
+                "f[class java.awt.List]",
+                "f[interface java.util.Map$Entry]",
+                "f[class [[I, class [Ljava.lang.String;]",
+                "f[class java.lang.Number]",
+                "f[char]",
+                "loop[]",
+                "fail[]",
+                "secret[]")), signatures);
+
+        Object woven = type.getConstructor().newInstance();
+        assertEquals("java.util.List", type.getMethod("f", List.class).invoke(woven, new ArrayList<String>()));
+        assertEquals("java.awt.List", type.getMethod("f", java.awt.List.class).invoke(woven, (Object) null));
+        assertEquals("entry", type.getMethod("f", Map.Entry.class).invoke(woven, new AbstractMap.SimpleEntry<>("a", 1)));
+        assertEquals("array", type.getMethod("f", int[][].class, String[].class).invoke(woven, new int[0][0], new String[0]));
+        assertEquals("number", type.getMethod("f", Number.class).invoke(woven, 1));
+        assertEquals("char", type.getMethod("f", char.class).invoke(woven, 'c'));
+        assertEquals(4, type.getMethod("loop").invoke(woven));
+        assertEquals("secret", type.getMethod("secret").invoke(woven));
+        assertEquals("woven", woven.toString());
+        try {
+            type.getMethod("fail").invoke(woven);
+            fail("异常应当原样抛出");
+        } catch (InvocationTargetException e) {
+            assertEquals("fail", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void doesNotWeaveEnums() throws Exception {
+        Class<?> type = loader.loadClass("sample.Seasons");
+        assertNull(type.getAnnotation(WovenLogTrace.class));
+        for (Field field : type.getDeclaredFields()) {
+            assertFalse(field.getName().startsWith("$logTraceSite"));
+        }
+        // 枚举构造方法中调用本类静态方法
+        Object spring = type.getEnumConstants()[0];
+        assertEquals("season", type.getMethod("getLabel").invoke(spring));
+    }
+}
@@ -0,0 +1,94 @@
+package top.iceclean.logtrace.spi;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.aop.framework.ProxyFactory;
+import top.iceclean.logtrace.bean.LogTrace;
+import top.iceclean.logtrace.config.LogTraceConfig;
+import top.iceclean.logtrace.constants.LogMode;
+import top.iceclean.logtrace.constants.LogType;
+import top.iceclean.logtrace.context.LogTraceContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 编织模式与代理模式的调用开销基准测试
+ * 测试线程上预先绑定调用链日志，被测方法作为调用链中的方法执行（记录模式下只进出层次），不产生日志输出
+ * direct 为不追踪的直接调用，proxy 经过 Spring AOP 代理和 LogAdvice，woven 为 LogProcessor 生成的编织代码
+ * 通过 main 方法在测试类路径下运行
+ * @author : Ice'Clean
+ * @date : 2026-10-18
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LogWeaverBenchmark {
+    private Service direct;
+    private Service proxy;
+    private WovenService woven;
+
+    @Setup
+    public void setUp() {
+        LogTraceConfig.mode = LogMode.MODE_RECORD;
+        direct = new Service();
+        ProxyFactory factory = new ProxyFactory(new Service());
+        factory.setProxyTargetClass(true);
+        factory.addAdvice(new LogAdvice());
+        proxy = (Service) factory.getProxy();
+        woven = new WovenService();
+        LogTraceContext.bind(new LogTrace(LogTraceConfig.mode, LogType.TYPE_SYSTEM));
+    }
+
+    @TearDown
+    public void tearDown() {
+        LogTraceContext.remove();
+    }
+
+    @Benchmark
+    public String direct() {
+        return direct.greet("log");
+    }
+
+    @Benchmark
+    public String proxy() {
+        return proxy.greet("log");
+    }
+
+    @Benchmark
+    public String woven() {
+        return woven.greet("log");
+    }
+
+    public static class Service {
+        public String greet(String name) {
+            return "hello " + name;
+        }
+    }
+
+    /** 与 LogProcessor 为 Service 生成的编织代码相同 */
+    public static class WovenService {
+        private static final WeaveSite $logTraceSite0 = new WeaveSite(WovenService.class, "greet", new Class<?>[]{String.class});
+
+        public String greet(String name) {
+            final TraceFrame $logTraceFrame = LogWeaver.enter($logTraceSite0, new Object[]{name});
+            try {
+                final String $logTraceResult = "hello " + name;
+                return LogWeaver.ret($logTraceFrame, $logTraceResult);
+            } catch (final Throwable $logTraceError) {
+                LogWeaver.error($logTraceFrame, $logTraceError);
+                throw $logTraceError;
+            } finally {
+                LogWeaver.leave($logTraceFrame);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LogWeaverBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,34 @@
+-- 基准测试使用的 H2 表结构（MySQL 兼容模式），与 mysql.sql 相同的列，不分区
+create table t_log_head(
+    head_id     bigint primary key,
+    log_level   char(10),
+    log_thread  varchar(255),
+    log_site    bigint,
+    log_mode    varchar(20),
+    log_type    varchar(20),
+    log_url     bigint,
+    log_parent  bigint,
+    log_method  bigint,
+    log_params  varchar(255),
+    log_return  varchar(255),
+    log_stack   text,
+    log_read    int       default 0,
+    create_time timestamp default CURRENT_TIMESTAMP not null,
+    log_duration bigint
+);
+
+create table t_log_message(
+    message_id  bigint auto_increment,
+    head_id     bigint,
+    log_level   char(10),
+    log_site    bigint,
+    log_message text,
+    create_time timestamp default CURRENT_TIMESTAMP not null,
+    log_duration bigint,
+    primary key (head_id, message_id)
+);
+
+create table t_log_dict(
+    dict_id     bigint primary key,
+    dict_value  text
+);
@@ -0,0 +1,32 @@
+package sample;
+
+import top.iceclean.logtrace.annotation.EnableLogTrace;
+
+import java.util.function.Supplier;
+
+@EnableLogTrace
+public class Injected {
+    private final String name;
+
+    public Injected(String name) {
+        this.name = name;
+        logTrace.info("created {}", name);
+    }
+
+    public Injected() {
+        this("default");
+        logTrace.info("default");
+    }
+
+    public String hello() {
+        Supplier<String> supplier = () -> {
+            logTrace.error("in lambda");
+            return "hello " + name;
+        };
+        return supplier.get();
+    }
+
+    public String shadowed(String logTrace) {
+        return logTrace;
+    }
+}
@@ -0,0 +1,22 @@
+package sample;
+
+import top.iceclean.logtrace.annotation.EnableLogTrace;
+
+@EnableLogTrace(weave = true)
+public enum Seasons {
+    SPRING;
+
+    private final String label;
+
+    Seasons() {
+        label = describe();
+    }
+
+    static String describe() {
+        return "season";
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
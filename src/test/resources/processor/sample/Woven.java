@@ -0,0 +1,74 @@
+package sample;
+
+import top.iceclean.logtrace.annotation.EnableLogTrace;
+
+import java.util.List;
+import java.util.Map;
+
+@EnableLogTrace(weave = true)
+public class Woven {
+    public static final String INIT = helper();
+
+    static String helper() {
+        return "init";
+    }
+
+    public String f(List<String> value) {
+        return "java.util.List";
+    }
+
+    public String f(java.awt.List value) {
+        return "java.awt.List";
+    }
+
+    public String f(Map.Entry<String, Integer> value) {
+        return "entry";
+    }
+
+    public String f(int[][] value, String... rest) {
+        return "array";
+    }
+
+    public <T extends Number> String f(T value) {
+        return "number";
+    }
+
+    public String f(char value) {
+        return "char";
+    }
+
+    public int loop() {
+        for (int i = 0; ; i++) {
+            if (i > 3) {
+                return i;
+            }
+        }
+    }
+
+    public void fail() throws Exception {
+        throw new Exception("fail");
+    }
+
+    public String secret() {
+        return reveal();
+    }
+
+    private String reveal() {
+        return "secret";
+    }
+
+    @Override
+    public String toString() {
+        return "woven";
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Woven;
+    }
+
+    @Override
+    public int hashCode() {
+        return 1;
+    }
+}